@@ -1,4 +1,6 @@
+import javafx.animation.AnimationTimer;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
@@ -7,6 +9,7 @@ import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
+import javafx.scene.input.InputEvent;
 import javafx.scene.layout.*;
 import javafx.scene.text.Font;
 import javafx.scene.text.FontWeight;
@@ -17,16 +20,12 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.security.MessageDigest;
-import java.security.SecureRandom;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
 
 import javafx.event.EventHandler;
 
@@ -41,158 +40,44 @@ public class ATMWithChatbot extends Application {
     // Simple, human-readable line format (one user per line):
     // username|base64(salt)|base64(sha256(salt+password))|balance
     // Usernames must not contain '|'
-    private static final double MAX_BALANCE = 500_000.00;
-    private static final double MAX_WITHDRAW = 500_000.00;
-
-
     private static final Path DB_PATH =
             Paths.get(System.getProperty("user.home"), ".vaultx_users.db");
 
-    /* ========= Data Model ========= */
-
-    static class User {
-        private final String username;
-        private final byte[] salt;
-        private final byte[] passwordHash;
-        private double balance;
-//        private final List<String> transactionHistory = new ArrayList<>();
-
-        User(String username, byte[] salt, byte[] passwordHash, double balance) {
-            this.username = username;
-            this.salt = salt;
-            this.passwordHash = passwordHash;
-            this.balance = balance;
-        }
-
-        public String getUsername() {
-            return username;
-        }
-
-        public double getBalance() {
-            return balance;
-        }
-
-        public boolean deposit(double amount) {
-            if (amount <= 0) {
-                return false; // reject invalid
-            }
-            if (this.balance + amount > 500_000) {
-                return false; // reject if it exceeds max allowed balance
-            }
-            this.balance += amount;
-            return true; // success
-        }
-
-
-        public boolean withdraw(double amount) {
-            if (amount <= 0) return false;                 // invalid
-            if (amount > MAX_WITHDRAW) return false;       // over per-transaction cap
-            if (amount > balance) return false;            // insufficient funds
-            balance -= amount;
-            return true;
-        }
-
-
-        //remove in memory transaction history heree ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
-//        public void addTransaction(String record) { transactionHistory.add(record); }
-//        public List<String> getTransactionHistory() { return transactionHistory; }
-        public byte[] getSalt() {
-
-            return salt;
-        }
-
-        public byte[] getPasswordHash() {
-            return passwordHash;
-        }
-    }
-
-    //Load user from SQLite ////////////////////////////////////////////////
-    private User loadUserFromDB(String username) {
-        String sql = "SELECT * FROM users WHERE username = ?";
-        try (Connection conn = DBHelper.connect();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, username.toLowerCase());
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                byte[] salt = rs.getBytes("salt");
-                byte[] hash = rs.getBytes("password_hash");
-                double balance = rs.getDouble("balance");
-                return new User(username, salt, hash, balance);
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return null;
-    }
-
-    //Save/update user to DB///////////////////////////////////////////////////////////////////////////////////////////
-    private void saveUserToDB(User u) {
-        String sql = "INSERT OR REPLACE INTO users (username, salt, password_hash, balance) VALUES (?, ?, ?, ?)";
-        try (Connection conn = DBHelper.connect();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, u.getUsername().toLowerCase());
-            pstmt.setBytes(2, u.getSalt());
-            pstmt.setBytes(3, u.getPasswordHash());
-            pstmt.setDouble(4, u.getBalance());
-            pstmt.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-    }
+    /* ========= Services ========= */
 
-    //Transactions in DB//////////////////////////////////////////////////////////////////////////////////////////////////////
-    private void saveTransactionToDB(User u, String action) {
-        String sql = "INSERT INTO transactions (username, timestamp, action) VALUES (?, ?, ?)";
-        String timestamp = java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").format(java.time.LocalDateTime.now());
-        try (Connection conn = DBHelper.connect();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, u.getUsername().toLowerCase());
-            pstmt.setString(2, timestamp);
-            pstmt.setString(3, action);
-            pstmt.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-    }
-
-
-    //Fetch transactions////////////////////////////////////////////////////////////////////////////////////////////////////////
-    private java.util.List<String> fetchTransactions(User u) {
-        java.util.List<String> txs = new java.util.ArrayList<>();
-        String sql = "SELECT timestamp, action FROM transactions WHERE username = ? ORDER BY id ASC";
-        try (Connection conn = DBHelper.connect();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, u.getUsername().toLowerCase());
-            ResultSet rs = pstmt.executeQuery();
-            while (rs.next()) {
-                txs.add("[" + rs.getString("timestamp") + "] " + rs.getString("action"));
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return txs;
-    }
-
-//    private void refreshTxList() {
-//        if (currentUser == null) {
-//            txList.setItems(javafx.collections.FXCollections.observableArrayList());
-//            return;
-//        }
-//        txList.setItems(javafx.collections.FXCollections.observableArrayList(fetchTransactions(currentUser)));
-//        txList.scrollTo(txList.getItems().size() - 1);
-//    }
+    // Account rules + SQLite persistence, shared with the terminal client
+    private final AtmService service = new AtmService();
+    private final ChatbotEngine chatbot = new ChatbotEngine(service);
 
+    // Idle sessions are saved and logged out by the reaper thread
+    private final SessionManager sessions = new SessionManager(SessionManager.configuredIdleMillis(), service::logout);
+    private volatile String sessionToken;
 
 //    private final Map<String, User> users = new HashMap<>();
 //    private String currentPin;  // track logged-in user//////////////////////////////////////////////////////////////////////////////////////////////
 
     private User currentUser;
 
+    private static final int SEARCH_PAGE_SIZE = 200;
+
+    // The history panel pulls archived months in one at a time
+    private int archivedMonthsShown;
+
     /* ========= UI Controls ========= */
 
     // Shared
     private Scene loginScene;
-    private Scene atmScene;
+    private volatile Scene atmScene;
+
+    // Staged startup: the login scene shows first, the rest is finished by this future
+    private final StartupTimer startupTimer = new StartupTimer();
+    private CompletableFuture<Void> startup;
+    private boolean startupWaiting;   // FX thread only
+    private volatile Image logoImage;
+
+    // Toasts + inline confirmation, one pooled set per scene
+    private final Notifier loginNotifier = new Notifier();
+    private final Notifier atmNotifier = new Notifier();
 
     // Login/Signup UI
     private TextField loginUsernameField;
@@ -206,6 +91,8 @@ public class ATMWithChatbot extends Application {
     private final TextField chatbotInput = new TextField();
     private final TextField amountField = new TextField();
     private final ListView<String> txList = new ListView<>();
+    private final TextField txSearchField = new TextField();
+    private final Label txSearchStatus = new Label("");
     private final Label currentUserLabel = new Label("");
 
     /* ========= App ========= */
@@ -218,9 +105,9 @@ public class ATMWithChatbot extends Application {
 
     @Override
     public void start(Stage stage) {
+        startupTimer.mark("jvm->start()");
         // Load users from disk (if file exists)
 //        loadUsersFromDisk();
-        DBHelper.initializeDatabase();
 
         // ---- Login & Signup Scene ----
         TabPane authTabs = new TabPane();
@@ -239,33 +126,92 @@ public class ATMWithChatbot extends Application {
         VBox loginRoot = new VBox(authTabs);
         loginRoot.setPadding(new Insets(16));
         loginRoot.getStyleClass().add("root-atm");
-        loginScene = new Scene(loginRoot, 520, 360);
-
-        // ---- ATM Scene ----
-        VBox atmRoot = buildAtmRoot(stage);
-        atmScene = new Scene(atmRoot, 1100, 620);
+        loginScene = new Scene(new StackPane(loginRoot, loginNotifier.getLayer()), 520, 360);
 
         // ---- CSS ----
         URL css = getClass().getResource("/styles.css");
         if (css != null) {
             loginScene.getStylesheets().add(css.toExternalForm());
-            atmScene.getStylesheets().add(css.toExternalForm());
-
-
         }
         System.out.println(css); // should print a valid URL, not null
 
         // ---- Stage ----
-        try {
-            URL iconUrl = getClass().getResource("/VAULT_X-LOGO.png");
-            if (iconUrl != null) stage.getIcons().add(new Image(iconUrl.toExternalForm()));
-        } catch (Exception ignored) {
-        }
         stage.setTitle("VAULT-X");
         stage.setScene(loginScene);
         stage.setMinWidth(520);
         stage.setMinHeight(360);
         stage.show();
+        startupTimer.mark("login-shown");
+
+        // First pulse that actually renders the login scene
+        CompletableFuture<Void> firstFrame = new CompletableFuture<>();
+        new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                startupTimer.mark("first-frame");
+                firstFrame.complete(null);
+                stop();
+            }
+        }.start();
+
+        // ---- Everything else in the background ----
+        // Schema and logo off the FX thread; the ATM scene is built back on it
+        startup = CompletableFuture.runAsync(() -> {
+            service.init();
+            sessions.start();
+            startupTimer.mark("schema");
+
+            try {
+                URL iconUrl = getClass().getResource("/VAULT_X-LOGO.png");
+                if (iconUrl != null) logoImage = new Image(iconUrl.toExternalForm());
+            } catch (Exception ignored) {
+            }
+            startupTimer.mark("logo-decoded");
+        }, runnable -> {
+            Thread t = new Thread(runnable, "vaultx-startup");
+            t.setDaemon(true);
+            t.start();
+        }).thenRunAsync(() -> {
+            VBox atmRoot = buildAtmRoot(stage);
+            Scene scene = new Scene(new StackPane(atmRoot, atmNotifier.getLayer()), 1100, 620);
+            if (css != null) scene.getStylesheets().add(css.toExternalForm());
+            // Any key or click keeps the session alive; only a timestamp is written
+            scene.addEventFilter(InputEvent.ANY, ev -> {
+                String token = sessionToken;
+                if (token != null) sessions.touch(token);
+            });
+            atmScene = scene;
+            if (logoImage != null) stage.getIcons().add(logoImage);
+            startupTimer.mark("atm-scene-built");
+        }, Platform::runLater);
+        // Report once both the first frame and the rest of startup are in; it writes a file, so not on the FX thread
+        CompletableFuture.allOf(firstFrame, startup).whenCompleteAsync((ok, err) -> startupTimer.finish());
+        startup.whenComplete((ok, err) -> {
+            if (err != null) Platform.runLater(() -> {
+                EventLog.error("ATMWithChatbot.start", err);
+                loginNotifier.warn("Startup Failed", "VAULT-X couldn't start. Please restart the application.");
+            });
+        });
+    }
+
+    // Runs action on the FX thread once the background part of start() is
+    // done (normally it already is); never blocks the FX thread waiting for it
+    private void whenStarted(Runnable action) {
+        if (startup.isDone()) {
+            if (startup.isCompletedExceptionally()) {
+                showWarn("Startup Failed", "VAULT-X couldn't start. Please restart the application.");
+            } else {
+                action.run();
+            }
+            return;
+        }
+        if (startupWaiting) return;   // the first click is already queued
+        startupWaiting = true;
+        showInfo("Starting", "VAULT-X is still starting, one moment...");
+        startup.thenRunAsync(() -> {
+            startupWaiting = false;
+            action.run();
+        }, Platform::runLater);
     }
 
     /* ========= UI Builders ========= */
@@ -377,43 +323,7 @@ public class ATMWithChatbot extends Application {
             Button src = (Button) e.getSource();
             double amt = Double.parseDouble(src.getText());
 
-            // Pop-up choice
-            Alert choice = new Alert(Alert.AlertType.CONFIRMATION);
-            choice.setTitle("Choose Action");
-            choice.setHeaderText("Amount selected: $" + fmt(amt));
-            choice.setContentText("Do you want to Deposit or Withdraw?");
-
-            ButtonType depositBtn = new ButtonType("Deposit");
-            ButtonType withdrawBtn = new ButtonType("Withdraw");
-            ButtonType cancelBtn = new ButtonType("Cancel", ButtonBar.ButtonData.CANCEL_CLOSE);
-
-            choice.getButtonTypes().setAll(depositBtn, withdrawBtn, cancelBtn);
-
-            Optional<ButtonType> result = choice.showAndWait();
-
-            if (result.isPresent()) {
-                if (result.get() == depositBtn) {
-                    if (currentUser.deposit(amt)) {
-                        addTx("Deposited: $" + fmt(amt));
-                        showInfo("Deposited", "$" + fmt(amt) + " added.");
-                    }else {
-                        showWarn("Limit Exceeded", "Deposit rejected. Maximum allowed balance is 500,000.");
-                    }
-                } else if (result.get() == withdrawBtn) {
-                    if (amt > MAX_WITHDRAW){
-                        showWarn("Limit Exceeded", "Maximum withdrawal per transaction is 500,000.");
-                    }
-                    else if (currentUser.withdraw(amt)) {
-                        addTx("Withdrawn: $" + fmt(amt));
-                        showInfo("Withdrawn", "$" + fmt(amt) + " withdrawn.");
-                    } else {
-                        showWarn("Failed", "Insufficient balance.");
-                    }
-                }
-            }
-
-            refreshTxList();
-            saveUserToDB(currentUser);
+            askDepositOrWithdraw("Amount selected: $" + fmt(amt), amt);
         };
 
 // Assign handler to all quick buttons
@@ -455,49 +365,15 @@ public class ATMWithChatbot extends Application {
                 return;
             }
 
-            // Show popup asking Deposit or Withdraw
-            Alert choice = new Alert(Alert.AlertType.CONFIRMATION);
-            choice.setTitle("Choose Action");
-            choice.setHeaderText("Amount entered: $" + fmt(amt));
-            choice.setContentText("Do you want to Deposit or Withdraw?");
-
-            ButtonType depositBtn = new ButtonType("Deposit");
-            ButtonType withdrawBtn = new ButtonType("Withdraw");
-            ButtonType cancelBtn = new ButtonType("Cancel", ButtonBar.ButtonData.CANCEL_CLOSE);
-
-            choice.getButtonTypes().setAll(depositBtn, withdrawBtn, cancelBtn);
-
-            Optional<ButtonType> result = choice.showAndWait();
-
-            if (result.isPresent()) {
-                if (result.get() == depositBtn) {
-                    if (currentUser.deposit(amt)) {
-                        addTx("Deposited: $" + fmt(amt));
-                        showInfo("Deposited", "$" + fmt(amt) + " added.");
-                    }else {
-                        showWarn("Limit Exceeded", "Deposit rejected. Maximum allowed balance is 500,000.");
-                    }
-                } else if (result.get() == withdrawBtn) {
-                    if (amt > MAX_WITHDRAW){
-                        showWarn("Limit Exceeded", "Maximum withdrawal per transaction is 500,000.");
-                    }
-                    else if (currentUser.withdraw(amt)) {
-                        addTx("Withdrawn: $" + fmt(amt));
-                        showInfo("Withdrawn", "$" + fmt(amt) + " withdrawn.");
-                    } else {
-                        showWarn("Failed", "Insufficient balance.");
-                    }
-                }
-            }
-
+            // Ask Deposit or Withdraw inline (no popup window)
             amountField.clear();
-            refreshTxList();
-            saveUserToDB(currentUser); // persist
+            askDepositOrWithdraw("Amount entered: $" + fmt(amt), amt);
         });
 
         /// /////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
         VBox atmButtons = new VBox(12,
                 amountField,
+                atmNotifier.getConfirmBar(),
                 quickGrid,
                 checkBalanceButton,
                 depositButton,
@@ -513,7 +389,7 @@ public class ATMWithChatbot extends Application {
         chatbotArea.setEditable(false);
         chatbotArea.getStyleClass().add("terminal-textarea");
 
-        chatbotInput.setPromptText("Try: deposit 500, withdraw 200, balance, help");
+        chatbotInput.setPromptText("Try: deposit 2000, withdraw 500, balance, help");
         chatbotInput.setPrefWidth(400);
         chatbotInput.getStyleClass().add("terminal-input");
         Button sendButton = new Button("Send");
@@ -531,7 +407,14 @@ public class ATMWithChatbot extends Application {
         // Transactions panel
         txList.setPlaceholder(new Label("No transactions yet"));
         txList.setFocusTraversable(false);
-        VBox txPanel = new VBox(8, new Label("Transactions:"), txList);
+        txSearchField.setPromptText("Search: chatbot withdrawals over 1000 last month");
+        txSearchField.getStyleClass().add("terminal-input");
+        txSearchField.setOnAction(e -> searchTxList());
+        VBox.setVgrow(txList, Priority.ALWAYS);
+        Button olderButton = new Button("Load older history");
+        olderButton.setMaxWidth(Double.MAX_VALUE);
+        olderButton.setOnAction(e -> loadOlderHistory());
+        VBox txPanel = new VBox(8, new Label("Transactions:"), txSearchField, txSearchStatus, olderButton, txList);
         txPanel.setPadding(new Insets(16));
         txPanel.getStyleClass().add("txPanel");
 
@@ -545,11 +428,7 @@ public class ATMWithChatbot extends Application {
         logoView.setFitWidth(36);
         logoView.setFitHeight(36);
         logoView.setPreserveRatio(true);
-        try {
-            URL url = getClass().getResource("/VAULT_X-LOGO.png");
-            if (url != null) logoView.setImage(new Image(url.toExternalForm()));
-        } catch (Exception ignored) {
-        }
+        if (logoImage != null) logoView.setImage(logoImage);
 
         Label titleLabel = new Label("VAULT-X");
         titleLabel.setFont(Font.font("Courier New", FontWeight.BOLD, 22));
@@ -566,9 +445,9 @@ public class ATMWithChatbot extends Application {
         // Actions
         checkBalanceButton.setOnAction(e -> {
             if (!requireLoginOrWarn()) return;
-            String message = "Your balance is: $" + fmt(currentUser.getBalance());
-            showInfo("Balance", message);
-            addTx("Checked balance: $" + fmt(currentUser.getBalance()));
+            AtmService.Result r = service.checkBalance(currentUser);
+            showInfo(r.getTitle(), r.getMessage());
+            refreshTxList();
         });
 
         depositButton.setOnAction(e -> {
@@ -581,17 +460,15 @@ public class ATMWithChatbot extends Application {
             }
 
             // ✅ Let the model decide if the deposit is valid
-            if (!currentUser.deposit(amt)) {
-                showWarn("Limit Exceeded",
-                        "Deposit rejected. Maximum allowed balance is 500,000.");
+            AtmService.Result r = service.deposit(currentUser, amt, false);
+            if (!r.isOk()) {
+                showWarn(r.getTitle(), r.getMessage());
                 return;
             }
 
-            addTx("Deposited: $" + fmt(amt));
-            showInfo("Deposited", "$" + fmt(amt) + " added.");
+            showInfo(r.getTitle(), r.getMessage());
             amountField.clear();
             refreshTxList();
-            saveUserToDB(currentUser); // persist
         });
 
 
@@ -602,39 +479,20 @@ public class ATMWithChatbot extends Application {
                 showWarn("Invalid Input", "Enter a positive amount.");
                 return;
             }
-            if (amt > MAX_WITHDRAW) {  // <-- new
-                showWarn("Limit Exceeded", "Maximum withdrawal per transaction is 500,000.");
-                return;
-            }
-            if (currentUser.withdraw(amt)) {
-                addTx("Withdrawn: $" + fmt(amt));
-                showInfo("Withdrawn", "$" + fmt(amt) + " withdrawn.");
+            AtmService.Result r = service.withdraw(currentUser, amt, false);
+            if (r.isOk()) {
+                showInfo(r.getTitle(), r.getMessage());
                 amountField.clear();
                 refreshTxList();
-                saveUserToDB(currentUser); // persist
             } else {
-                showWarn("Failed", "Insufficient balance.");
+                showWarn(r.getTitle(), r.getMessage());
             }
         });
 
 //        viewTransactionsButton.setOnAction(
 //                e -> refreshTxList());
 
-        logoutButton.setOnAction(e -> {
-            if (currentUser != null)
-                saveUserToDB(currentUser);
-
-            currentUser = null;
-            currentUserLabel.setText("");
-            amountField.clear();
-            chatbotArea.clear();
-            txList.getItems().clear();
-
-            loginUsernameField.clear();
-            loginPasswordField.clear();
-
-            ((Stage) header.getScene().getWindow()).setScene(loginScene);
-        });
+        logoutButton.setOnAction(e -> doLogout());
 
         sendButton.setOnAction(e -> handleChatbot());
         chatbotInput.setOnAction(e -> handleChatbot());
@@ -647,86 +505,45 @@ public class ATMWithChatbot extends Application {
     /* ========= Auth Actions ========= */
 
     private void doLogin(Stage stage) {
+        whenStarted(() -> login(stage));
+    }
+
+    private void login(Stage stage) {
         String username = safe(loginUsernameField.getText());
         String password = loginPasswordField.getText();
 
-        if (username.isEmpty() || password.isEmpty()) {
-            showWarn("Login", "Enter username and password.");
-            return;
-        }
-        User u = loadUserFromDB(username);
-        if (u == null) {
-            showWarn("Login", "User not found.");
+        AtmService.Result r = service.login(username, password);
+        if (!r.isOk()) {
+            showWarn(r.getTitle(), r.getMessage());
             return;
         }
-        if (verifyPassword(u.getSalt(), u.getPasswordHash(), password)) {
-            currentUser = u;
-            updateCurrentUserUI();
-            chatbotArea.clear();
-            amountField.clear();
-            refreshTxList();
-            Stage st = stage != null ? stage : (Stage) loginScene.getWindow();
-            st.setScene(atmScene);
-        } else {
-            showWarn("Login", "Incorrect password.");
-        }
+        currentUser = r.getUser();
+        sessionToken = sessions.open(currentUser, this::sessionExpired).getToken();
+        updateCurrentUserUI();
+        chatbotArea.clear();
+        amountField.clear();
+        refreshTxList();
+        Stage st = stage != null ? stage : (Stage) loginScene.getWindow();
+        st.setScene(atmScene);
     }
 
 
 
-    // Regex for strong password
-// - At least 8 chars
-// - At least one uppercase
-// - At least one lowercase
-// - At least one digit
-// - At least one special character
-    private static final String PASSWORD_REGEX =
-            "^(?=.*[a-z])(?=.*[A-Z])(?=.*\\d)(?=.*[@$!%*?&])[A-Za-z\\d@$!%*?&]{8,}$";
-
-    private boolean isStrongPassword(String pw) {
-        return pw != null && pw.matches(PASSWORD_REGEX);
+    private void doSignup() {
+        whenStarted(this::signup);
     }
 
-
-    private void doSignup() {
+    private void signup() {
         String username = safe(signupUsernameField.getText());
         String pw = signupPasswordField.getText();
         String pw2 = signupConfirmField.getText();
 
-        if (username.isEmpty() || pw.isEmpty() || pw2.isEmpty()) {
-            showWarn("Sign Up", "Fill all fields.");
+        AtmService.Result r = service.signup(username, pw, pw2);
+        if (!r.isOk()) {
+            showWarn(r.getTitle(), r.getMessage());
             return;
         }
-        if (username.contains("|")) {
-            showWarn("Sign Up", "Username cannot contain '|'.");
-            return;
-        }
-        if (!pw.equals(pw2)) {
-            showWarn("Sign Up", "Passwords do not match.");
-            return;
-        }
-        if (loadUserFromDB(username) != null) {
-            showWarn("Sign Up", "Username already exists.");
-            return;
-        }
-
-        // Optional: basic password strength
-        if (!isStrongPassword(pw)) {
-            showWarn("Sign Up",
-                    "Password must be at least 8 characters and include:\n" +
-                            "• 1 uppercase\n" +
-                            "• 1 lowercase\n" +
-                            "• 1 digit\n" +
-                            "• 1 special character");
-            return;
-        }
-
-        byte[] salt = randomSalt();
-        byte[] hash = hashPassword(salt, pw);
-        User u = new User(username, salt, hash, 0.0);
-//        users.put(username.toLowerCase(Locale.ROOT), u);
-        saveUserToDB(u);
-        showInfo("Sign Up", "Account created. You can log in now.");
+        showInfo(r.getTitle(), r.getMessage());
         // Clear fields
         signupUsernameField.clear();
         signupPasswordField.clear();
@@ -735,92 +552,48 @@ public class ATMWithChatbot extends Application {
 
     /* ========= Chatbot ========= */
 
-    private void handleChatbot() {
-        String raw = chatbotInput.getText().trim();
-        if (raw.isEmpty()) return;
+    // How the shared chatbot reaches this window
+    private final ChatbotEngine.Session chatSession = new ChatbotEngine.Session() {
+        @Override
+        public User currentUser() {
+            return currentUser;
+        }
 
-        String input = raw.toLowerCase(Locale.ROOT);
-        String response;
-        Double amount = extractAmount(raw);
-
-        if (containsAny(input, "help", "commands", "menu")) {
-            response = String.join("\n",
-                    "I can do:",
-                    "• balance — show your balance",
-                    "• deposit <amount> — add money",
-                    "• withdraw <amount> — take money out",
-                    "• history — show transactions",
-                    "• clear — clear chat",
-                    "• logout — log out"
-            );
-
-        } else if (containsAny(input, "history", "transactions", "recent")) {
-            if (!requireLoginOrWarn()) {
-                chatbotInput.clear();
-                return;
-            }
-            response = "Showing your transactions (right panel).";
+        @Override
+        public boolean requireLogin() {
+            return requireLoginOrWarn();
+        }
+
+        @Override
+        public String showHistory() {
             refreshTxList();
+            return "Showing your transactions (right panel).";
+        }
 
-        } else if (containsAny(input, "clear", "cls")) {
+        @Override
+        public void clearChat() {
             chatbotArea.clear();
-            response = "Cleared.";
+        }
 
-        } else if (containsAny(input, "logout", "sign out", "signout")) {
-            response = "You have been logged out.";
+        @Override
+        public void logout() {
             doLogout();
+        }
 
-        } else if (containsAny(input, "balance", "check balance", "show balance", "how much")) {
-            if (!requireLoginOrWarn()) {
-                chatbotInput.clear();
-                return;
-            }
-            response = "Your current balance is $" + fmt(currentUser.getBalance());
-            addTx("Checked balance: $" + fmt(currentUser.getBalance()));
+        @Override
+        public void changed() {
+            refreshTxList();
+        }
+    };
 
-        } else if (containsAny(input, "deposit", "top up", "top-up", "add", "credit", "put", "load")) {
-            if (!requireLoginOrWarn()) {
-                chatbotInput.clear();
-                return;
-            }
-            double amt = (amount != null ? amount : 100.0);
-            if (amt <= 0) {
-                response = "Enter a positive amount.";
-            } else {
-                if (!currentUser.deposit(amt)) {
-                    response = "Deposit rejected. Maximum allowed balance is 500,000.";
-                } else {
-                    addTx("Chatbot deposited: $" + fmt(amt));
-                    refreshTxList();
-                    saveUserToDB(currentUser);
-                    response = "Deposited $" + fmt(amt) + ".";
-                }
-            }
-        } else if (containsAny(input, "withdraw", "take out", "take", "minus")) {
-            if (!requireLoginOrWarn()) {
-                chatbotInput.clear();
-                return;
-            }
-            double amt = (amount != null ? amount : 100.0);
-            if (amt <= 0) {
-                response = "Enter a positive amount.";
-            } else if (amt > MAX_WITHDRAW){
-                response = "Withdrawal rejected. Maximum per transaction is 500,000.";
-            }
-            else if (currentUser.withdraw(amt)) {
-                addTx("Chatbot withdrew: $" + fmt(amt));
-                refreshTxList();
-                saveUserToDB(currentUser);
-                response = "Withdrew $" + fmt(amt) + ".";
-            } else {
-                response = "Insufficient balance.";
-            }
+    private void handleChatbot() {
+        String raw = chatbotInput.getText().trim();
+        if (raw.isEmpty()) return;
 
-        } else {
-            response = "Sorry, I didn't understand. Type 'help' to see commands.";
+        String response = chatbot.reply(raw, chatSession);
+        if (response != null) {
+            chatbotArea.appendText("You: " + raw + "\nAI: " + response + "\n\n");
         }
-
-        chatbotArea.appendText("You: " + raw + "\nAI: " + response + "\n\n");
         chatbotInput.clear();
     }
 
@@ -839,16 +612,6 @@ public class ATMWithChatbot extends Application {
         return true;
     }
 
-    private void addTx(String text) {
-        if (currentUser != null) {
-            // Save to DB
-            saveTransactionToDB(currentUser, text);
-            // Refresh transaction list
-            refreshTxList();
-        }
-    }
-
-
     // NEW SQLITE VERSION
     private void refreshTxList() {
         if (currentUser == null) {
@@ -856,129 +619,129 @@ public class ATMWithChatbot extends Application {
             return;
         }
 
-        List<String> txs = fetchTransactions(currentUser); // uses your existing method
+        List<String> txs = service.history(currentUser); // uses your existing method
 
         ObservableList<String> items = FXCollections.observableArrayList(txs);
         txList.setItems(items);
+        txSearchStatus.setText("");
+        archivedMonthsShown = 0;
 
         if (!items.isEmpty()) {
             txList.scrollTo(items.size() - 1);
         }
     }
 
+    // Prepends the next older archived month to the history list
+    private void loadOlderHistory() {
+        if (!requireLoginOrWarn()) return;
+        HistoryArchive historyArchive = service.getHistoryArchive();
+        List<java.time.YearMonth> months = historyArchive == null
+                ? Collections.emptyList() : historyArchive.months(currentUser.getUsername());
+        int next = months.size() - 1 - archivedMonthsShown;
+        if (next < 0) {
+            txSearchStatus.setText("No older history.");
+            return;
+        }
+        java.time.YearMonth month = months.get(next);
+        List<String> lines = new ArrayList<>();
+        for (LedgerEntry e : historyArchive.read(currentUser.getUsername(), month)) lines.add(e.format());
+        lines.addAll(txList.getItems());
+        txList.setItems(FXCollections.observableArrayList(lines));
+        archivedMonthsShown++;
+        txSearchStatus.setText("Loaded " + month + " from archive.");
+    }
+
+    // Runs the search box query against the in-memory index; blank query shows the full history again
+    private void searchTxList() {
+        if (!requireLoginOrWarn()) return;
+        String text = safe(txSearchField.getText());
+        if (text.isEmpty()) {
+            refreshTxList();
+            return;
+        }
+
+        TransactionIndex.Page page = service.search(currentUser, text, 0, SEARCH_PAGE_SIZE);
+        List<String> lines = new ArrayList<>();
+        for (LedgerEntry e : page.getItems()) lines.add(e.format());
+        txList.setItems(FXCollections.observableArrayList(lines));
+        txSearchStatus.setText(page.getTotal() + " match(es)"
+                + (page.getTotal() > SEARCH_PAGE_SIZE ? ", newest " + SEARCH_PAGE_SIZE + " shown" : "")
+                + " in " + String.format(Locale.US, "%.1f", page.getMicros() / 1000.0) + " ms");
+    }
+
+
+    // Toasts go to whichever scene is currently on the stage
+    private Notifier notifier() {
+        return atmScene != null && atmScene.getWindow() != null ? atmNotifier : loginNotifier;
+    }
 
     private void showInfo(String title, String msg) {
-        Alert a = new Alert(Alert.AlertType.INFORMATION);
-        a.setTitle(title);
-        a.setHeaderText(null);
-        a.setContentText(msg);
-        a.showAndWait();
+        notifier().info(title, msg);
     }
 
     private void showWarn(String title, String msg) {
-        Alert a = new Alert(Alert.AlertType.WARNING);
-        a.setTitle(title);
-        a.setHeaderText(null);
-        a.setContentText(msg);
-        a.showAndWait();
+        notifier().warn(title, msg);
     }
 
-    private boolean containsAny(String input, String... keys) {
-        for (String k : keys) if (input.contains(k)) return true;
-        return false;
+    // Inline Deposit / Withdraw question shared by the quick buttons and the amount field
+    private void askDepositOrWithdraw(String header, double amt) {
+        atmNotifier.confirm(header + ". Deposit or Withdraw?",
+                "Deposit", () -> applyDepositOrWithdraw(amt, true),
+                "Withdraw", () -> applyDepositOrWithdraw(amt, false));
     }
 
+    private void applyDepositOrWithdraw(double amt, boolean deposit) {
+        if (currentUser == null) return;
+        AtmService.Result r = deposit
+                ? service.deposit(currentUser, amt, false)
+                : service.withdraw(currentUser, amt, false);
+        if (r.isOk()) showInfo(r.getTitle(), r.getMessage());
+        else showWarn(r.getTitle(), r.getMessage());
+        refreshTxList();
+    }
+
+
     private String safe(String s) {
         return s == null ? "" : s.trim();
     }
 
     private String fmt(double v) {
-        return String.format(Locale.US, "%.2f", v);
+        return AtmService.fmt(v);
     }
 
     private Double parseAmount(String text) {
         try {
-            return extractAmount(text);
+            return ChatbotEngine.extractAmount(text);
         } catch (Exception e) {
             return null;
         }
     }
 
-    /**
-     * Extracts first number from text like "$1,200.50"
-     */
-    private Double extractAmount(String text) {
-        if (text == null) return null;
-
-        // Normalize any weird spaces (e.g., non-breaking)
-        text = text.replaceAll("[\\u00A0\\u2007\\u202F]", " ");
-
-        // 1) Support "30k" / "2.5k" style
-        java.util.regex.Matcher km = java.util.regex.Pattern
-                .compile("(?i)\\b([0-9]+(?:\\.[0-9]+)?)\\s*k\\b")
-                .matcher(text);
-        if (km.find()) {
-            try {
-                return Double.parseDouble(km.group(1)) * 1000.0;
-            } catch (NumberFormatException ignore) {
-            }
-        }
-
-        // 2) General number matcher: $ 30,000.50  |  30000  |  30 000  |  250.75
-        java.util.regex.Matcher m = java.util.regex.Pattern
-                .compile("(-?)\\s*\\$?\\s*((?:\\d{1,3}(?:[ ,]\\d{3})+)|\\d+)(?:\\.(\\d{1,2}))?")
-                .matcher(text);
-        if (!m.find()) return null;
-
-        String sign = m.group(1) == null ? "" : m.group(1);
-        String intPart = m.group(2).replaceAll("[ ,]", ""); // remove commas/spaces
-        String frac = m.group(3);
-
-        String number = sign + intPart + (frac != null ? "." + frac : "");
-        try {
-            return Double.parseDouble(number);
-        } catch (NumberFormatException e) {
-            return null;
-        }
-    }
-
-
-    /* ========= Passwords ========= */
-
-    private byte[] randomSalt() {
-        byte[] salt = new byte[16];
-        new SecureRandom().nextBytes(salt);
-        return salt;
-    }
-
-    private byte[] hashPassword(byte[] salt, String password) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            md.update(salt);
-            md.update(password.getBytes(StandardCharsets.UTF_8));
-            return md.digest();
-        } catch (Exception e) {
-            throw new RuntimeException("Hashing error", e);
-        }
+    // === Reusable logout ===
+    private void doLogout() {
+        sessions.close(sessionToken);  // saves the account through service.logout
+        resetToLogin();
     }
 
-    private boolean verifyPassword(byte[] salt, byte[] expectedHash, String candidatePassword) {
-        return Arrays.equals(expectedHash, hashPassword(salt, candidatePassword));
+    // Runs on the session reaper thread after the account was saved
+    private void sessionExpired(SessionManager.Session s) {
+        Platform.runLater(() -> {
+            if (!s.getToken().equals(sessionToken)) return;
+            resetToLogin();
+            loginNotifier.info("Session Ended", "Logged out after "
+                    + SessionManager.configuredIdleMillis() / 1000 + "s of inactivity.");
+        });
     }
 
-
-
-    // === Reusable logout ===
-    private void doLogout() {
-        if (currentUser != null) {
-            saveUserToDB(currentUser);  // keep if you already save to DB
-        }
-
+    private void resetToLogin() {
         // reset UI + state
+        sessionToken = null;
         currentUser = null;
         currentUserLabel.setText("");
+        atmNotifier.clear();
         amountField.clear();
         txList.getItems().clear();
+        txSearchField.clear();
         chatbotArea.clear();
         loginUsernameField.clear();
         loginPasswordField.clear();
@@ -1048,7 +811,7 @@ public class ATMWithChatbot extends Application {
             pstmt.setString(1, pin);
             pstmt.executeUpdate();
         } catch (SQLException e) {
-            e.printStackTrace();
+            EventLog.error("ATMWithChatbot.createUser", e);
         }
     }
 
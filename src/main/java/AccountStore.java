@@ -0,0 +1,17 @@
+import java.util.List;
+
+/**
+ * Where accounts live. Usernames are case-insensitive: implementations key
+ * them in lower case.
+ */
+public interface AccountStore {
+
+    /** The account, or null if there is none with that name. */
+    User loadUser(String username);
+
+    /** Inserts or replaces the account; false if it could not be written. */
+    boolean saveUser(User u);
+
+    /** Lower-case names of all accounts. */
+    List<String> usernames();
+}
@@ -0,0 +1,50 @@
+import java.util.Locale;
+
+/**
+ * Account tiers and their withdrawal limits.
+ *
+ * Defaults can be overridden per tier with system properties, e.g.
+ * -Dvaultx.limit.standard.daily=150000 -Dvaultx.limit.standard.rolling=200000
+ */
+public enum AccountTier {
+    STANDARD(200_000.00, 250_000.00),
+    PREMIUM(500_000.00, 750_000.00);
+
+    private final double dailyLimit;
+    private final double rollingLimit;
+
+    AccountTier(double defaultDaily, double defaultRolling) {
+        String key = "vaultx.limit." + name().toLowerCase(Locale.ROOT);
+        this.dailyLimit = readLimit(key + ".daily", defaultDaily);
+        this.rollingLimit = readLimit(key + ".rolling", defaultRolling);
+    }
+
+    /** Max total withdrawn per calendar day (local time). */
+    public double getDailyLimit() {
+        return dailyLimit;
+    }
+
+    /** Max total withdrawn in any 24 hour window. */
+    public double getRollingLimit() {
+        return rollingLimit;
+    }
+
+    public static AccountTier fromName(String name) {
+        if (name == null) return STANDARD;
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return STANDARD;
+        }
+    }
+
+    private static double readLimit(String key, double fallback) {
+        String v = System.getProperty(key);
+        if (v == null) return fallback;
+        try {
+            return Double.parseDouble(v);
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+import java.util.List;
+
+/**
+ * A balance change posted by the bank rather than by the account holder
+ * (interest, fees), for {@link Store#adjust}. It only applies if the
+ * balance is still the one it was computed from; the store fills in
+ * whether it did and the chain hashes of the rows it wrote.
+ */
+public class Adjustment {
+
+    private final String username;
+    private final double expectedBalance;
+    private final double newBalance;
+    private final List<String> actions;
+
+    // Filled in by the store
+    boolean applied;
+    String prevHash;
+    List<String> hashes;
+
+    public Adjustment(String username, double expectedBalance, double newBalance, List<String> actions) {
+        this.username = username;
+        this.expectedBalance = expectedBalance;
+        this.newBalance = newBalance;
+        this.actions = actions;
+    }
+
+    /** Lower-case account name. */
+    public String getUsername() {
+        return username;
+    }
+
+    public double getExpectedBalance() {
+        return expectedBalance;
+    }
+
+    public double getNewBalance() {
+        return newBalance;
+    }
+
+    /** Ledger rows to write, in order. */
+    public List<String> getActions() {
+        return actions;
+    }
+
+    /** False if the account was gone or its balance had moved on. */
+    public boolean isApplied() {
+        return applied;
+    }
+}
@@ -0,0 +1,210 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Streaming outlier check on withdrawals.
+ *
+ * Per account it keeps an exponentially weighted mean and variance of
+ * log(amount) and of log(seconds since the previous withdrawal), plus a
+ * decaying burst counter. State lives in parallel primitive arrays indexed
+ * by an account slot, so scoring an event is a map lookup and a handful of
+ * arithmetic operations; the only allocation is the small result.
+ *
+ * Score = the larger of "amount is unusually high" and "arrived unusually
+ * soon" in standard deviations. Scores above {@code vaultx.anomaly.flag}
+ * (default 3) are FLAGged, above {@code vaultx.anomaly.hold} (default 5) or
+ * a burst of more than {@code vaultx.anomaly.burst} withdrawals within about
+ * a minute are HELD.
+ *
+ * Replay over the existing ledger to tune thresholds:
+ * {@code java AnomalyDetector [flag] [hold]}
+ */
+public class AnomalyDetector {
+
+    public enum Verdict { ALLOW, FLAG, HOLD }
+
+    /** A verdict with the score it was reached on. */
+    public static final class Result {
+        private final Verdict verdict;
+        private final double score;
+
+        Result(Verdict verdict, double score) {
+            this.verdict = verdict;
+            this.score = score;
+        }
+
+        public Verdict getVerdict() {
+            return verdict;
+        }
+
+        /** Standard deviations from the account's usual; 0 while it is warming up. */
+        public double getScore() {
+            return score;
+        }
+    }
+
+    private static final Result FIRST = new Result(Verdict.ALLOW, 0);
+
+    private static final double ALPHA = 0.05;          // EWMA weight of a new event
+    private static final int WARMUP = 8;               // events before z-scores are trusted
+    private static final double BURST_WINDOW_SEC = 60;
+    private static final double MIN_SD = 0.25;         // floor so very regular accounts aren't hair-triggered
+
+    private final double flagScore;
+    private final double holdScore;
+    private final double burstLimit;
+
+    private final Map<String, Integer> slots = new HashMap<>();
+    private int size;
+    private double[] amtMean = new double[256];
+    private double[] amtVar = new double[256];
+    private double[] gapMean = new double[256];
+    private double[] gapVar = new double[256];
+    private double[] burst = new double[256];
+    private long[] lastMillis = new long[256];
+    private int[] count = new int[256];
+
+    public AnomalyDetector() {
+        this(doubleProp("vaultx.anomaly.flag", 3.0), doubleProp("vaultx.anomaly.hold", 5.0),
+                doubleProp("vaultx.anomaly.burst", 5.0));
+    }
+
+    public AnomalyDetector(double flagScore, double holdScore, double burstLimit) {
+        this.flagScore = flagScore;
+        this.holdScore = holdScore;
+        this.burstLimit = burstLimit;
+    }
+
+    /** Scores a withdrawal without learning from it. */
+    public synchronized Result evaluate(String username, double amount, long nowMillis) {
+        int s = slot(username);
+        if (count[s] == 0) return FIRST;
+
+        double gapSec = Math.max(0, (nowMillis - lastMillis[s]) / 1000.0);
+        double burstNow = burst[s] * Math.exp(-gapSec / BURST_WINDOW_SEC) + 1;
+
+        double score = 0;
+        if (count[s] >= WARMUP) {
+            double zAmt = (Math.log1p(amount) - amtMean[s]) / Math.max(MIN_SD, Math.sqrt(amtVar[s]));
+            double zGap = (gapMean[s] - Math.log1p(gapSec)) / Math.max(MIN_SD, Math.sqrt(gapVar[s]));
+            score = Math.max(zAmt, zGap);
+        }
+        if (burstNow > burstLimit || score >= holdScore) return new Result(Verdict.HOLD, score);
+        if (score >= flagScore) return new Result(Verdict.FLAG, score);
+        return new Result(Verdict.ALLOW, score);
+    }
+
+    /** Learns from a withdrawal that went through. */
+    public synchronized void record(String username, double amount, long nowMillis) {
+        int s = slot(username);
+        double x = Math.log1p(amount);
+        if (count[s] == 0) {
+            amtMean[s] = x;
+            amtVar[s] = 0;
+            burst[s] = 1;
+        } else {
+            double gapSec = Math.max(0, (nowMillis - lastMillis[s]) / 1000.0);
+            double g = Math.log1p(gapSec);
+            if (count[s] == 1) {
+                gapMean[s] = g;
+            } else {
+                double d = g - gapMean[s];
+                gapMean[s] += ALPHA * d;
+                gapVar[s] = (1 - ALPHA) * (gapVar[s] + ALPHA * d * d);
+            }
+            double d = x - amtMean[s];
+            amtMean[s] += ALPHA * d;
+            amtVar[s] = (1 - ALPHA) * (amtVar[s] + ALPHA * d * d);
+            burst[s] = burst[s] * Math.exp(-gapSec / BURST_WINDOW_SEC) + 1;
+        }
+        lastMillis[s] = nowMillis;
+        count[s]++;
+    }
+
+    private int slot(String username) {
+        Integer s = slots.get(username);
+        if (s == null) {
+            s = size++;
+            if (s == count.length) grow();
+            slots.put(username, s);
+        }
+        return s;
+    }
+
+    private void grow() {
+        int cap = count.length * 2;
+        amtMean = Arrays.copyOf(amtMean, cap);
+        amtVar = Arrays.copyOf(amtVar, cap);
+        gapMean = Arrays.copyOf(gapMean, cap);
+        gapVar = Arrays.copyOf(gapVar, cap);
+        burst = Arrays.copyOf(burst, cap);
+        lastMillis = Arrays.copyOf(lastMillis, cap);
+        count = Arrays.copyOf(count, cap);
+    }
+
+    private static double doubleProp(String key, double fallback) {
+        String v = System.getProperty(key);
+        if (v == null) return fallback;
+        try {
+            return Double.parseDouble(v);
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    /* ========= Replay ========= */
+
+    /**
+     * Runs the detector over every withdrawal in the transactions table in id
+     * order and prints how many would have been flagged / held, plus a score
+     * histogram to pick thresholds from.
+     */
+    public static void main(String[] args) throws Exception {
+        double flag = args.length > 0 ? Double.parseDouble(args[0]) : doubleProp("vaultx.anomaly.flag", 3.0);
+        double hold = args.length > 1 ? Double.parseDouble(args[1]) : doubleProp("vaultx.anomaly.hold", 5.0);
+        AnomalyDetector d = new AnomalyDetector(flag, hold, doubleProp("vaultx.anomaly.burst", 5.0));
+        ZoneId zone = ZoneId.systemDefault();
+
+        List<String> users = new ArrayList<>();
+        List<Double> amounts = new ArrayList<>();
+        List<Long> times = new ArrayList<>();
+        try (Connection conn = DBHelper.connect(); Statement st = conn.createStatement()) {
+            ResultSet rs = st.executeQuery("SELECT id, username, timestamp, action FROM transactions ORDER BY id ASC");
+            while (rs.next()) {
+                LedgerEntry e = new LedgerEntry(rs.getLong(1), rs.getString(2), rs.getString(3), rs.getString(4));
+                LocalDateTime t = e.getTime();
+                if (e.getType() != LedgerEntry.Type.WITHDRAW || t == null) continue;
+                users.add(e.getUsername().intern());
+                amounts.add(e.getAmount());
+                times.add(t.atZone(zone).toInstant().toEpochMilli());
+            }
+        }
+
+        int[] verdicts = new int[Verdict.values().length];
+        int[] histogram = new int[12];   // score buckets of 1.0, last one is 11+
+        long start = System.nanoTime();
+        for (int i = 0; i < users.size(); i++) {
+            Result r = d.evaluate(users.get(i), amounts.get(i), times.get(i));
+            verdicts[r.getVerdict().ordinal()]++;
+            histogram[(int) Math.min(11, Math.max(0, r.getScore()))]++;
+            d.record(users.get(i), amounts.get(i), times.get(i));   // replay learns from everything
+        }
+        long nanos = System.nanoTime() - start;
+
+        System.out.printf(Locale.US, "%d withdrawals, flag>=%.1f hold>=%.1f: allow=%d flag=%d hold=%d (%.0f ns/event)%n",
+                users.size(), flag, hold, verdicts[0], verdicts[1], verdicts[2],
+                users.isEmpty() ? 0.0 : (double) nanos / users.size());
+        for (int b = 0; b < histogram.length; b++) {
+            System.out.printf(Locale.US, "  score %2d%s %d%n", b, b == 11 ? "+ " : "..", histogram[b]);
+        }
+    }
+}
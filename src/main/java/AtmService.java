@@ -0,0 +1,706 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Account rules and persistence shared by the JavaFX app and the terminal
+ * client: login / sign-up, deposits and withdrawals (with limits, anomaly
+ * checks and the hash-chained ledger) and history.
+ *
+ * Nothing in here touches JavaFX, so the terminal client can run it
+ * without loading the toolkit. Storage goes through a {@link Store}
+ * (SQLite unless -Dvaultx.store says otherwise, see {@link Stores}).
+ */
+public class AtmService {
+
+    /** Outcome of an operation: a short title plus the message to show the user. */
+    public static class Result {
+        private final boolean ok;
+        private final String title;
+        private final String message;
+        private final User user;
+
+        private Result(boolean ok, String title, String message, User user) {
+            this.ok = ok;
+            this.title = title;
+            this.message = message;
+            this.user = user;
+        }
+
+        static Result ok(String title, String message) {
+            return new Result(true, title, message, null);
+        }
+
+        static Result fail(String title, String message) {
+            return new Result(false, title, message, null);
+        }
+
+        public boolean isOk() {
+            return ok;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        /** The logged-in account, for {@link #login}. */
+        public User getUser() {
+            return user;
+        }
+    }
+
+    /** One step of {@link #postBatch}: a deposit, a withdrawal or a balance check. */
+    public static class Posting {
+        public enum Kind { DEPOSIT, WITHDRAW, BALANCE }
+
+        private final Kind kind;
+        private final double amount;
+
+        public Posting(Kind kind, double amount) {
+            this.kind = kind;
+            this.amount = amount;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public double getAmount() {
+            return amount;
+        }
+    }
+
+    private final Store store;
+
+    // Tail hashes of the per-account ledger chains
+    private final LedgerChain ledgerChain = new LedgerChain();
+
+    // Daily / rolling-24h withdrawal limits, rebuilt from the ledger on first use
+    private final WithdrawalLimiter withdrawalLimiter = new WithdrawalLimiter(this::fetchLedgerSince);
+
+    // Per-account amount / timing statistics of withdrawals
+    private final AnomalyDetector anomalyDetector = new AnomalyDetector();
+
+    // Notes left in the cassettes; a withdrawal must be payable before the ledger is touched
+    private final CashDispenser dispenser;
+
+    // Postings taken while the store was unreachable, until the sync thread gets them in
+    private final Outbox outbox;
+
+    // Cold history (see HistoryArchive); only the SQLite store archives
+    private final HistoryArchive historyArchive;
+
+    // History search, loaded per account on first search and caught up by id afterwards
+    private final TransactionIndex txIndex = new TransactionIndex(this::fetchLedgerAfterId);
+
+    public AtmService() {
+        this(Stores.fromConfig());
+    }
+
+    public AtmService(Store store) {
+        this.store = store;
+        this.dispenser = CashDispenser.fromConfig();
+        this.outbox = Outbox.fromConfig();
+        this.historyArchive = store instanceof SqliteStore ? new HistoryArchive() : null;
+    }
+
+    /** Creates / opens the storage. Call once before the first request. */
+    public void init() {
+        store.init();
+        try {
+            outbox.open();
+        } catch (IOException e) {
+            EventLog.error("AtmService.init", e);
+        }
+        outbox.start(this::syncOutbox);
+    }
+
+    /** Flushes and closes the storage on the way out of the app. */
+    public void close() {
+        outbox.close();
+        store.close();
+    }
+
+    public Store getStore() {
+        return store;
+    }
+
+    /* ========= Auth ========= */
+
+    public Result login(String username, String password) {
+        if (username.isEmpty() || password.isEmpty()) {
+            return Result.fail("Login", "Enter username and password.");
+        }
+        User u = loadUser(username);
+        if (u == null) {
+            EventLog.event(EventLog.Type.LOGIN_FAILED, username, "unknown user");
+            return Result.fail("Login", "User not found.");
+        }
+        if (!verifyPassword(u.getSalt(), u.getPasswordHash(), password)) {
+            EventLog.event(EventLog.Type.LOGIN_FAILED, u.getUsername(), "bad password");
+            return Result.fail("Login", "Incorrect password.");
+        }
+        EventLog.event(EventLog.Type.LOGIN, u.getUsername(), null);
+        return new Result(true, "Login", "Logged in as " + u.getUsername() + ".", u);
+    }
+
+    public Result signup(String username, String pw, String pw2) {
+        if (username.isEmpty() || pw.isEmpty() || pw2.isEmpty()) {
+            return Result.fail("Sign Up", "Fill all fields.");
+        }
+        if (username.contains("|")) {
+            return Result.fail("Sign Up", "Username cannot contain '|'.");
+        }
+        if (!pw.equals(pw2)) {
+            return Result.fail("Sign Up", "Passwords do not match.");
+        }
+        if (loadUser(username) != null) {
+            return Result.fail("Sign Up", "Username already exists.");
+        }
+
+        // Optional: basic password strength
+        if (!isStrongPassword(pw)) {
+            return Result.fail("Sign Up",
+                    "Password must be at least 8 characters and include:\n" +
+                            "• 1 uppercase\n" +
+                            "• 1 lowercase\n" +
+                            "• 1 digit\n" +
+                            "• 1 special character");
+        }
+
+        byte[] salt = randomSalt();
+        byte[] hash = hashPassword(salt, pw);
+        if (!saveUser(new User(username, salt, hash, 0.0))) {
+            return Result.fail("Sign Up", "The account couldn't be created right now. Please try again later.");
+        }
+        return Result.ok("Sign Up", "Account created. You can log in now.");
+    }
+
+    /** Seals the ledger on the way out; every posting already updated the stored balance. */
+    public void logout(User u) {
+        if (u != null) {
+            store.checkpoint(u.getUsername());
+            EventLog.event(EventLog.Type.LOGOUT, u.getUsername(), null);
+        }
+    }
+
+    /** Counters of the withdrawal limit checks, for the terminal's "stats" command. */
+    public String limiterStats() {
+        return withdrawalLimiter.stats();
+    }
+
+    /* ========= Account operations ========= */
+
+    public Result deposit(User u, double amt, boolean chatbot) {
+        if (amt <= 0) {
+            return Result.fail("Invalid Input", "Enter a positive amount.");
+        }
+        String verb = chatbot ? "Chatbot deposited" : "Deposited";
+        Posted posted = outbox.isOffline() ? Posted.UNREACHABLE : post(u, amt, List.of(verb + ": $" + fmt(amt)));
+        if (posted == Posted.OK) {
+            return Result.ok("Deposited", "$" + fmt(amt) + " added.");
+        }
+        if (posted == Posted.REFUSED || !u.deposit(amt)) {
+            return Result.fail("Limit Exceeded", "Deposit rejected. Maximum allowed balance is 500,000.");
+        }
+        if (!postOffline(u, amt, verb)) {
+            u.withdraw(amt);
+            return Result.fail("Offline", "The bank can't be reached and the deposit could not be recorded. Nothing was changed.");
+        }
+        return Result.ok("Deposited", "$" + fmt(amt) + " added. " + OFFLINE_NOTE);
+    }
+
+    public Result withdraw(User u, double amt, boolean chatbot) {
+        if (amt <= 0) {
+            return Result.fail("Invalid Input", "Enter a positive amount.");
+        }
+        if (amt > User.MAX_WITHDRAW) {
+            return Result.fail("Limit Exceeded", "Maximum withdrawal per transaction is 500,000.");
+        }
+        if (!dispenser.canDispense(amt)) {
+            return Result.fail("Can't Dispense", dispenseHint(amt));
+        }
+        long now = System.currentTimeMillis();
+        String limitMsg = withdrawLimitMessage(u, amt, now);
+        if (limitMsg != null) {
+            return Result.fail("Limit Exceeded", limitMsg);
+        }
+        // Checked above, but another session may have emptied a cassette since
+        int[] notes = dispenser.take(amt);
+        if (notes == null) {
+            releaseWithdrawal(u, amt, now);
+            return Result.fail("Can't Dispense", dispenseHint(amt));
+        }
+        String verb = chatbot ? "Chatbot withdrew" : "Withdrawn";
+        Posted posted = outbox.isOffline() ? Posted.UNREACHABLE : post(u, -amt, List.of(verb + ": $" + fmt(amt)));
+        if (posted == Posted.OK) {
+            recordWithdrawal(u, amt, now);
+            return Result.ok("Withdrawn", "$" + fmt(amt) + " withdrawn (" + dispenser.describe(notes) + ").");
+        }
+        if (posted == Posted.REFUSED || !u.withdraw(amt)) {
+            dispenser.putBack(notes);
+            releaseWithdrawal(u, amt, now);
+            return Result.fail("Failed", "Insufficient balance.");
+        }
+        String offlineMsg = outbox.withdrawLimitMessage(u.getUsername(), amt);
+        if (offlineMsg != null || !postOffline(u, -amt, verb)) {
+            dispenser.putBack(notes);
+            releaseWithdrawal(u, amt, now);
+            u.deposit(amt);
+            return Result.fail("Offline", offlineMsg != null ? offlineMsg
+                    : "The bank can't be reached and the withdrawal could not be recorded. Nothing was changed.");
+        }
+        recordWithdrawal(u, amt, now);
+        return Result.ok("Withdrawn", "$" + fmt(amt) + " withdrawn (" + dispenser.describe(notes) + "). " + OFFLINE_NOTE);
+    }
+
+    public Result transfer(User u, String to, double amt) {
+        if (amt <= 0) {
+            return Result.fail("Invalid Input", "Enter a positive amount.");
+        }
+        if (amt > User.MAX_WITHDRAW) {
+            return Result.fail("Limit Exceeded", "Maximum transfer is 500,000.");
+        }
+        if (to == null || to.isEmpty()) {
+            return Result.fail("Transfer", "Who should receive it? e.g. transfer 50 to alex");
+        }
+        if (to.equalsIgnoreCase(u.getUsername())) {
+            return Result.fail("Transfer", "You can't transfer to yourself.");
+        }
+        // The store checks the balance it holds, not this session's copy
+        if (outbox.isOffline()) {
+            return Result.fail("Offline", "The bank can't be reached right now. Transfers are back once it is.");
+        }
+        String a = u.getUsername().toLowerCase();
+        String b = to.toLowerCase();
+        String timestamp = LedgerEntry.TIMESTAMP_FORMAT.format(java.time.LocalDateTime.now());
+        String err;
+        // The store appends to both chains itself; lock them in name order so two transfers can't deadlock
+        synchronized (ledgerChain.lockFor(a.compareTo(b) < 0 ? a : b)) {
+            synchronized (ledgerChain.lockFor(a.compareTo(b) < 0 ? b : a)) {
+                err = store.transfer(a, b, amt, timestamp);
+                ledgerChain.reset(a);
+                ledgerChain.reset(b);
+            }
+        }
+        if (err != null) {
+            return Result.fail("Transfer", err);
+        }
+        refresh(u); // the store already took it off the stored balance
+        EventLog.event(EventLog.Type.TRANSFER, a, b, amt);
+        return Result.ok("Transferred", "$" + fmt(amt) + " sent to " + b + ".");
+    }
+
+    /**
+     * Runs several postings as one unit: all of them are checked against the
+     * balance as it will be at that step (and the withdrawals together
+     * against the limits) before anything is written, then the balance and
+     * every ledger row are stored in one {@link Store#postBatch} call. On
+     * failure nothing is applied and the message says which step failed.
+     */
+    public Result postBatch(User u, List<Posting> postings, boolean chatbot) {
+        if (outbox.isOffline()) {
+            return Result.fail("Offline", "The bank can't be reached right now. Run the steps one at a time until it is back.");
+        }
+        refresh(u);
+        double balance = u.getBalance();
+        double withdrawn = 0;
+        List<String> actions = new ArrayList<>();
+        for (int i = 0; i < postings.size(); i++) {
+            Posting p = postings.get(i);
+            String step = "Step " + (i + 1) + ": ";
+            if (p.kind == Posting.Kind.BALANCE) {
+                actions.add("Checked balance: $" + fmt(balance));
+                continue;
+            }
+            if (p.amount <= 0) {
+                return Result.fail("Invalid Input", step + "enter a positive amount.");
+            }
+            if (p.kind == Posting.Kind.DEPOSIT) {
+                if (balance + p.amount > User.MAX_BALANCE) {
+                    return Result.fail("Limit Exceeded", step + "maximum allowed balance is 500,000.");
+                }
+                balance += p.amount;
+                actions.add((chatbot ? "Chatbot deposited: $" : "Deposited: $") + fmt(p.amount));
+            } else {
+                if (p.amount > User.MAX_WITHDRAW) {
+                    return Result.fail("Limit Exceeded", step + "maximum withdrawal per transaction is 500,000.");
+                }
+                if (p.amount > balance) {
+                    return Result.fail("Failed", step + "insufficient balance.");
+                }
+                balance -= p.amount;
+                withdrawn += p.amount;
+                actions.add((chatbot ? "Chatbot withdrew: $" : "Withdrawn: $") + fmt(p.amount));
+            }
+        }
+        long now = System.currentTimeMillis();
+        if (withdrawn > 0) {
+            String limitMsg = withdrawLimitMessage(u, withdrawn, now);
+            if (limitMsg != null) return Result.fail("Limit Exceeded", limitMsg);
+        }
+        List<Double> cash = new ArrayList<>();
+        for (Posting p : postings) {
+            if (p.kind == Posting.Kind.WITHDRAW) cash.add(p.amount);
+        }
+        List<int[]> notes = dispenser.takeAll(cash);
+        if (notes == null) {
+            if (withdrawn > 0) releaseWithdrawal(u, withdrawn, now);
+            return Result.fail("Can't Dispense", "This ATM doesn't have the notes to pay out all of those withdrawals.");
+        }
+
+        Posted posted = post(u, balance - u.getBalance(), actions);
+        if (posted != Posted.OK) {
+            for (int[] n : notes) dispenser.putBack(n);
+            if (withdrawn > 0) releaseWithdrawal(u, withdrawn, now);
+            return Result.fail("Failed", posted == Posted.REFUSED
+                    ? "Your balance changed while the batch was checked; nothing was changed."
+                    : "Could not save the batch; nothing was changed.");
+        }
+        // One withdrawal of the total, as it was checked above
+        if (withdrawn > 0) recordWithdrawal(u, withdrawn, now);
+        return Result.ok("Done", actions.size() + " step(s) posted. Balance: $" + fmt(u.getBalance()));
+    }
+
+    public CashDispenser getDispenser() {
+        return dispenser;
+    }
+
+    /** Why amount can't be paid out, with the nearest amounts that can. */
+    public String dispenseHint(double amount) {
+        double[] near = dispenser.nearest(amount);
+        StringBuilder sb = new StringBuilder("This ATM can't pay out $" + fmt(amount) + " with the notes it has.");
+        if (!Double.isNaN(near[0]) && !Double.isNaN(near[1])) {
+            sb.append(" Nearest: $").append(fmt(near[0])).append(" or $").append(fmt(near[1])).append('.');
+        } else if (!Double.isNaN(near[0])) {
+            sb.append(" The most it can pay near that is $").append(fmt(near[0])).append('.');
+        } else if (!Double.isNaN(near[1])) {
+            sb.append(" The nearest it can pay is $").append(fmt(near[1])).append('.');
+        }
+        return sb.toString();
+    }
+
+    public Result checkBalance(User u) {
+        refresh(u);
+        saveTransaction(u, "Checked balance: $" + fmt(u.getBalance()));
+        return Result.ok("Balance", "Your balance is: $" + fmt(u.getBalance()));
+    }
+
+    public String limitsSummary(User u) {
+        AccountTier tier = u.getTier();
+        return "Tier " + tier.name() + ": daily $" + fmt(tier.getDailyLimit())
+                + ", any 24h $" + fmt(tier.getRollingLimit())
+                + ". You can still withdraw $"
+                + fmt(withdrawalLimiter.remaining(u.getUsername(), tier, System.currentTimeMillis())) + ".";
+    }
+
+    // Daily / rolling-24h limit and anomaly check; returns the rejection message,
+    // or null with amt reserved against the limits (release it if the payout fails)
+    private String withdrawLimitMessage(User u, double amt, long now) {
+        String msg = withdrawalLimiter.reserve(u.getUsername(), u.getTier(), amt, now);
+        if (msg != null) return msg;
+
+        String key = u.getUsername().toLowerCase();
+        AnomalyDetector.Result check = anomalyDetector.evaluate(key, amt, now);
+        if (check.getVerdict() != AnomalyDetector.Verdict.ALLOW) {
+            EventLog.event(EventLog.Type.ANOMALY, key,
+                    check.getVerdict() + " score " + String.format(Locale.US, "%.1f", check.getScore()), amt);
+        }
+        if (check.getVerdict() == AnomalyDetector.Verdict.HOLD) {
+            releaseWithdrawal(u, amt, now);
+            saveTransaction(u, "Security hold: $" + fmt(amt));
+            return "This withdrawal has been held for review. Please contact support.";
+        }
+        return null;
+    }
+
+    // The limiter counted it when it was reserved
+    private void recordWithdrawal(User u, double amt, long now) {
+        anomalyDetector.record(u.getUsername().toLowerCase(), amt, now);
+    }
+
+    private void releaseWithdrawal(User u, double amt, long now) {
+        withdrawalLimiter.release(u.getUsername(), amt, now);
+    }
+
+    /* ========= History ========= */
+
+    /** Live (hot) history, oldest first, formatted for display. */
+    public List<String> history(User u) {
+        return fetchTransactions(u);
+    }
+
+    public TransactionIndex.Page search(User u, String query, int offset, int limit) {
+        return txIndex.search(u.getUsername(), TransactionQuery.parse(query), offset, limit);
+    }
+
+    /** Null when the store keeps no archive. */
+    public HistoryArchive getHistoryArchive() {
+        return historyArchive;
+    }
+
+    /* ========= Persistence ========= */
+
+    public User loadUser(String username) {
+        return store.loadUser(username);
+    }
+
+    /**
+     * Writes the account (sign-up, profile changes). Balances never go
+     * through here: postings move them with {@link Store#post}. Returns false
+     * if the store could not write it.
+     */
+    public boolean saveUser(User u) {
+        // The stored balance still lacks the offline postings; syncing them brings it level
+        if (outbox.hasPending(u.getUsername())) return true;
+        return store.saveUser(u);
+    }
+
+    private enum Posted { OK, REFUSED, UNREACHABLE }
+
+    /**
+     * Chains the rows, then adds delta to the stored balance and appends them
+     * as one unit (see {@link Store#post}). The session's User takes over the
+     * balance the store ended up with, so a credit another session or the
+     * bank made meanwhile is never overwritten. REFUSED means the store is
+     * up but the balance doesn't allow it.
+     */
+    private Posted post(User u, double delta, List<String> actions) {
+        String timestamp = LedgerEntry.TIMESTAMP_FORMAT.format(java.time.LocalDateTime.now());
+        String username = u.getUsername().toLowerCase();
+        double stored;
+        synchronized (ledgerChain.lockFor(username)) {
+            stored = postChained(username, delta, true, timestamp, actions);
+        }
+        if (Double.isNaN(stored)) {
+            User now = store.loadUser(username);
+            if (now == null) return Posted.UNREACHABLE;
+            u.setBalance(now.getBalance());
+            return Posted.REFUSED;
+        }
+        u.setBalance(stored);
+        for (String action : actions) EventLog.event(EventLog.Type.POSTING, username, action);
+        return Posted.OK;
+    }
+
+    // How often rows are chained again after another process moved the account's tail
+    private static final int CHAIN_RETRIES = 3;
+
+    /**
+     * Chains the rows onto the account's tail and posts them with
+     * {@link Store#post}; call it holding the account's ledger lock. The
+     * cached tail goes stale when another process (the end of day job,
+     * another terminal) writes to the account, and the store then refuses
+     * the rows rather than fork the chain; they are chained onto the new
+     * tail and posted again. Returns the stored balance, or NaN.
+     */
+    private double postChained(String username, double delta, boolean guarded, String timestamp, List<String> actions) {
+        for (int attempt = 0; ; attempt++) {
+            String prev = ledgerChain.tail(store, username);
+            List<String> hashes = new ArrayList<>(actions.size());
+            String link = prev;
+            for (String action : actions) {
+                link = LedgerChain.link(link, username, timestamp, action);
+                hashes.add(link);
+            }
+            double stored = store.post(username, delta, guarded, timestamp, actions, prev, hashes);
+            if (!Double.isNaN(stored)) {
+                ledgerChain.advance(username, link);
+                return stored;
+            }
+            ledgerChain.reset(username);
+            if (attempt == CHAIN_RETRIES || !tailMoved(username, prev)) return Double.NaN;
+        }
+    }
+
+    // Whether the store's tail is no longer the one rows were chained to
+    private boolean tailMoved(String username, String prev) {
+        String now = store.lastHash(username);
+        return !prev.equals(now == null ? LedgerChain.GENESIS : now);
+    }
+
+    // Takes over the stored balance, which may have moved since login; not while
+    // offline postings of the account are pending, as the store doesn't have them yet
+    private void refresh(User u) {
+        if (outbox.hasPending(u.getUsername())) return;
+        User stored = store.loadUser(u.getUsername());
+        if (stored != null) u.setBalance(stored.getBalance());
+    }
+
+    /** Appends a chained ledger row; false if the store didn't take it. */
+    public boolean saveTransaction(User u, String action) {
+        String timestamp = LedgerEntry.TIMESTAMP_FORMAT.format(java.time.LocalDateTime.now());
+        String username = u.getUsername().toLowerCase();
+        synchronized (ledgerChain.lockFor(username)) {
+            for (int attempt = 0; ; attempt++) {
+                // Chain the row to the account's previous one (see LedgerChain)
+                String prev = ledgerChain.tail(store, username);
+                String hash = LedgerChain.link(prev, username, timestamp, action);
+                if (store.append(username, timestamp, action, prev, hash) >= 0) {
+                    ledgerChain.advance(username, hash);
+                    break;
+                }
+                ledgerChain.reset(username);
+                if (attempt == CHAIN_RETRIES || !tailMoved(username, prev)) return false;
+            }
+        }
+        EventLog.event(EventLog.Type.POSTING, username, action);
+        return true;
+    }
+
+    /* ========= Offline ========= */
+
+    private static final String OFFLINE_NOTE = "(Offline: your account is updated once the bank is back.)";
+
+    public Outbox getOutbox() {
+        return outbox;
+    }
+
+    // Records a deposit (delta > 0) or withdrawal in the outbox; false if even that failed
+    private boolean postOffline(User u, double delta, String verb) {
+        String key = Outbox.newKey();
+        String timestamp = LedgerEntry.TIMESTAMP_FORMAT.format(java.time.LocalDateTime.now());
+        String action = verb + " " + Outbox.tag(key) + ": $" + fmt(Math.abs(delta));
+        if (!outbox.record(key, u.getUsername(), delta, timestamp, action)) return false;
+        EventLog.event(EventLog.Type.POSTING, u.getUsername().toLowerCase(), action);
+        return true;
+    }
+
+    /**
+     * Moves the oldest offline postings into the store and returns how many
+     * got in (0 while it is still unreachable). Each account's postings are
+     * added to its stored balance, one {@link Store#post} per
+     * run of postings from the same minute; postings whose key is already
+     * in the ledger are only acknowledged.
+     */
+    public int syncOutbox() {
+        Map<String, List<Outbox.Entry>> byAccount = new LinkedHashMap<>();
+        for (Outbox.Entry e : outbox.peek()) {
+            byAccount.computeIfAbsent(e.getUsername(), k -> new ArrayList<>()).add(e);
+        }
+        int synced = 0;
+        accounts:
+        for (Map.Entry<String, List<Outbox.Entry>> acct : byAccount.entrySet()) {
+            String username = acct.getKey();
+            List<Outbox.Entry> entries = acct.getValue();
+            synchronized (ledgerChain.lockFor(username)) {
+                User stored = store.loadUser(username);
+                if (stored == null) {
+                    // Unreachable, or the account is gone; the others may still get in
+                    park(username, "account can't be loaded");
+                    continue;
+                }
+
+                // Got in before a crash lost their ack
+                List<Outbox.Entry> already = new ArrayList<>();
+                List<Outbox.Entry> todo = new ArrayList<>();
+                List<LedgerEntry> recent = store.since(username, entries.get(0).getTimestamp());
+                for (Outbox.Entry e : entries) {
+                    boolean found = false;
+                    for (LedgerEntry r : recent) found |= r.getAction().contains(Outbox.tag(e.getKey()));
+                    (found ? already : todo).add(e);
+                }
+                outbox.ack(already);
+                synced += already.size();
+
+                ledgerChain.reset(username);
+                for (int i = 0; i < todo.size(); ) {
+                    String timestamp = todo.get(i).getTimestamp();
+                    List<String> actions = new ArrayList<>();
+                    double delta = 0;
+                    int j = i;
+                    for (; j < todo.size() && todo.get(j).getTimestamp().equals(timestamp); j++) {
+                        actions.add(todo.get(j).getAction());
+                        delta += todo.get(j).getDelta();
+                    }
+                    // Unguarded: the cash is already out, so this may take the balance below zero
+                    if (Double.isNaN(postChained(username, delta, false, timestamp, actions))) {
+                        park(username, "store refused the posting");
+                        continue accounts;
+                    }
+                    outbox.ack(todo.subList(i, j));
+                    synced += j - i;
+                    i = j;
+                }
+            }
+        }
+        return synced;
+    }
+
+    private void park(String username, String why) {
+        outbox.park(username);
+        EventLog.event(EventLog.Type.STORE, username, "outbox sync parked: " + why);
+    }
+
+    private List<String> fetchTransactions(User u) {
+        List<String> txs = new ArrayList<>();
+        for (LedgerEntry e : store.afterId(u.getUsername(), 0)) txs.add(e.format());
+        return txs;
+    }
+
+    //Ledger rows since a timestamp (used to rebuild withdrawal limit counters)////////////////////////////////////////////////
+    private List<LedgerEntry> fetchLedgerSince(String username, String since) {
+        return store.since(username, since);
+    }
+
+    //Ledger rows after an id (used to keep the history search index up to date)////////////////////////////////////////////
+    private List<LedgerEntry> fetchLedgerAfterId(String username, long afterId) {
+        List<LedgerEntry> rows = new ArrayList<>();
+        if (afterId == 0 && historyArchive != null) rows.addAll(historyArchive.readAll(username)); // archived ids are all older
+        rows.addAll(store.afterId(username, afterId));
+        return rows;
+    }
+
+    /* ========= Passwords ========= */
+
+    // Regex for strong password
+// - At least 8 chars
+// - At least one uppercase
+// - At least one lowercase
+// - At least one digit
+// - At least one special character
+    private static final String PASSWORD_REGEX =
+            "^(?=.*[a-z])(?=.*[A-Z])(?=.*\\d)(?=.*[@$!%*?&])[A-Za-z\\d@$!%*?&]{8,}$";
+
+    private boolean isStrongPassword(String pw) {
+        return pw != null && pw.matches(PASSWORD_REGEX);
+    }
+
+    private byte[] randomSalt() {
+        byte[] salt = new byte[16];
+        new SecureRandom().nextBytes(salt);
+        return salt;
+    }
+
+    private byte[] hashPassword(byte[] salt, String password) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(salt);
+            md.update(password.getBytes(StandardCharsets.UTF_8));
+            return md.digest();
+        } catch (Exception e) {
+            throw new RuntimeException("Hashing error", e);
+        }
+    }
+
+    private boolean verifyPassword(byte[] salt, byte[] expectedHash, String candidatePassword) {
+        return Arrays.equals(expectedHash, hashPassword(salt, candidatePassword));
+    }
+
+    /* ========= Helpers ========= */
+
+    public static String fmt(double v) {
+        return String.format(Locale.US, "%.2f", v);
+    }
+}
@@ -0,0 +1,153 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Burkhard-Keller tree over words with Levenshtein distance: finds every
+ * word within a few edits of a query without comparing against all of
+ * them. Each child edge is labelled with its distance to the parent, and
+ * by the triangle inequality only the edges within maxDist of the query's
+ * own distance to the parent can lead to a match.
+ *
+ * A search also takes a deadline (System.nanoTime()); when it passes, the
+ * search stops and returns what it has found so far, marked incomplete.
+ */
+public class BKTree<V> {
+
+    /** A word found by {@link #search}, with its payload and edit distance. */
+    public static final class Match<V> {
+        public final String word;
+        public final V value;
+        public final int distance;
+
+        public Match(String word, V value, int distance) {
+            this.word = word;
+            this.value = value;
+            this.distance = distance;
+        }
+
+        @Override
+        public String toString() {
+            return word + "(" + distance + ")";
+        }
+    }
+
+    /** Outcome of one search: matches nearest first, and whether the whole tree was covered. */
+    public static final class Search<V> {
+        public final List<Match<V>> matches;
+        public final boolean complete;
+        public final int visited;
+
+        Search(List<Match<V>> matches, boolean complete, int visited) {
+            this.matches = matches;
+            this.complete = complete;
+            this.visited = visited;
+        }
+    }
+
+    private static final class Node<V> {
+        final String word;
+        final V value;
+        Node<V>[] children;   // indexed by distance to this node
+
+        Node(String word, V value) {
+            this.word = word;
+            this.value = value;
+        }
+    }
+
+    private Node<V> root;
+    private int size;
+
+    /** Adds a word; a word that is already in the tree keeps its first value. */
+    @SuppressWarnings("unchecked")
+    public void add(String word, V value) {
+        if (root == null) {
+            root = new Node<>(word, value);
+            size++;
+            return;
+        }
+        Node<V> n = root;
+        while (true) {
+            int d = distance(word, n.word, Integer.MAX_VALUE);
+            if (d == 0) return;
+            if (n.children == null) n.children = (Node<V>[]) new Node<?>[d + 1];
+            else if (n.children.length <= d) n.children = Arrays.copyOf(n.children, d + 1);
+            if (n.children[d] == null) {
+                n.children[d] = new Node<>(word, value);
+                size++;
+                return;
+            }
+            n = n.children[d];
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Every word within maxDist edits of query, nearest first (ties in insertion order). */
+    public Search<V> search(String query, int maxDist, long deadlineNanos) {
+        List<Match<V>> out = new ArrayList<>();
+        if (root == null) return new Search<>(out, true, 0);
+        ArrayDeque<Node<V>> todo = new ArrayDeque<>();
+        todo.add(root);
+        int visited = 0;
+        boolean complete = true;
+        while (!todo.isEmpty()) {
+            if (System.nanoTime() - deadlineNanos > 0) {
+                complete = false;
+                break;
+            }
+            Node<V> n = todo.poll();
+            visited++;
+            // Exact distance is only needed up to maxDist for a match, but the
+            // edge pruning below needs it a little further out
+            int d = distance(query, n.word, maxDist + longest(n));
+            if (d <= maxDist) out.add(new Match<>(n.word, n.value, d));
+            if (n.children == null) continue;
+            int from = Math.max(1, d - maxDist);
+            int to = Math.min(n.children.length - 1, d + maxDist);
+            for (int i = from; i <= to; i++) {
+                if (n.children[i] != null) todo.add(n.children[i]);
+            }
+        }
+        out.sort(Comparator.comparingInt(m -> m.distance));
+        return new Search<>(out, complete, visited);
+    }
+
+    private static int longest(Node<?> n) {
+        return n.children == null ? 0 : n.children.length;
+    }
+
+    /**
+     * Levenshtein distance, or any value above max once it is certain to
+     * exceed it (the smallest entry of a DP row never decreases).
+     */
+    static int distance(String a, String b, int max) {
+        int la = a.length();
+        int lb = b.length();
+        if (Math.abs(la - lb) > max) return max + 1;
+        int[] prev = new int[lb + 1];
+        int[] cur = new int[lb + 1];
+        for (int j = 0; j <= lb; j++) prev[j] = j;
+        for (int i = 1; i <= la; i++) {
+            cur[0] = i;
+            int rowMin = i;
+            char ca = a.charAt(i - 1);
+            for (int j = 1; j <= lb; j++) {
+                int cost = ca == b.charAt(j - 1) ? 0 : 1;
+                int v = Math.min(Math.min(cur[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+                cur[j] = v;
+                if (v < rowMin) rowMin = v;
+            }
+            if (rowMin > max) return max + 1;
+            int[] t = prev;
+            prev = cur;
+            cur = t;
+        }
+        return prev[lb];
+    }
+}
@@ -0,0 +1,432 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * The terminal's note cassettes: how many notes of each denomination are
+ * left, and which mix of them pays out a given amount with the fewest notes.
+ *
+ * The mix comes from a bounded change-making table over every amount up
+ * to {@link User#MAX_WITHDRAW}, built from the current inventory (each
+ * cassette split into 1, 2, 4, ... note bundles, so a 0/1 pass per bundle
+ * covers every count). A cassette never counts for more notes than
+ * the limit could use. The table is kept per denomination, so after a
+ * change only the passes from that denomination on are redone.
+ *
+ * Paying out doesn't rebuild it: a table built for more notes than are
+ * left still gives the fewest-notes mix whenever that mix fits what is
+ * left, and an amount it can't pay can't be paid with fewer notes either.
+ * Only when the mix no longer fits, or notes were added, is it redone.
+ * A lookup is an array read plus a walk back over the bundles.
+ * <pre>
+ *   -Dvaultx.cassettes=10000:500,5000:500,1000:1000,500:1000   initial fill (denomination:notes)
+ *   -Dvaultx.cassettes.file=path    where the counts are kept (default ~/.vaultx_cassettes)
+ *
+ *   java CashDispenser [show | load &lt;denomination:notes,...&gt; | bench]
+ * </pre>
+ * Deposits don't add notes: the terminal doesn't know which notes went in.
+ */
+public class CashDispenser {
+
+    private static final String DEFAULT_FILL = "10000:500,5000:500,1000:1000,500:1000";
+    private static final int NONE = Integer.MAX_VALUE;
+
+    private final int[] denominations;   // largest first
+    private final int[] counts;
+    private final Path file;
+    private final int unit;              // gcd of the denominations
+    private final int maxUnits;
+
+    // Cached table, built for at least the notes left (capped at what the limit can use)
+    private int[] minNotes;              // fewest notes per amount (in units), NONE if impossible
+    private final int[][] before;        // before[i]: minNotes using only denominations before i
+    private final int[][] bundleSize;    // bundleSize[i][k]: notes in bundle k of denomination i
+    private final boolean[][][] used;    // used[i][k][units]: bundle taken on the best path
+    private final int[] built;           // notes per denomination the table was built for
+    private int dirtyFrom;               // first denomination to redo, length = up to date
+    private long rebuilds;
+
+    public CashDispenser(int[] denominations, int[] counts, Path file) {
+        Integer[] order = new Integer[denominations.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Integer.compare(denominations[b], denominations[a]));
+        this.denominations = new int[order.length];
+        this.counts = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            this.denominations[i] = denominations[order[i]];
+            this.counts[i] = counts[order[i]];
+        }
+        int g = 0;
+        for (int d : this.denominations) g = gcd(g, d);
+        this.unit = Math.max(1, g);
+        this.maxUnits = (int) (User.MAX_WITHDRAW / unit);
+        this.file = file;
+        this.before = new int[order.length][];
+        this.bundleSize = new int[order.length][];
+        this.used = new boolean[order.length][][];
+        this.built = new int[order.length];
+    }
+
+    /** The cassettes as last saved, or the -Dvaultx.cassettes fill the first time. */
+    public static CashDispenser fromConfig() {
+        Path file = Paths.get(System.getProperty("vaultx.cassettes.file",
+                Paths.get(System.getProperty("user.home"), ".vaultx_cassettes").toString()));
+        String fill = System.getProperty("vaultx.cassettes", DEFAULT_FILL);
+        if (Files.exists(file)) {
+            Properties p = new Properties();
+            try (InputStream in = Files.newInputStream(file)) {
+                p.load(in);
+                StringBuilder saved = new StringBuilder();
+                for (String k : p.stringPropertyNames()) {
+                    if (saved.length() > 0) saved.append(',');
+                    saved.append(k).append(':').append(p.getProperty(k).trim());
+                }
+                if (saved.length() > 0) fill = saved.toString();
+            } catch (IOException | RuntimeException e) {
+                EventLog.error("CashDispenser.fromConfig", e);
+            }
+        }
+        return parse(fill, file);
+    }
+
+    static CashDispenser parse(String fill, Path file) {
+        String[] parts = fill.split(",");
+        int[] denoms = new int[parts.length];
+        int[] notes = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            String[] dn = parts[i].trim().split(":");
+            denoms[i] = Integer.parseInt(dn[0].trim());
+            notes[i] = Integer.parseInt(dn[1].trim());
+        }
+        return new CashDispenser(denoms, notes, file);
+    }
+
+    /* ========= Lookups ========= */
+
+    /** Notes per denomination (in {@link #getDenominations()} order) for amount, or null if it can't be paid. */
+    public synchronized int[] plan(double amount) {
+        int units = toUnits(amount);
+        if (units < 0) return null;
+        table();
+        if (minNotes[units] == NONE) return null;
+        int[] notes = walk(units);
+        if (fits(notes)) return notes;
+        // The best mix for the notes the table was built with is gone: redo it for what is left
+        refresh();
+        return minNotes[units] == NONE ? null : walk(units);
+    }
+
+    public boolean canDispense(double amount) {
+        return plan(amount) != null;
+    }
+
+    /** The nearest payable amounts {below, above} (either may be NaN); both equal amount if it is payable. */
+    public synchronized double[] nearest(double amount) {
+        refresh();
+        int from = (int) Math.min(maxUnits, Math.max(0, Math.floor(amount / unit)));
+        double below = Double.NaN;
+        double above = Double.NaN;
+        for (int a = from; a > 0; a--) {
+            if (minNotes[a] != NONE) {
+                below = (double) a * unit;
+                break;
+            }
+        }
+        for (int a = (int) Math.max(1, Math.ceil(amount / unit)); a <= maxUnits; a++) {
+            if (minNotes[a] != NONE) {
+                above = (double) a * unit;
+                break;
+            }
+        }
+        return new double[]{below, above};
+    }
+
+    /* ========= Paying out ========= */
+
+    /** Removes the notes for amount and returns them, or null (nothing removed) if it can't be paid. */
+    public synchronized int[] take(double amount) {
+        int[] notes = plan(amount);
+        if (notes == null) return null;
+        remove(notes);
+        save();
+        return notes;
+    }
+
+    /**
+     * Pays several amounts in turn, each from what the earlier ones left;
+     * either all of them are taken or none. Returns the notes per amount.
+     */
+    public synchronized List<int[]> takeAll(List<Double> amounts) {
+        List<int[]> taken = new ArrayList<>();
+        for (double amount : amounts) {
+            int[] notes = plan(amount);
+            if (notes == null) {
+                for (int[] t : taken) add(t);
+                return null;
+            }
+            remove(notes);
+            taken.add(notes);
+        }
+        if (!taken.isEmpty()) save();
+        return taken;
+    }
+
+    /** Returns notes taken for a payout that was then refused. */
+    public synchronized void putBack(int[] notes) {
+        add(notes);
+        save();
+    }
+
+    /** Sets the counts, e.g. after the cassettes were refilled. */
+    public synchronized void load(int denomination, int notes) {
+        for (int i = 0; i < denominations.length; i++) {
+            if (denominations[i] == denomination) {
+                counts[i] = notes;
+                grown(i);
+                save();
+                return;
+            }
+        }
+        throw new IllegalArgumentException("No cassette for " + denomination);
+    }
+
+    /* ========= Describing ========= */
+
+    public int[] getDenominations() {
+        return denominations.clone();
+    }
+
+    public synchronized int[] getCounts() {
+        return counts.clone();
+    }
+
+    public long getRebuilds() {
+        return rebuilds;
+    }
+
+    /** "2 x 10000 + 1 x 500" */
+    public String describe(int[] notes) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < notes.length; i++) {
+            if (notes[i] == 0) continue;
+            if (sb.length() > 0) sb.append(" + ");
+            sb.append(notes[i]).append(" x ").append(denominations[i]);
+        }
+        return sb.toString();
+    }
+
+    public synchronized String inventory() {
+        StringBuilder sb = new StringBuilder();
+        long total = 0;
+        for (int i = 0; i < denominations.length; i++) {
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(counts[i]).append(" x ").append(denominations[i]);
+            total += (long) counts[i] * denominations[i];
+        }
+        return sb + " (total $" + AtmService.fmt(total) + ")";
+    }
+
+    /* ========= Internals ========= */
+
+    // Amount in units, or -1 if it isn't a positive whole number of units within the limit
+    private int toUnits(double amount) {
+        double u = amount / unit;
+        long r = Math.round(u);
+        if (r <= 0 || r > maxUnits || Math.abs(u - r) > 1e-9) return -1;
+        return (int) r;
+    }
+
+    // Notes of denomination i the table needs to know about: more than the limit can use don't matter
+    private int cap(int i) {
+        return Math.min(counts[i], maxUnits / (denominations[i] / unit));
+    }
+
+    private void table() {
+        if (minNotes != null && dirtyFrom >= denominations.length) return;
+        int from = minNotes == null ? 0 : dirtyFrom;
+        int[] best;
+        if (from == 0) {
+            best = new int[maxUnits + 1];
+            Arrays.fill(best, NONE);
+            best[0] = 0;
+        } else {
+            best = before[from].clone();
+        }
+        for (int i = from; i < denominations.length; i++) {
+            before[i] = i == from && from > 0 ? before[i] : best.clone();
+            built[i] = cap(i);
+            int[] sizes = new int[32 - Integer.numberOfLeadingZeros(built[i])];
+            int left = built[i];
+            for (int k = 0; left > 0; k++) {
+                sizes[k] = Math.min(1 << k, left);
+                left -= sizes[k];
+            }
+            boolean[][] take = used[i] != null && used[i].length == sizes.length ? used[i] : new boolean[sizes.length][maxUnits + 1];
+            for (int k = 0; k < sizes.length; k++) {
+                boolean[] row = take[k];
+                if (take == used[i]) Arrays.fill(row, false);
+                int notes = sizes[k];
+                int step = notes * (denominations[i] / unit);
+                for (int a = maxUnits; a >= step; a--) {
+                    int prev = best[a - step];
+                    if (prev != NONE && prev + notes < best[a]) {
+                        best[a] = prev + notes;
+                        row[a] = true;
+                    }
+                }
+            }
+            bundleSize[i] = sizes;
+            used[i] = take;
+        }
+        minNotes = best;
+        dirtyFrom = denominations.length;
+        rebuilds++;
+    }
+
+    // Makes the table exact for the notes left, redoing it from the first denomination that changed
+    private void refresh() {
+        for (int i = 0; i < denominations.length && minNotes != null; i++) {
+            if (built[i] != cap(i)) {
+                dirtyFrom = Math.min(dirtyFrom, i);
+                break;
+            }
+        }
+        table();
+    }
+
+    private int[] walk(int units) {
+        int[] notes = new int[denominations.length];
+        int a = units;
+        for (int i = denominations.length - 1; i >= 0 && a > 0; i--) {
+            int step = denominations[i] / unit;
+            for (int k = bundleSize[i].length - 1; k >= 0; k--) {
+                if (used[i][k][a]) {
+                    notes[i] += bundleSize[i][k];
+                    a -= bundleSize[i][k] * step;
+                }
+            }
+        }
+        return notes;
+    }
+
+    private boolean fits(int[] notes) {
+        for (int i = 0; i < notes.length; i++) if (notes[i] > counts[i]) return false;
+        return true;
+    }
+
+    // Fewer notes keep the table usable (plan checks the mix still fits); more may give better mixes
+    private void remove(int[] notes) {
+        for (int i = 0; i < notes.length; i++) counts[i] -= notes[i];
+    }
+
+    private void add(int[] notes) {
+        for (int i = 0; i < notes.length; i++) {
+            counts[i] += notes[i];
+            if (notes[i] > 0) grown(i);
+        }
+    }
+
+    private void grown(int i) {
+        if (cap(i) > built[i]) dirtyFrom = Math.min(dirtyFrom, i);
+    }
+
+    private void save() {
+        if (file == null) return;
+        Properties p = new Properties();
+        for (int i = 0; i < denominations.length; i++) p.setProperty(String.valueOf(denominations[i]), String.valueOf(counts[i]));
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                p.store(out, "VAULT-X cassettes: denomination=notes");
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            EventLog.error("CashDispenser.save", e);
+        }
+    }
+
+    private static int gcd(int a, int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CashDispenser[" + inventory() + "]";
+    }
+
+    /* ========= Tool ========= */
+
+    public static void main(String[] args) {
+        String mode = args.length > 0 ? args[0] : "show";
+        CashDispenser d = fromConfig();
+        switch (mode) {
+            case "show":
+                System.out.println(d.inventory());
+                break;
+            case "load":
+                for (String part : args[1].split(",")) {
+                    String[] dn = part.split(":");
+                    d.load(Integer.parseInt(dn[0].trim()), Integer.parseInt(dn[1].trim()));
+                }
+                System.out.println("Loaded: " + d.inventory());
+                break;
+            case "bench":
+                bench(parse(System.getProperty("vaultx.cassettes", DEFAULT_FILL), null));
+                break;
+            default:
+                System.out.println("Usage: java CashDispenser [show | load <denomination:notes,...> | bench]");
+        }
+    }
+
+    // Lookups against a cached table, then payouts; the cassettes are refilled whenever one is refused
+    private static void bench(CashDispenser d) {
+        java.util.Random rnd = new java.util.Random(1);
+        int n = 200_000;
+        double[] amounts = new double[n];
+        for (int i = 0; i < n; i++) amounts[i] = 500.0 * (1 + rnd.nextInt(1000));
+        for (int i = 0; i < n; i++) d.plan(amounts[i]);   // warm up
+
+        long t0 = System.nanoTime();
+        int payable = 0;
+        for (int i = 0; i < n; i++) if (d.plan(amounts[i]) != null) payable++;
+        long lookupNs = (System.nanoTime() - t0) / n;
+
+        int[] denoms = d.getDenominations();
+        int[] fill = d.getCounts();
+        int payouts = 20_000;
+        int paid = 0;
+        int refused = 0;
+        long paidNs = 0;
+        long refusedNs = 0;
+        long builds = d.getRebuilds();
+        for (int i = 0; i < payouts; i++) {
+            double amount = 5_000.0 * (1 + rnd.nextInt(20));
+            long s = System.nanoTime();
+            int[] notes = d.take(amount);
+            long took = System.nanoTime() - s;
+            if (notes != null) {
+                paid++;
+                paidNs += took;
+            } else {
+                refused++;
+                refusedNs += took;
+                for (int k = 0; k < denoms.length; k++) d.load(denoms[k], fill[k]);
+            }
+        }
+
+        System.out.println(d.inventory());
+        System.out.println("plan (cached table): " + lookupNs + " ns, " + payable + "/" + n + " payable");
+        System.out.println("take (paid): " + (paid == 0 ? 0 : paidNs / paid / 1000.0) + " us avg, " + paid + "/" + payouts + " paid");
+        System.out.println("take (refused): " + (refused == 0 ? 0 : refusedNs / refused / 1000.0) + " us avg, "
+                + refused + " refused, each followed by a refill");
+        System.out.println("table builds during payouts: " + (d.getRebuilds() - builds));
+    }
+}
@@ -0,0 +1,360 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Rule-based chatbot shared by the JavaFX chat panel and the terminal
+ * client. It only decides what to do and what to answer; anything that
+ * depends on the front end goes through {@link Session}.
+ */
+public class ChatbotEngine {
+
+    /** What the chatbot needs from the front end it runs in. */
+    public interface Session {
+        User currentUser();
+
+        /** Warns the user and returns false when nobody is logged in. */
+        boolean requireLogin();
+
+        /** Shows the history and returns the chatbot's answer. */
+        String showHistory();
+
+        void clearChat();
+
+        void logout();
+
+        /** Called after a posting or balance check so views can refresh. */
+        void changed();
+    }
+
+    // {intent, keywords...}, checked in this order
+    static final String[][] KEYWORDS = {
+            {"help", "help", "commands", "menu"},
+            {"history", "history", "transactions", "recent"},
+            {"limits", "limit"},
+            {"clear", "clear", "cls"},
+            {"logout", "logout", "sign out", "signout"},
+            {"balance", "balance", "check balance", "show balance", "how much"},
+            {"notes", "notes", "dispens", "nearest"},
+            {"transfer", "transfer", "send"},
+            {"deposit", "deposit", "top up", "top-up", "add", "credit", "put", "load"},
+            {"withdraw", "withdraw", "take out", "take", "minus"},
+    };
+
+    private static final double DEFAULT_AMOUNT = 1000.0;   // one note from the default cassettes
+    private static final Pattern YES = Pattern.compile("(?i)\\s*(y|yes|yeah|yep|sure|ok|okay)[.!]?\\s*");
+    private static final Pattern TRANSFER_TO = Pattern.compile("\\bto\\s+@?([\\w.-]+)");
+    private static final Pattern SEPARATORS =
+            Pattern.compile("(?i)\\s*(?:;|&|(?<!\\d),|,(?!\\d{3}\\b)|\\b(?:and then|and|then)\\b)\\s*");
+
+    private final AtmService service;
+    private final IntentMatcher matcher = IntentMatcher.fromConfig(KEYWORDS);
+    // "Did you mean ...?" waiting for a yes, per front end
+    private final Map<Session, String> suggestions = Collections.synchronizedMap(new WeakHashMap<>());
+
+    public ChatbotEngine(AtmService service) {
+        this.service = service;
+    }
+
+    /**
+     * Answers one chat message. Returns null when there is nothing to print
+     * (the session already told the user to log in).
+     *
+     * A message with several commands ("deposit 2000 and withdraw 500 then
+     * show balance") is run as one batch, see {@link #replyBatch}. Misspelled
+     * keywords are corrected through {@link IntentMatcher}: a sure correction
+     * is run straight away, a doubtful one is asked about first and run if
+     * the next message is a yes.
+     */
+    public String reply(String raw, Session session) {
+        String suggested = suggestions.remove(session);
+        if (suggested != null && YES.matcher(raw).matches()) return answer(suggested, session);
+
+        // Nothing matched exactly: try the nearest keywords
+        List<String> parts = splitCommands(raw);
+        boolean anyUnknown = false;
+        for (String part : parts) {
+            if (intentOf(part.toLowerCase(Locale.ROOT)).equals("unknown")) anyUnknown = true;
+        }
+        if (anyUnknown) {
+            IntentMatcher.Correction c = matcher.correct(raw, parts,
+                    part -> !intentOf(part.toLowerCase(Locale.ROOT)).equals("unknown"));
+            if (c != null && c.isSure()) return answer(c.getText(), session);
+            if (c != null) {
+                suggestions.put(session, c.getText());
+                return "Did you mean \"" + c.getText() + "\"? (yes / no)";
+            }
+        }
+        return answer(raw, session);
+    }
+
+    private String answer(String raw, Session session) {
+        List<String> parts = splitCommands(raw);
+        int known = 0;
+        for (String part : parts) {
+            if (!intentOf(part.toLowerCase(Locale.ROOT)).equals("unknown")) known++;
+        }
+        if (known > 1) return replyBatch(parts, session);
+
+        String input = raw.toLowerCase(Locale.ROOT);
+        String response;
+        String intent = intentOf(input);
+        User before = session.currentUser();   // still known after a logout, for the event log
+        Double amount = extractAmount(raw);
+
+        switch (intent) {
+            case "help":
+                response = String.join("\n",
+                        "I can do:",
+                        "• balance — show your balance",
+                        "• deposit <amount> — add money",
+                        "• withdraw <amount> — take money out",
+                        "• transfer <amount> to <user> — send money",
+                        "• history — show transactions",
+                        "• limits — show how much you can still withdraw",
+                        "• notes <amount> — can this ATM pay it out, and the nearest amounts it can",
+                        "• clear — clear chat",
+                        "• logout — log out",
+                        "Combine steps with 'and' / 'then', e.g. deposit 2000 and withdraw 500 then balance."
+                );
+                break;
+
+            case "history":
+                if (!session.requireLogin()) return null;
+                response = session.showHistory();
+                break;
+
+            case "limits":
+                if (!session.requireLogin()) return null;
+                response = service.limitsSummary(session.currentUser());
+                break;
+
+            case "clear":
+                session.clearChat();
+                response = "Cleared.";
+                break;
+
+            case "logout":
+                response = "You have been logged out.";
+                session.logout();
+                break;
+
+            case "balance": {
+                if (!session.requireLogin()) return null;
+                User u = session.currentUser();
+                // checkBalance takes over the stored balance first; answer with that one
+                service.checkBalance(u);
+                response = "Your current balance is $" + AtmService.fmt(u.getBalance());
+                session.changed();
+                break;
+            }
+
+            case "notes": {
+                CashDispenser cash = service.getDispenser();
+                if (amount == null) {
+                    response = "Notes in this ATM: " + cash.inventory();
+                } else {
+                    int[] notes = cash.plan(amount);
+                    response = notes != null
+                            ? "I can pay out $" + AtmService.fmt(amount) + " as " + cash.describe(notes) + "."
+                            : service.dispenseHint(amount);
+                }
+                break;
+            }
+
+            case "transfer": {
+                if (!session.requireLogin()) return null;
+                Matcher to = TRANSFER_TO.matcher(input);
+                if (amount == null || !to.find()) {
+                    response = "Tell me how much and to whom, e.g. transfer 50 to alex.";
+                } else {
+                    AtmService.Result r = service.transfer(session.currentUser(), to.group(1), amount);
+                    if (r.isOk()) session.changed();
+                    response = r.getMessage();
+                }
+                break;
+            }
+
+            case "deposit": {
+                if (!session.requireLogin()) return null;
+                double amt = (amount != null ? amount : DEFAULT_AMOUNT);
+                AtmService.Result r = service.deposit(session.currentUser(), amt, true);
+                if (r.isOk()) {
+                    session.changed();
+                    response = "Deposited $" + AtmService.fmt(amt) + ".";
+                } else {
+                    response = r.getMessage();
+                }
+                break;
+            }
+
+            case "withdraw": {
+                if (!session.requireLogin()) return null;
+                double amt = (amount != null ? amount : DEFAULT_AMOUNT);
+                AtmService.Result r = service.withdraw(session.currentUser(), amt, true);
+                if (r.isOk()) {
+                    session.changed();
+                    response = "Withdrew $" + AtmService.fmt(amt) + ".";
+                } else {
+                    response = r.getMessage();
+                }
+                break;
+            }
+
+            default:
+                response = "Sorry, I didn't understand. Type 'help' to see commands.";
+        }
+        EventLog.event(EventLog.Type.INTENT, before == null ? null : before.getUsername(), intent);
+        return response;
+    }
+
+    /**
+     * Runs a multi-command message. Deposits, withdrawals and balance checks
+     * are checked together and posted as one batch (see
+     * {@link AtmService#postBatch}), so either every step happens or none
+     * does; history and limits are answered after it. The front end is told
+     * to refresh once, at the end.
+     */
+    private String replyBatch(List<String> parts, Session session) {
+        if (!session.requireLogin()) return null;
+        User u = session.currentUser();
+
+        List<String> intents = new ArrayList<>();
+        List<AtmService.Posting> postings = new ArrayList<>();
+        for (String part : parts) {
+            String intent = intentOf(part.toLowerCase(Locale.ROOT));
+            Double amount = extractAmount(part);
+            double amt = amount != null ? amount : DEFAULT_AMOUNT;
+            switch (intent) {
+                case "deposit":
+                    postings.add(new AtmService.Posting(AtmService.Posting.Kind.DEPOSIT, amt));
+                    break;
+                case "withdraw":
+                    postings.add(new AtmService.Posting(AtmService.Posting.Kind.WITHDRAW, amt));
+                    break;
+                case "balance":
+                    postings.add(new AtmService.Posting(AtmService.Posting.Kind.BALANCE, 0));
+                    break;
+                case "history":
+                case "limits":
+                    break;
+                case "unknown":
+                    return "I didn't understand \"" + part + "\", so nothing was done.";
+                default:
+                    return "'" + intent + "' can't be combined with other commands, so nothing was done.";
+            }
+            intents.add(intent);
+        }
+        EventLog.event(EventLog.Type.INTENT, u.getUsername(), "batch:" + String.join(",", intents));
+
+        if (!postings.isEmpty()) {
+            AtmService.Result r = service.postBatch(u, postings, true);
+            if (!r.isOk()) return r.getMessage() + " Nothing was done.";
+        }
+        // Work back from the balance the store ended up with, which includes
+        // credits made elsewhere since login, to the one before the batch
+        double balance = u.getBalance();
+        for (AtmService.Posting p : postings) {
+            if (p.getKind() == AtmService.Posting.Kind.DEPOSIT) balance -= p.getAmount();
+            else if (p.getKind() == AtmService.Posting.Kind.WITHDRAW) balance += p.getAmount();
+        }
+
+        // Answers in the order asked, with the balance as it was at each step
+        List<String> lines = new ArrayList<>();
+        int next = 0;
+        for (String intent : intents) {
+            if (intent.equals("history")) {
+                lines.add(session.showHistory());
+                continue;
+            }
+            if (intent.equals("limits")) {
+                lines.add(service.limitsSummary(u));
+                continue;
+            }
+            AtmService.Posting p = postings.get(next++);
+            switch (p.getKind()) {
+                case DEPOSIT:
+                    balance += p.getAmount();
+                    lines.add("Deposited $" + AtmService.fmt(p.getAmount()) + ".");
+                    break;
+                case WITHDRAW:
+                    balance -= p.getAmount();
+                    lines.add("Withdrew $" + AtmService.fmt(p.getAmount()) + ".");
+                    break;
+                default:
+                    lines.add("Your current balance is $" + AtmService.fmt(balance));
+            }
+        }
+        session.changed();
+        return String.join("\n", lines);
+    }
+
+    // Which command a message (or one part of it) asks for; the first match wins
+    static String intentOf(String input) {
+        for (String[] row : KEYWORDS) {
+            for (int i = 1; i < row.length; i++) {
+                if (input.contains(row[i])) return row[0];
+            }
+        }
+        return "unknown";
+    }
+
+    /** Splits on "and", "then", "&amp;", ";" and commas that aren't digit group separators. */
+    static List<String> splitCommands(String raw) {
+        List<String> parts = new ArrayList<>();
+        for (String part : SEPARATORS.split(raw)) {
+            if (!part.isBlank()) parts.add(part.trim());
+        }
+        return parts;
+    }
+
+    /* ========= Helpers ========= */
+
+    static boolean containsAny(String input, String... keys) {
+        for (String k : keys) if (input.contains(k)) return true;
+        return false;
+    }
+
+    /**
+     * Extracts first number from text like "$1,200.50"
+     */
+    public static Double extractAmount(String text) {
+        if (text == null) return null;
+
+        // Normalize any weird spaces (e.g., non-breaking)
+        text = text.replaceAll("[\\u00A0\\u2007\\u202F]", " ");
+
+        // 1) Support "30k" / "2.5k" style
+        java.util.regex.Matcher km = java.util.regex.Pattern
+                .compile("(?i)\\b([0-9]+(?:\\.[0-9]+)?)\\s*k\\b")
+                .matcher(text);
+        if (km.find()) {
+            try {
+                return Double.parseDouble(km.group(1)) * 1000.0;
+            } catch (NumberFormatException ignore) {
+            }
+        }
+
+        // 2) General number matcher: $ 30,000.50  |  30000  |  30 000  |  250.75
+        java.util.regex.Matcher m = java.util.regex.Pattern
+                .compile("(-?)\\s*\\$?\\s*((?:\\d{1,3}(?:[ ,]\\d{3})+)|\\d+)(?:\\.(\\d{1,2}))?")
+                .matcher(text);
+        if (!m.find()) return null;
+
+        String sign = m.group(1) == null ? "" : m.group(1);
+        String intPart = m.group(2).replaceAll("[ ,]", ""); // remove commas/spaces
+        String frac = m.group(3);
+
+        String number = sign + intPart + (frac != null ? "." + frac : "");
+        try {
+            return Double.parseDouble(number);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
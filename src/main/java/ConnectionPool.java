@@ -0,0 +1,135 @@
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed-size pool of JDBC connections to one database file.
+ *
+ * {@link #get()} hands out a wrapper whose close() puts the connection back
+ * instead of closing it, so callers keep the usual
+ * {@code try (Connection conn = ...)} shape. A connection returned in the
+ * middle of a transaction is rolled back first. Connections are opened on
+ * demand up to the pool size, each with a busy timeout so that writers
+ * queue on SQLite's file lock instead of failing with SQLITE_BUSY.
+ */
+public class ConnectionPool {
+
+    private static final int BUSY_TIMEOUT_MS = 5_000;
+    private static final long WAIT_SECONDS = 30;
+
+    private final String url;
+    private final int size;
+    private final BlockingQueue<Connection> idle;
+    private final AtomicInteger opened = new AtomicInteger();
+    private volatile boolean closed;
+
+    public ConnectionPool(String url, int size) {
+        this.url = url;
+        this.size = size;
+        this.idle = new ArrayBlockingQueue<>(size);
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public Connection get() throws SQLException {
+        if (closed) throw new SQLException("Pool closed: " + url);
+        Connection raw = idle.poll();
+        if (raw == null && opened.incrementAndGet() <= size) {
+            try {
+                raw = open();
+            } catch (SQLException e) {
+                opened.decrementAndGet();
+                throw e;
+            }
+        } else if (raw == null) {
+            opened.decrementAndGet();
+            try {
+                raw = idle.poll(WAIT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (raw == null) throw new SQLException("No free connection to " + url + " after " + WAIT_SECONDS + "s");
+        }
+        return wrap(raw);
+    }
+
+    /** Closes idle connections; ones still borrowed are closed when returned. */
+    public void close() {
+        closed = true;
+        Connection c;
+        while ((c = idle.poll()) != null) closeQuietly(c);
+    }
+
+    /* ========= Internals ========= */
+
+    private Connection open() throws SQLException {
+        Connection c = DBHelper.connect(url);
+        try (Statement st = c.createStatement()) {
+            st.execute("PRAGMA busy_timeout = " + BUSY_TIMEOUT_MS);
+        }
+        return c;
+    }
+
+    private Connection wrap(Connection raw) {
+        boolean[] returned = {false};
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "close":
+                            if (!returned[0]) {
+                                returned[0] = true;
+                                release(raw);
+                            }
+                            return null;
+                        case "isClosed":
+                            if (returned[0]) return true;
+                            break;
+                        default:
+                            if (returned[0]) throw new SQLException("Connection already returned to the pool");
+                    }
+                    try {
+                        return method.invoke(raw, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    private void release(Connection raw) {
+        try {
+            if (!raw.getAutoCommit()) {
+                raw.rollback();
+                raw.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            // Broken connection: drop it, the next get() opens a new one
+            closeQuietly(raw);
+            opened.decrementAndGet();
+            return;
+        }
+        if (closed || !idle.offer(raw)) {
+            closeQuietly(raw);
+            opened.decrementAndGet();
+        }
+    }
+
+    private static void closeQuietly(Connection c) {
+        try {
+            c.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPool[" + url + ", " + opened.get() + "/" + size + " open, " + idle.size() + " idle]";
+    }
+}
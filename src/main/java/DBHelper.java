@@ -1,19 +1,39 @@
 import java.sql.*;
 
 public class DBHelper {
-    private static final String DB_URL = "jdbc:sqlite:C:\\Users\\Chan Myae May\\IdeaProjects\\ATMWithChatbot5.0\\bankatm.db";
+    // Override with -Dvaultx.db.url=jdbc:sqlite:/path/to/bankatm.db
+    private static final String DB_URL = System.getProperty("vaultx.db.url",
+            "jdbc:sqlite:C:\\Users\\Chan Myae May\\IdeaProjects\\ATMWithChatbot5.0\\bankatm.db");
 
 
+    public static String url() {
+        return DB_URL;
+    }
+
     public static Connection connect() throws SQLException {
         return DriverManager.getConnection(DB_URL);
     }
 
+    public static Connection connect(String url) throws SQLException {
+        return DriverManager.getConnection(url);
+    }
+
+    // Path of the SQLite file behind DB_URL (for size reports)
+    public static java.nio.file.Path dbFile() {
+        return java.nio.file.Paths.get(DB_URL.substring("jdbc:sqlite:".length()));
+    }
+
     public static void initializeDatabase() {
+        initializeDatabase(DB_URL);
+    }
+
+    public static void initializeDatabase(String url) {
         String createUsers = "CREATE TABLE IF NOT EXISTS users (" +
                 "username TEXT PRIMARY KEY," +
                 "salt BLOB NOT NULL," +
                 "password_hash BLOB NOT NULL," +
-                "balance REAL NOT NULL" +
+                "balance REAL NOT NULL," +
+                "tier TEXT NOT NULL DEFAULT 'STANDARD'" +
                 ");";
 
         String createTransactions = "CREATE TABLE IF NOT EXISTS transactions (" +
@@ -24,12 +44,38 @@ public class DBHelper {
                 "FOREIGN KEY(username) REFERENCES users(username)" +
                 ");";
 
-        try (Connection conn = connect();
+        // Merkle checkpoints over blocks of hash-chained ledger rows (see LedgerChain)
+        String createCheckpoints = "CREATE TABLE IF NOT EXISTS ledger_checkpoints (" +
+                "username TEXT NOT NULL," +
+                "seq INTEGER NOT NULL," +
+                "first_id INTEGER NOT NULL," +
+                "last_id INTEGER NOT NULL," +
+                "last_hash TEXT NOT NULL," +
+                "merkle_root TEXT NOT NULL," +
+                "PRIMARY KEY(username, seq)" +
+                ");";
+
+        try (Connection conn = connect(url);
              Statement stmt = conn.createStatement()) {
             stmt.execute(createUsers);
             stmt.execute(createTransactions);
+            stmt.execute(createCheckpoints);
+            addColumnIfMissing(stmt, "users", "tier TEXT NOT NULL DEFAULT 'STANDARD'");
+            addColumnIfMissing(stmt, "transactions", "prev_hash TEXT");
+            addColumnIfMissing(stmt, "transactions", "hash TEXT");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_transactions_user_id ON transactions(username, id)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_transactions_user_time ON transactions(username, timestamp)");
+        } catch (SQLException e) {
+            EventLog.error("DBHelper.initializeDatabase", e);
+        }
+    }
+
+    // Older bankatm.db files were created before the column existed
+    private static void addColumnIfMissing(Statement stmt, String table, String columnDef) {
+        try {
+            stmt.execute("ALTER TABLE " + table + " ADD COLUMN " + columnDef);
         } catch (SQLException e) {
-            e.printStackTrace();
+            // "duplicate column name" -> already migrated
         }
     }
 }
@@ -0,0 +1,490 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * End-of-day batch: credits daily interest to every account and, on the
+ * last day of the month, charges the maintenance fee on standard accounts
+ * below the minimum balance.
+ *
+ * Accounts are read in chunks in username order. The postings of a chunk
+ * are computed on a fork-join pool while the previous chunk is being
+ * written, and each chunk is written with one {@link Store#adjust} call
+ * (one guarded, batched transaction on SQLite). After every chunk the last
+ * username is saved to a checkpoint file, so a run that dies part way
+ * resumes after it. The one chunk that may have been written without its
+ * checkpoint is checked against the ledger first, so nothing is posted
+ * twice. An account whose balance moved between read and write is
+ * recomputed once and otherwise left for the next run.
+ * <pre>
+ *   -Dvaultx.eod.checkpoint=path         checkpoint file (default ~/.vaultx_eod)
+ *   -Dvaultx.eod.chunk=n                 accounts per chunk (default 5000)
+ *   -Dvaultx.eod.threads=n               compute threads (default: cores)
+ *   -Dvaultx.eod.rate.standard=0.02      yearly interest, accrued daily (premium: 0.035)
+ *   -Dvaultx.eod.fee=2.00                monthly fee, standard accounts only (0 = off)
+ *   -Dvaultx.eod.fee.below=1000          fee applies below this balance
+ *   -Dvaultx.eod.at=23:55                time of day for "schedule"
+ *
+ *   java EndOfDayJob [run [yyyy-mm-dd] | schedule | bench [accounts] [memory|file]]
+ * </pre>
+ * Terminals can stay open while it runs: their postings add a delta to the
+ * stored balance ({@link Store#post}) instead of saving the one they hold,
+ * and an adjustment only applies while the balance is still the one it was
+ * computed from, so neither side undoes the other.
+ */
+public class EndOfDayJob {
+
+    /** What one run did. */
+    public static final class Report {
+        long accounts;
+        long posted;
+        long skipped;
+        long alreadyPosted;
+        long nanos;
+        boolean resumed;
+
+        public double accountsPerSecond() {
+            return nanos == 0 ? 0 : accounts * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d account(s) in %.1f s (%.0f/s): %d posted, %d skipped, %d already posted%s",
+                    accounts, nanos / 1e9, accountsPerSecond(), posted, skipped, alreadyPosted,
+                    resumed ? " (resumed)" : "");
+        }
+    }
+
+    private final Store store;
+    private final Path checkpointFile;
+    private final int chunk;
+    private final ForkJoinPool pool;
+    private final double standardRate;
+    private final double premiumRate;
+    private final double fee;
+    private final double feeBelow;
+
+    // Simulated crash for the bench: stop after this many chunks, before their checkpoint
+    int crashAfterChunks = -1;
+
+    public EndOfDayJob(Store store, Path checkpointFile, int chunk, int threads) {
+        this.store = store;
+        this.checkpointFile = checkpointFile;
+        this.chunk = Math.max(1, chunk);
+        this.pool = new ForkJoinPool(Math.max(1, threads));
+        this.standardRate = Double.parseDouble(System.getProperty("vaultx.eod.rate.standard", "0.02"));
+        this.premiumRate = Double.parseDouble(System.getProperty("vaultx.eod.rate.premium", "0.035"));
+        this.fee = Double.parseDouble(System.getProperty("vaultx.eod.fee", "2.00"));
+        this.feeBelow = Double.parseDouble(System.getProperty("vaultx.eod.fee.below", "1000"));
+    }
+
+    public static EndOfDayJob fromConfig(Store store) {
+        return new EndOfDayJob(store,
+                Paths.get(System.getProperty("vaultx.eod.checkpoint",
+                        Paths.get(System.getProperty("user.home"), ".vaultx_eod").toString())),
+                Integer.getInteger("vaultx.eod.chunk", 5000),
+                Integer.getInteger("vaultx.eod.threads", Runtime.getRuntime().availableProcessors()));
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /* ========= Run ========= */
+
+    /**
+     * Posts the given day, or finishes it if an earlier run of it stopped
+     * part way. Refuses to start a day while another one is unfinished.
+     */
+    public Report run(LocalDate day) throws IOException {
+        Properties cp = readCheckpoint();
+        String cpDay = cp.getProperty("day");
+        if (cpDay != null && !cpDay.equals(day.toString()) && !"true".equals(cp.getProperty("done"))) {
+            throw new IllegalStateException("End of day " + cpDay + " is not finished; run it first: java EndOfDayJob run " + cpDay);
+        }
+        Report report = new Report();
+        if (day.toString().equals(cpDay)) {
+            if ("true".equals(cp.getProperty("done"))) {
+                System.out.println("End of day " + day + " already done");
+                return report;
+            }
+            report.resumed = true;
+        }
+        String cursor = report.resumed ? cp.getProperty("cursor", "") : "";
+        String timestamp = LedgerEntry.TIMESTAMP_FORMAT.format(day.atTime(23, 59));
+        boolean monthEnd = day.getDayOfMonth() == day.lengthOfMonth();
+
+        List<String> names = store.usernames();
+        int from = Collections.binarySearch(names, cursor);
+        from = from >= 0 ? from + 1 : -from - 1;
+        if (!report.resumed) writeCheckpoint(day, "", false);
+
+        long t0 = System.nanoTime();
+        // The first chunk after a resume may already be in the store
+        ForkJoinTask<List<Adjustment>> next = from < names.size()
+                ? pool.submit(new Compute(names, from, Math.min(names.size(), from + chunk), day, monthEnd, timestamp, report.resumed))
+                : null;
+        int chunks = 0;
+        for (int start = from; start < names.size(); start += chunk) {
+            int end = Math.min(names.size(), start + chunk);
+            List<Adjustment> batch = next.join();
+            // Compute the next chunk while this one is written
+            next = end < names.size()
+                    ? pool.submit(new Compute(names, end, Math.min(names.size(), end + chunk), day, monthEnd, timestamp, false))
+                    : null;
+
+            List<Adjustment> todo = new ArrayList<>(batch.size());
+            for (Adjustment a : batch) {
+                if (a == ALREADY) report.alreadyPosted++;
+                else if (a != null) todo.add(a);
+            }
+            report.posted += store.adjust(timestamp, todo);
+            List<Adjustment> again = recompute(todo, day, monthEnd);
+            if (!again.isEmpty()) report.posted += store.adjust(timestamp, again);
+            for (Adjustment a : again) if (!a.isApplied()) report.skipped++;
+            report.accounts += end - start;
+
+            if (++chunks == crashAfterChunks) throw new IllegalStateException("simulated crash");
+            writeCheckpoint(day, names.get(end - 1), false);
+        }
+        report.nanos = System.nanoTime() - t0;
+        writeCheckpoint(day, names.isEmpty() ? "" : names.get(names.size() - 1), true);
+        EventLog.event(EventLog.Type.POSTING, null, "End of day " + day + ": " + report);
+        return report;
+    }
+
+    // Fresh postings for the accounts whose balance moved since they were read
+    private List<Adjustment> recompute(List<Adjustment> written, LocalDate day, boolean monthEnd) {
+        List<Adjustment> again = new ArrayList<>();
+        for (Adjustment a : written) {
+            if (a.isApplied()) continue;
+            User u = store.loadUser(a.getUsername());
+            Adjustment b = u == null ? null : compute(u, day, monthEnd);
+            if (b != null) again.add(b);
+        }
+        return again;
+    }
+
+    // Marks an account whose postings for the day are already in the ledger
+    private static final Adjustment ALREADY = new Adjustment("", 0, 0, Collections.emptyList());
+
+    /** Loads and computes a range of accounts, splitting it across the pool. */
+    private final class Compute extends RecursiveTask<List<Adjustment>> {
+        private static final long serialVersionUID = 1L;
+        private static final int LEAF = 256;
+
+        private final List<String> names;
+        private final int from;
+        private final int to;
+        private final LocalDate day;
+        private final boolean monthEnd;
+        private final String timestamp;
+        private final boolean checkLedger;
+
+        Compute(List<String> names, int from, int to, LocalDate day, boolean monthEnd, String timestamp, boolean checkLedger) {
+            this.names = names;
+            this.from = from;
+            this.to = to;
+            this.day = day;
+            this.monthEnd = monthEnd;
+            this.timestamp = timestamp;
+            this.checkLedger = checkLedger;
+        }
+
+        @Override
+        protected List<Adjustment> compute() {
+            if (to - from > LEAF) {
+                int mid = (from + to) >>> 1;
+                Compute left = new Compute(names, from, mid, day, monthEnd, timestamp, checkLedger);
+                left.fork();
+                List<Adjustment> right = new Compute(names, mid, to, day, monthEnd, timestamp, checkLedger).compute();
+                List<Adjustment> out = left.join();
+                out.addAll(right);
+                return out;
+            }
+            List<Adjustment> out = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                String name = names.get(i);
+                if (checkLedger && alreadyPosted(name, day, timestamp)) {
+                    out.add(ALREADY);
+                    continue;
+                }
+                User u = store.loadUser(name);
+                out.add(u == null ? null : EndOfDayJob.this.compute(u, day, monthEnd));
+            }
+            return out;
+        }
+    }
+
+    private boolean alreadyPosted(String username, LocalDate day, String timestamp) {
+        String interest = "Interest " + day + ":";
+        String fee = "Fee " + day + ":";
+        for (LedgerEntry e : store.since(username, timestamp)) {
+            if (e.getAction().startsWith(interest) || e.getAction().startsWith(fee)) return true;
+        }
+        return false;
+    }
+
+    /* ========= Postings ========= */
+
+    /** The day's interest and fee for one account, or null if there is nothing to post. */
+    Adjustment compute(User u, LocalDate day, boolean monthEnd) {
+        double balance = u.getBalance();
+        double rate = u.getTier() == AccountTier.PREMIUM ? premiumRate : standardRate;
+        double interest = cents(balance * rate / 365);
+        if (balance + interest > User.MAX_BALANCE) interest = Math.max(0, Math.floor((User.MAX_BALANCE - balance) * 100) / 100);
+        double charge = 0;
+        if (monthEnd && fee > 0 && u.getTier() == AccountTier.STANDARD && balance < feeBelow) {
+            charge = Math.min(fee, cents(balance + interest));
+        }
+        if (interest <= 0 && charge <= 0) return null;
+
+        List<String> actions = new ArrayList<>(2);
+        if (interest > 0) actions.add("Interest " + day + ": $" + AtmService.fmt(interest));
+        if (charge > 0) actions.add("Fee " + day + ": $" + AtmService.fmt(charge));
+        String name = u.getUsername().toLowerCase(Locale.ROOT);
+        return new Adjustment(name, balance, cents(balance + interest - charge), actions);
+    }
+
+    private static double cents(double v) {
+        return Math.round(v * 100) / 100.0;
+    }
+
+    /* ========= Checkpoint ========= */
+
+    private Properties readCheckpoint() throws IOException {
+        Properties p = new Properties();
+        if (Files.exists(checkpointFile)) {
+            try (InputStream in = Files.newInputStream(checkpointFile)) {
+                p.load(in);
+            }
+        }
+        return p;
+    }
+
+    // Written to a temp file, forced to disk, then moved over the old one
+    private void writeCheckpoint(LocalDate day, String cursor, boolean done) throws IOException {
+        Properties p = new Properties();
+        p.setProperty("day", day.toString());
+        p.setProperty("cursor", cursor);
+        p.setProperty("done", Boolean.toString(done));
+        Path tmp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            p.store(out, "VAULT-X end of day");
+        }
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            ch.force(true);
+        }
+        Files.move(tmp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /* ========= Tool ========= */
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "run";
+        switch (mode) {
+            case "run": {
+                LocalDate day = args.length > 1 ? LocalDate.parse(args[1]) : LocalDate.now();
+                Store store = Stores.fromConfig();
+                store.init();
+                EndOfDayJob job = fromConfig(store);
+                try {
+                    System.out.println(job.run(day));
+                } finally {
+                    job.shutdown();
+                    store.close();
+                }
+                break;
+            }
+            case "schedule":
+                schedule();
+                break;
+            case "bench":
+                bench(args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000, args.length > 2 ? args[2] : "memory");
+                break;
+            default:
+                System.out.println("usage: java EndOfDayJob [run [yyyy-mm-dd] | schedule | bench [accounts] [memory|file]]");
+        }
+    }
+
+    // Runs every day at -Dvaultx.eod.at until the process is stopped
+    private static void schedule() throws InterruptedException {
+        LocalTime at = LocalTime.parse(System.getProperty("vaultx.eod.at", "23:55"));
+        Store store = Stores.fromConfig();
+        store.init();
+        EndOfDayJob job = fromConfig(store);
+        while (true) {
+            LocalDateTime now = LocalDateTime.now();
+            LocalDateTime next = now.toLocalDate().atTime(at);
+            if (!next.isAfter(now)) next = next.plusDays(1);
+            System.out.println("next end of day run at " + next);
+            Thread.sleep(Duration.between(now, next).toMillis());
+            try {
+                System.out.println(job.run(next.toLocalDate()));
+            } catch (IOException | RuntimeException e) {
+                EventLog.error("EndOfDayJob.schedule", e);
+            }
+        }
+    }
+
+    /**
+     * Seeds a scratch store with generated accounts and posts a month-end
+     * day: once straight through for throughput, once with a crash half way
+     * and a resume. Both must leave every account posted exactly once. A
+     * third run has a terminal posting to the same accounts meanwhile.
+     */
+    private static void bench(int accounts, String kind) throws IOException {
+        System.setProperty("vaultx.events", System.getProperty("vaultx.events", "off"));
+        Path dir = Files.createTempDirectory("vaultx-eod-bench");
+        LocalDate day = LocalDate.of(2026, 1, 31);
+        boolean ok = true;
+        for (boolean crash : new boolean[]{false, true}) {
+            Store store = kind.equals("file") ? new JournalStore(dir.resolve((crash ? "crash" : "straight") + ".log")) : new MemoryStore();
+            store.init();
+            double[] seeded = seed(store, accounts);
+            Path cp = dir.resolve(crash ? "crash.eod" : "straight.eod");
+            int threads = Runtime.getRuntime().availableProcessors();
+
+            EndOfDayJob job = new EndOfDayJob(store, cp, Integer.getInteger("vaultx.eod.chunk", 5000), threads);
+            Report r;
+            if (crash) {
+                job.crashAfterChunks = Math.max(1, accounts / job.chunk / 2);
+                try {
+                    job.run(day);
+                } catch (IllegalStateException expected) {
+                    System.out.println("crashed after " + job.crashAfterChunks + " chunk(s), resuming");
+                }
+                job.shutdown();
+                job = new EndOfDayJob(store, cp, job.chunk, threads);
+            }
+            r = job.run(day);
+            job.shutdown();
+            System.out.println((crash ? "crash + resume: " : "straight:       ") + r);
+            ok &= check(job, store, seeded, day);
+            store.close();
+        }
+        ok &= concurrent(kind, dir, accounts, day);
+        try (java.util.stream.Stream<Path> files = Files.list(dir)) {
+            for (Path f : (Iterable<Path>) files::iterator) Files.delete(f);
+        }
+        Files.delete(dir);
+        System.out.println(ok ? "PASS" : "FAIL");
+        if (!ok) System.exit(1);
+    }
+
+    /**
+     * End of day while a terminal keeps depositing to the first accounts.
+     * The terminal is an AtmService of its own over the same store, with its
+     * own cached chain tails, as a terminal in another process would have;
+     * the interest rows make those tails stale. Every chain must stay
+     * intact and every balance must be its seeded one plus its rows.
+     */
+    private static boolean concurrent(String kind, Path dir, int accounts, LocalDate day) throws IOException {
+        System.setProperty("vaultx.outbox.file", dir.resolve("concurrent.outbox").toString());
+        Store store = kind.equals("file") ? new JournalStore(dir.resolve("concurrent.log")) : new MemoryStore();
+        store.init();
+        double[] seeded = seed(store, accounts);
+        AtmService terminal = new AtmService(store);
+        int busy = Math.min(accounts, 1000);
+        User[] users = new User[busy];
+        for (int i = 0; i < busy; i++) {
+            // The first deposit caches the account's tail
+            users[i] = terminal.loadUser(benchName(i));
+            terminal.deposit(users[i], 1, false);
+        }
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong deposits = new AtomicLong(busy);
+        Thread posting = new Thread(() -> {
+            Random rnd = new Random(7);
+            while (running.get()) {
+                if (terminal.deposit(users[rnd.nextInt(busy)], 1, false).isOk()) deposits.incrementAndGet();
+            }
+        }, "eod-bench-terminal");
+        posting.start();
+
+        EndOfDayJob job = new EndOfDayJob(store, dir.resolve("concurrent.eod"),
+                Integer.getInteger("vaultx.eod.chunk", 5000), Runtime.getRuntime().availableProcessors());
+        Report r = job.run(day);
+        job.shutdown();
+        running.set(false);
+        try {
+            posting.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        System.out.println("with terminal:  " + r + ", " + deposits.get() + " deposit(s) meanwhile");
+
+        long bad = 0;
+        for (int i = 0; i < accounts; i++) {
+            String name = benchName(i);
+            String prev = LedgerChain.GENESIS;
+            double balance = seeded[i];
+            boolean intact = true;
+            for (LedgerEntry e : store.afterId(name, 0)) {
+                String hash = LedgerChain.link(prev, name, e.getTimestamp(), e.getAction());
+                intact &= hash.equals(e.getHash());
+                prev = e.getHash();
+                balance += e.signedAmount();
+            }
+            boolean good = intact && Math.abs(balance - store.loadUser(name).getBalance()) < 0.005;
+            if (!good && bad++ < 5) System.out.println("  wrong: " + name + (intact ? " balance off its rows" : " chain broken"));
+        }
+        store.close();
+        return bad == 0;
+    }
+
+    private static double[] seed(Store store, int accounts) {
+        Random rnd = new Random(42);
+        byte[] salt = new byte[16];
+        byte[] hash = new byte[32];
+        double[] balances = new double[accounts];
+        for (int i = 0; i < accounts; i++) {
+            balances[i] = rnd.nextInt(10) == 0 ? rnd.nextInt(1000) : rnd.nextInt(50_000_000) / 100.0;
+            AccountTier tier = rnd.nextInt(5) == 0 ? AccountTier.PREMIUM : AccountTier.STANDARD;
+            store.saveUser(new User(benchName(i), salt, hash, balances[i], tier));
+        }
+        return balances;
+    }
+
+    private static String benchName(int i) {
+        return String.format(Locale.ROOT, "acct%08d", i);
+    }
+
+    // Every account has its seeded balance plus exactly the day's postings, once
+    private static boolean check(EndOfDayJob job, Store store, double[] seeded, LocalDate day) {
+        long bad = 0;
+        for (int i = 0; i < seeded.length; i++) {
+            String name = benchName(i);
+            User u = store.loadUser(name);
+            User before = new User(name, u.getSalt(), u.getPasswordHash(), seeded[i], u.getTier());
+            Adjustment expect = job.compute(before, day, true);
+            List<LedgerEntry> rows = store.afterId(name, 0);
+            boolean good = expect == null
+                    ? rows.isEmpty() && u.getBalance() == seeded[i]
+                    : rows.size() == expect.getActions().size() && u.getBalance() == expect.getNewBalance();
+            if (!good && bad++ < 5) System.out.println("  wrong: " + name + " " + u.getBalance() + " " + rows.size() + " row(s)");
+        }
+        return bad == 0;
+    }
+}
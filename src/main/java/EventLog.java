@@ -0,0 +1,372 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Structured event log: logins, postings, chatbot intents, flagged or held
+ * withdrawals, storage notices and errors, one JSON object per line in
+ * rolling files (events.log, events.1.log, ...).
+ *
+ * Callers only copy a few fields into a preallocated slot of a ring buffer
+ * (a CAS to claim it, a release store to publish it) and return; nothing is
+ * allocated and no lock is taken. The "vaultx-events" thread formats the
+ * slots in order and writes them out. When the ring is full, {@link #log}
+ * either drops the event and counts it or waits for room, depending on
+ * -Dvaultx.events.full.
+ * <pre>
+ *   -Dvaultx.events=off            disable
+ *   -Dvaultx.events.dir=path       default ~/.vaultx_events
+ *   -Dvaultx.events.buffer=n       ring slots, rounded up to a power of two (default 16384)
+ *   -Dvaultx.events.full=drop|block  (default drop)
+ *   -Dvaultx.events.maxBytes=n     roll after this many bytes (default 10 MB)
+ *   -Dvaultx.events.keep=n         rolled files to keep (default 5)
+ * </pre>
+ * Errors are also echoed to stderr as one line, since that is where the
+ * stack traces used to go.
+ */
+public class EventLog {
+
+    public enum Type { LOGIN, LOGIN_FAILED, LOGOUT, SESSION_EXPIRED, POSTING, TRANSFER, INTENT, ANOMALY, STORE, ERROR }
+
+    public enum WhenFull { DROP, BLOCK }
+
+    private static final int MAX_FRAMES = 8;
+    private static final int PUBLISH_EVERY = 256;
+
+    // A preallocated event; only the writer clears it
+    private static final class Slot {
+        long time;
+        Type type;
+        String user;
+        String detail;
+        double amount;
+        Throwable error;
+    }
+
+    private final Path dir;
+    private final int capacity;
+    private final int mask;
+    private final WhenFull whenFull;
+    private final long maxBytes;
+    private final int keep;
+
+    private final Slot[] slots;
+    private final AtomicLongArray published;                 // sequence held by each slot once written
+    private final AtomicLong claimed = new AtomicLong();     // next sequence to hand out
+    private volatile long consumed;                          // next sequence the writer reads
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean closed;
+    private volatile long written;
+
+    private Thread writerThread;
+    private Writer out;
+    private long fileBytes;
+    private final StringBuilder line = new StringBuilder(512);
+    private char[] chars = new char[512];
+    // The writer formats the date and time once per second and appends the millis
+    private static final DateTimeFormatter SECONDS =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss", Locale.ROOT).withZone(ZoneOffset.UTC);
+    private long lastSecond = Long.MIN_VALUE;
+    private String secondText;
+
+    private static volatile EventLog instance;
+
+    public EventLog(Path dir, int capacity, WhenFull whenFull, long maxBytes, int keep) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.dir = dir;
+        this.capacity = size;
+        this.mask = size - 1;
+        this.whenFull = whenFull;
+        this.maxBytes = maxBytes;
+        this.keep = Math.max(1, keep);
+        this.slots = new Slot[size];
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+            published.set(i, -1);
+        }
+    }
+
+    /* ========= Shared instance ========= */
+
+    /** The application's log, configured from system properties and started on first use. */
+    public static EventLog get() {
+        EventLog log = instance;
+        if (log == null) {
+            synchronized (EventLog.class) {
+                log = instance;
+                if (log == null) {
+                    log = fromConfig();
+                    log.start();
+                    EventLog started = log;
+                    Runtime.getRuntime().addShutdownHook(new Thread(started::close, "vaultx-events-close"));
+                    instance = log;
+                }
+            }
+        }
+        return log;
+    }
+
+    static EventLog fromConfig() {
+        String home = System.getProperty("user.home");
+        Path dir = "off".equalsIgnoreCase(System.getProperty("vaultx.events", "on"))
+                ? null
+                : Paths.get(System.getProperty("vaultx.events.dir", Paths.get(home, ".vaultx_events").toString()));
+        WhenFull whenFull = "block".equalsIgnoreCase(System.getProperty("vaultx.events.full", "drop"))
+                ? WhenFull.BLOCK : WhenFull.DROP;
+        return new EventLog(dir,
+                Integer.getInteger("vaultx.events.buffer", 16384),
+                whenFull,
+                Long.getLong("vaultx.events.maxBytes", 10L * 1024 * 1024),
+                Integer.getInteger("vaultx.events.keep", 5));
+    }
+
+    public static void event(Type type, String user, String detail) {
+        get().log(type, user, detail, Double.NaN, null);
+    }
+
+    public static void event(Type type, String user, String detail, double amount) {
+        get().log(type, user, detail, amount, null);
+    }
+
+    /** Replaces e.printStackTrace(): where is a short "Class.method" label. */
+    public static void error(String where, Throwable t) {
+        get().log(Type.ERROR, null, where, Double.NaN, t);
+    }
+
+    /* ========= Producers ========= */
+
+    /**
+     * Queues one event; amount is NaN when there is none. Returns false if
+     * the log is closed or disabled, the ring was full with the DROP policy,
+     * or it was full and the writer thread has stopped.
+     */
+    public boolean log(Type type, String user, String detail, double amount, Throwable error) {
+        if (closed || writerThread == null) return false;
+        long seq;
+        if (whenFull == WhenFull.DROP) {
+            do {
+                seq = claimed.get();
+                if (seq - consumed >= capacity) {
+                    dropped.incrementAndGet();
+                    return false;
+                }
+            } while (!claimed.compareAndSet(seq, seq + 1));
+        } else {
+            seq = claimed.getAndIncrement();
+            for (int spins = 0; seq - consumed >= capacity; spins++) {
+                // A writer that died (or finished after close) will never make room
+                if (!writerThread.isAlive()) {
+                    dropped.incrementAndGet();
+                    return false;
+                }
+                if (spins < 100) Thread.onSpinWait();
+                else LockSupport.parkNanos(10_000);
+            }
+        }
+        int idx = (int) (seq & mask);
+        Slot s = slots[idx];
+        s.time = System.currentTimeMillis();
+        s.type = type;
+        s.user = user;
+        s.detail = detail;
+        s.amount = amount;
+        s.error = error;
+        published.set(idx, seq);
+        return true;
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getWritten() {
+        return written;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /* ========= Writer ========= */
+
+    public synchronized void start() {
+        if (writerThread != null || dir == null) return;
+        try {
+            Files.createDirectories(dir);
+            openFile();
+        } catch (IOException e) {
+            // Nowhere to log this but the console
+            System.err.println("EventLog: cannot write to " + dir + " (" + e.getMessage() + "); events are off");
+            return;
+        }
+        writerThread = new Thread(this::drain, "vaultx-events");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /** Writes out everything already queued, then stops; later events are ignored. */
+    public void close() {
+        Thread t;
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            t = writerThread;
+        }
+        if (t == null) return;
+        try {
+            t.join(5_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain() {
+        long next = consumed;
+        int idle = 0;
+        try {
+            while (true) {
+                int idx = (int) (next & mask);
+                if (published.get(idx) == next) {
+                    write(slots[idx]);
+                    next++;
+                    if ((next & (PUBLISH_EVERY - 1)) == 0) consumed = next;
+                    idle = 0;
+                    continue;
+                }
+                consumed = next;
+                if (closed && next == claimed.get()) break;
+                if (idle++ == 0) out.flush();
+                if (idle < 50) Thread.onSpinWait();
+                else LockSupport.parkNanos(idle < 1_000 ? 50_000 : 1_000_000);
+            }
+            out.flush();
+            out.close();
+        } catch (IOException e) {
+            System.err.println("EventLog: writer stopped: " + e.getMessage());
+        }
+    }
+
+    private void write(Slot s) throws IOException {
+        StringBuilder b = line;
+        b.setLength(0);
+        b.append("{\"time\":\"");
+        time(b, s.time);
+        b.append("\",\"type\":\"").append(s.type.name()).append('"');
+        if (s.user != null) string(b.append(",\"user\":"), s.user);
+        if (!Double.isNaN(s.amount)) money(b.append(",\"amount\":"), s.amount);
+        if (s.detail != null) string(b.append(s.type == Type.ERROR ? ",\"where\":" : ",\"detail\":"), s.detail);
+        if (s.error != null) {
+            string(b.append(",\"error\":"), s.error.toString());
+            b.append(",\"stack\":[");
+            StackTraceElement[] frames = s.error.getStackTrace();
+            for (int i = 0; i < Math.min(frames.length, MAX_FRAMES); i++) {
+                if (i > 0) b.append(',');
+                string(b, frames[i].toString());
+            }
+            b.append(']');
+            System.err.println("VAULT-X error in " + s.detail + ": " + s.error);
+        }
+        b.append("}\n");
+
+        s.type = null;
+        s.user = null;
+        s.detail = null;
+        s.error = null;
+
+        int len = b.length();
+        if (fileBytes + len > maxBytes && fileBytes > 0) roll();
+        if (chars.length < len) chars = new char[len * 2];
+        b.getChars(0, len, chars, 0);
+        out.write(chars, 0, len);
+        fileBytes += len;
+        written++;
+    }
+
+    // 2026-10-19T08:30:00.125Z
+    private void time(StringBuilder b, long millis) {
+        long second = Math.floorDiv(millis, 1000);
+        if (second != lastSecond) {
+            lastSecond = second;
+            secondText = SECONDS.format(Instant.ofEpochSecond(second));
+        }
+        int ms = Math.floorMod(millis, 1000);
+        b.append(secondText).append('.');
+        if (ms < 100) b.append('0');
+        if (ms < 10) b.append('0');
+        b.append(ms).append('Z');
+    }
+
+    // Same output as AtmService.fmt without going through String.format
+    private static void money(StringBuilder b, double v) {
+        long cents = Math.round(v * 100);
+        if (cents < 0) {
+            b.append('-');
+            cents = -cents;
+        }
+        long frac = cents % 100;
+        b.append(cents / 100).append('.');
+        if (frac < 10) b.append('0');
+        b.append(frac);
+    }
+
+    private static void string(StringBuilder b, String v) {
+        b.append('"');
+        for (int i = 0; i < v.length(); i++) {
+            char c = v.charAt(i);
+            switch (c) {
+                case '"': b.append("\\\""); break;
+                case '\\': b.append("\\\\"); break;
+                case '\n': b.append("\\n"); break;
+                case '\r': b.append("\\r"); break;
+                case '\t': b.append("\\t"); break;
+                default:
+                    if (c < 0x20) b.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+                    else b.append(c);
+            }
+        }
+        b.append('"');
+    }
+
+    /* ========= Files ========= */
+
+    private Path file(int n) {
+        return dir.resolve(n == 0 ? "events.log" : "events." + n + ".log");
+    }
+
+    private void openFile() throws IOException {
+        Path f = file(0);
+        fileBytes = Files.exists(f) ? Files.size(f) : 0;
+        out = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(f,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND), StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+    // events.log -> events.1.log -> ... -> events.<keep>.log, oldest dropped
+    private void roll() throws IOException {
+        out.close();
+        for (int n = keep - 1; n >= 0; n--) {
+            if (Files.exists(file(n))) Files.move(file(n), file(n + 1), StandardCopyOption.REPLACE_EXISTING);
+        }
+        openFile();
+    }
+
+    @Override
+    public String toString() {
+        return "EventLog[" + (dir == null ? "off" : dir) + ", " + capacity + " slots, " + whenFull
+                + ", written " + written + ", dropped " + dropped.get() + "]";
+    }
+}
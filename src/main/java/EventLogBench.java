@@ -0,0 +1,113 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Throughput of {@link EventLog} under concurrent producers, for both
+ * full-ring policies. Each run logs to a fresh temp directory with small
+ * rolled files, so rolling is exercised too.
+ *
+ * Usage: java EventLogBench [eventsPerThread] (default 1000000)
+ *
+ * For every policy and thread count it prints producer throughput, how many
+ * events were dropped, how many lines reached the files, and the bytes each
+ * producer allocated per event (should be 0). BLOCK runs must write every
+ * event; DROP runs must account for every event as written or dropped.
+ */
+public class EventLogBench {
+
+    public static void main(String[] args) throws Exception {
+        int perThread = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        boolean ok = true;
+
+        System.out.println("policy threads      events/s    dropped     in files  alloc B/event");
+        for (EventLog.WhenFull policy : EventLog.WhenFull.values()) {
+            for (int threads : new int[]{1, 2, 4, 8}) {
+                ok &= run(policy, threads, perThread);
+            }
+        }
+        System.out.println(ok ? "PASS" : "FAIL");
+        if (!ok) System.exit(1);
+    }
+
+    private static boolean run(EventLog.WhenFull policy, int threads, int perThread) throws Exception {
+        Path dir = Files.createTempDirectory("vaultx-events-bench");
+        EventLog log = new EventLog(dir, 16384, policy, 8L * 1024 * 1024, 1000);
+        log.start();
+
+        // Detail strings exist before the clock starts, as they would in the app
+        String[] users = new String[threads];
+        for (int t = 0; t < threads; t++) users[t] = "user" + t;
+        String detail = "Deposited: $50.00";
+
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        AtomicLong allocated = new AtomicLong();
+        Thread[] producers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            String user = users[t];
+            producers[t] = new Thread(() -> {
+                ready.countDown();
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long before = allocatedBytes();
+                for (int i = 0; i < perThread; i++) {
+                    log.log(EventLog.Type.POSTING, user, detail, 50.0, null);
+                }
+                allocated.addAndGet(allocatedBytes() - before);
+            }, "producer-" + t);
+            producers[t].start();
+        }
+        ready.await();
+        long t0 = System.nanoTime();
+        go.countDown();
+        for (Thread p : producers) p.join();
+        long ns = System.nanoTime() - t0;
+        log.close();
+
+        long total = (long) threads * perThread;
+        long lines = countLines(dir);
+        deleteAll(dir);
+        System.out.printf("%-6s %7d %13.0f %10d %12d %14.2f%n",
+                policy, threads, total * 1e9 / ns, log.getDropped(), lines, (double) allocated.get() / total);
+
+        return policy == EventLog.WhenFull.BLOCK
+                ? lines == total && log.getDropped() == 0
+                : lines + log.getDropped() == total;
+    }
+
+    // Per-thread allocation counter of HotSpot; 0 where it isn't available
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        if (mx instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) mx).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    private static long countLines(Path dir) throws IOException {
+        long n = 0;
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path f : (Iterable<Path>) files::iterator) {
+                try (Stream<String> lines = Files.lines(f)) {
+                    n += lines.count();
+                }
+            }
+        }
+        return n;
+    }
+
+    private static void deleteAll(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path f : (Iterable<Path>) files::iterator) Files.delete(f);
+        }
+        Files.delete(dir);
+    }
+}
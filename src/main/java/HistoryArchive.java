@@ -0,0 +1,411 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cold tier of the transaction history.
+ *
+ * Rows older than a configurable age are moved out of the {@code transactions}
+ * table into one segment file per month. A segment is a sequence of gzip
+ * blocks, one per (account, archival run), and the month's small text index
+ * says where each account's blocks are:
+ *
+ * <pre>
+ *   archive/2026-03.seg   gzip(id|hash|timestamp|action lines) gzip(...) ...
+ *   archive/2026-03.idx   username|offset|length|rows|firstId|lastId
+ * </pre>
+ *
+ * Reading one account's month is therefore an index lookup plus inflating
+ * that account's blocks only. The live table keeps the hot window. Rows
+ * keep their chain hash ("-" for unchained rows) so the audit can re-link
+ * through them; segments written before that have no hash column.
+ *
+ * Run as a tool: {@code java HistoryArchive [days]}
+ */
+public class HistoryArchive {
+
+    public static final int DEFAULT_AGE_DAYS = 90;
+    // The withdrawal limiter rebuilds from the last 24h of ledger, so never archive that
+    private static final int MIN_AGE_DAYS = 2;
+
+    private final Path dir;
+    // Parsed .idx files by account, rebuilt when an index file changes
+    private Map<String, List<IndexLine>> index;
+    private Map<Path, Long> indexSizes;
+
+    public HistoryArchive() {
+        this(Paths.get(System.getProperty("vaultx.archive.dir",
+                Paths.get(System.getProperty("user.home"), ".vaultx_archive").toString())));
+    }
+
+    public HistoryArchive(Path dir) {
+        this.dir = dir;
+    }
+
+    public Path getDir() {
+        return dir;
+    }
+
+    /** Result of one archival run. */
+    public static class Report {
+        int rowsMoved;
+        int months;
+        long dbBytesBefore;
+        long dbBytesAfter;
+        long archiveBytes;
+        long textBytes;
+        double hotQueryMsBefore;
+        double hotQueryMsAfter;
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "archived %d rows into %d month segment(s)%n" +
+                            "ledger text %,d bytes -> %,d bytes compressed (%.1fx)%n" +
+                            "database file %,d -> %,d bytes%n" +
+                            "hot history query %.2f ms -> %.2f ms",
+                    rowsMoved, months, textBytes, archiveBytes,
+                    archiveBytes == 0 ? 0 : (double) textBytes / archiveBytes,
+                    dbBytesBefore, dbBytesAfter, hotQueryMsBefore, hotQueryMsAfter);
+        }
+    }
+
+    /* ========= Archival ========= */
+
+    /**
+     * Moves every row older than {@code days} days into the month segments, then
+     * deletes them from the live table and compacts the database file.
+     */
+    public Report archiveOlderThan(int days) throws IOException, SQLException {
+        days = Math.max(days, MIN_AGE_DAYS);
+        String cutoff = LedgerEntry.TIMESTAMP_FORMAT.format(LocalDateTime.now().minusDays(days));
+        Files.createDirectories(dir);
+
+        Report report = new Report();
+        report.dbBytesBefore = sizeOf(DBHelper.dbFile());
+        String sampleUser = busiestUser();
+        report.hotQueryMsBefore = timeHotQuery(sampleUser);
+
+        // month -> username -> rows, in id order
+        Map<String, Map<String, List<LedgerEntry>>> byMonth = new TreeMap<>();
+        long maxId = 0;
+        String sql = "SELECT id, username, timestamp, action, hash FROM transactions WHERE timestamp < ? ORDER BY id ASC";
+        try (Connection conn = DBHelper.connect();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, cutoff);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                LedgerEntry e = new LedgerEntry(rs.getLong("id"), rs.getString("username"),
+                        rs.getString("timestamp"), rs.getString("action"), rs.getString("hash"));
+                byMonth.computeIfAbsent(e.getTimestamp().substring(0, 7), k -> new TreeMap<>())
+                        .computeIfAbsent(e.getUsername(), k -> new ArrayList<>())
+                        .add(e);
+                maxId = Math.max(maxId, e.getId());
+            }
+        }
+
+        for (Map.Entry<String, Map<String, List<LedgerEntry>>> m : byMonth.entrySet()) {
+            report.rowsMoved += appendMonth(m.getKey(), m.getValue(), report);
+            report.months++;
+        }
+
+        // Segments are fsynced before the rows go away
+        try (Connection conn = DBHelper.connect()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement del = conn.prepareStatement(
+                    "DELETE FROM transactions WHERE timestamp < ? AND id <= ?")) {
+                del.setString(1, cutoff);
+                del.setLong(2, maxId);
+                del.executeUpdate();
+            }
+            conn.commit();
+            conn.setAutoCommit(true);
+            try (Statement st = conn.createStatement()) {
+                st.execute("VACUUM");
+            }
+        }
+
+        report.dbBytesAfter = sizeOf(DBHelper.dbFile());
+        report.hotQueryMsAfter = timeHotQuery(sampleUser);
+        return report;
+    }
+
+    // Appends one gzip block per account to the month segment, skipping rows an earlier
+    // (interrupted) run already archived
+    private int appendMonth(String month, Map<String, List<LedgerEntry>> users, Report report) throws IOException {
+        Path seg = dir.resolve(month + ".seg");
+        Path idx = dir.resolve(month + ".idx");
+        Map<String, Long> archivedUpTo = new HashMap<>();
+        for (IndexLine l : readIndex(idx, YearMonth.parse(month))) archivedUpTo.merge(l.username, l.lastId, Math::max);
+
+        int moved = 0;
+        StringBuilder idxLines = new StringBuilder();
+        try (FileChannel ch = FileChannel.open(seg, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            for (Map.Entry<String, List<LedgerEntry>> u : users.entrySet()) {
+                long skipUpTo = archivedUpTo.getOrDefault(u.getKey(), 0L);
+                StringBuilder text = new StringBuilder();
+                int rows = 0;
+                long firstId = 0, lastId = 0;
+                for (LedgerEntry e : u.getValue()) {
+                    if (e.getId() <= skipUpTo) continue;
+                    text.append(e.getId()).append('|').append(e.getHash() == null ? "-" : e.getHash()).append('|')
+                            .append(e.getTimestamp()).append('|').append(e.getAction()).append('\n');
+                    if (rows++ == 0) firstId = e.getId();
+                    lastId = e.getId();
+                }
+                if (rows == 0) continue;
+
+                byte[] raw = text.toString().getBytes(StandardCharsets.UTF_8);
+                byte[] block = gzip(raw);
+                long offset = ch.size();
+                ch.write(java.nio.ByteBuffer.wrap(block));
+                idxLines.append(u.getKey()).append('|').append(offset).append('|').append(block.length).append('|')
+                        .append(rows).append('|').append(firstId).append('|').append(lastId).append('\n');
+                moved += rows;
+                report.textBytes += raw.length;
+                report.archiveBytes += block.length;
+            }
+            ch.force(true);
+        }
+        if (idxLines.length() > 0) {
+            Files.write(idx, idxLines.toString().getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.SYNC);
+        }
+        return moved;
+    }
+
+    /* ========= Reading ========= */
+
+    /** Archived months that hold rows for this account, oldest first. */
+    public List<YearMonth> months(String username) {
+        List<YearMonth> out = new ArrayList<>();
+        for (IndexLine l : index(username)) {
+            if (!out.contains(l.month)) out.add(l.month);
+        }
+        return out;
+    }
+
+    /** One account's archived rows for a month, in id order. Only that account's blocks are inflated. */
+    public List<LedgerEntry> read(String username, YearMonth month) {
+        List<IndexLine> blocks = new ArrayList<>();
+        for (IndexLine l : index(username)) if (l.month.equals(month)) blocks.add(l);
+        return readBlocks(username, blocks, 0, Long.MAX_VALUE);
+    }
+
+    /** One account's archived rows with afterId &lt; id &lt;= toId, in id order. Blocks outside the range are skipped. */
+    public List<LedgerEntry> read(String username, long afterId, long toId) {
+        List<IndexLine> blocks = new ArrayList<>();
+        for (IndexLine l : index(username)) if (l.lastId > afterId && l.firstId <= toId) blocks.add(l);
+        return readBlocks(username, blocks, afterId, toId);
+    }
+
+    private List<LedgerEntry> readBlocks(String username, List<IndexLine> blocks, long afterId, long toId) {
+        String key = username.toLowerCase(Locale.ROOT);
+        TreeMap<Long, LedgerEntry> rows = new TreeMap<>();
+        for (IndexLine l : blocks) {
+            byte[] block = new byte[l.length];
+            try (RandomAccessFile f = new RandomAccessFile(dir.resolve(l.month + ".seg").toFile(), "r")) {
+                f.seek(l.offset);
+                f.readFully(block);
+            } catch (IOException e) {
+                // No segment for that month
+                continue;
+            }
+            try (BufferedReader r = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(new ByteArrayInputStream(block)), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = r.readLine()) != null) {
+                    LedgerEntry e = parseRow(key, line);
+                    if (e != null && e.getId() > afterId && e.getId() <= toId) rows.put(e.getId(), e);
+                }
+            } catch (IOException e) {
+                EventLog.error("HistoryArchive.read", e);
+            }
+        }
+        return new ArrayList<>(rows.values());
+    }
+
+    // "id|hash|timestamp|action", or "id|timestamp|action" in segments written before rows kept their hash
+    private static LedgerEntry parseRow(String username, String line) {
+        String[] p = line.split("\\|", 4);
+        try {
+            long id = Long.parseLong(p[0]);
+            if (p.length == 4 && (p[1].equals("-") || p[1].length() == 64)) {
+                return new LedgerEntry(id, username, p[2], p[3], p[1].equals("-") ? null : p[1]);
+            }
+            p = line.split("\\|", 3);
+            return p.length == 3 ? new LedgerEntry(id, username, p[1], p[2]) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /** Every archived row of an account, oldest first. */
+    public List<LedgerEntry> readAll(String username) {
+        return read(username, 0, Long.MAX_VALUE);
+    }
+
+    /** Highest ledger id of this account that lives in the archive, or 0. */
+    public long maxArchivedId(String username) {
+        long max = 0;
+        for (IndexLine l : index(username)) max = Math.max(max, l.lastId);
+        return max;
+    }
+
+    public boolean isArchived(String username, YearMonth month) {
+        return months(username).contains(month);
+    }
+
+    // The account's index lines, oldest month first. The parsed index is kept
+    // until an .idx file appears or grows (a run here or in another process)
+    private synchronized List<IndexLine> index(String username) {
+        List<YearMonth> months = allMonths();
+        Map<Path, Long> sizes = new HashMap<>();
+        for (YearMonth m : months) {
+            Path idx = dir.resolve(m + ".idx");
+            sizes.put(idx, sizeOf(idx));
+        }
+        if (index == null || !sizes.equals(indexSizes)) {
+            Map<String, List<IndexLine>> byUser = new HashMap<>();
+            for (YearMonth m : months) {
+                for (IndexLine l : readIndex(dir.resolve(m + ".idx"), m)) {
+                    byUser.computeIfAbsent(l.username, k -> new ArrayList<>()).add(l);
+                }
+            }
+            index = byUser;
+            indexSizes = sizes;
+        }
+        return index.getOrDefault(username.toLowerCase(Locale.ROOT), java.util.Collections.emptyList());
+    }
+
+    private List<YearMonth> allMonths() {
+        List<YearMonth> out = new ArrayList<>();
+        if (!Files.isDirectory(dir)) return out;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "*.idx")) {
+            for (Path p : ds) {
+                String name = p.getFileName().toString();
+                try {
+                    out.add(YearMonth.parse(name.substring(0, name.length() - 4)));
+                } catch (Exception ignore) {
+                }
+            }
+        } catch (IOException e) {
+            EventLog.error("HistoryArchive.allMonths", e);
+        }
+        out.sort(null);
+        return out;
+    }
+
+    private static final class IndexLine {
+        YearMonth month;
+        String username;
+        long offset;
+        int length;
+        long firstId;
+        long lastId;
+    }
+
+    private static List<IndexLine> readIndex(Path idx, YearMonth month) {
+        List<IndexLine> out = new ArrayList<>();
+        if (!Files.exists(idx)) return out;
+        try {
+            for (String line : Files.readAllLines(idx, StandardCharsets.UTF_8)) {
+                String[] p = line.split("\\|");
+                if (p.length != 6) continue;   // torn last line after a crash
+                IndexLine l = new IndexLine();
+                l.month = month;
+                l.username = p[0];
+                l.offset = Long.parseLong(p[1]);
+                l.length = Integer.parseInt(p[2]);
+                l.firstId = Long.parseLong(p[4]);
+                l.lastId = Long.parseLong(p[5]);
+                out.add(l);
+            }
+        } catch (IOException | NumberFormatException e) {
+            EventLog.error("HistoryArchive.readIndex", e);
+        }
+        return out;
+    }
+
+    /* ========= Helpers ========= */
+
+    private static byte[] gzip(byte[] raw) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(raw.length / 4 + 64);
+        try (GZIPOutputStream gz = new GZIPOutputStream(bos)) {
+            gz.write(raw);
+        }
+        return bos.toByteArray();
+    }
+
+    private static long sizeOf(Path p) {
+        try {
+            return Files.size(p);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static String busiestUser() throws SQLException {
+        try (Connection conn = DBHelper.connect();
+             Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery(
+                     "SELECT username FROM transactions GROUP BY username ORDER BY COUNT(*) DESC LIMIT 1")) {
+            return rs.next() ? rs.getString(1) : "";
+        }
+    }
+
+    // Same query the history panel runs (ATMWithChatbot.fetchTransactions), best of 5
+    private static double timeHotQuery(String username) throws SQLException {
+        double best = Double.MAX_VALUE;
+        String sql = "SELECT timestamp, action FROM transactions WHERE username = ? ORDER BY id ASC";
+        try (Connection conn = DBHelper.connect();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < 5; i++) {
+                long start = System.nanoTime();
+                pstmt.setString(1, username);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        rs.getString(1);
+                        rs.getString(2);
+                    }
+                }
+                best = Math.min(best, (System.nanoTime() - start) / 1_000_000.0);
+            }
+        }
+        return best;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int days = args.length > 0 ? Integer.parseInt(args[0])
+                : Integer.getInteger("vaultx.archive.days", DEFAULT_AGE_DAYS);
+        DBHelper.initializeDatabase();
+        HistoryArchive archive = new HistoryArchive();
+        System.out.println("Archiving rows older than " + days + " days into " + archive.getDir());
+        System.out.println(archive.archiveOlderThan(days));
+    }
+}
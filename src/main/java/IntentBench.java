@@ -0,0 +1,126 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Accuracy and latency of the chatbot's typo handling ({@link IntentMatcher})
+ * on a generated typo corpus: every keyword with one letter dropped,
+ * doubled, swapped with its neighbour or replaced by an adjacent key, then
+ * the same with two such typos, each used in a message like "depsoit 50".
+ * A set of ordinary words that are no keyword at all measures how often
+ * the matcher "corrects" something it shouldn't.
+ *
+ * Usage: java IntentBench [budgetMicros] (default 2000)
+ *
+ * "right" means corrected without asking, "asked" a "Did you mean" prompt,
+ * "missed" no suggestion at all. Words under four letters are never
+ * corrected, so typos that shorten "help" or "send" count as missed; a
+ * budget of a microsecond or so turns nearly everything into a miss.
+ */
+public class IntentBench {
+
+    private static final String[] KEYBOARD = {"qwertyuiop", "asdfghjkl", "zxcvbnm"};
+    private static final String[] NOT_KEYWORDS = {
+            "hello", "thanks", "please", "weather", "account", "money", "today", "where", "branch",
+            "card", "pin", "loan", "rate", "open", "close", "time", "what", "cash", "bank", "fees"
+    };
+
+    public static void main(String[] args) {
+        long budgetMicros = args.length > 0 ? Long.parseLong(args[0]) : 2000;
+        IntentMatcher matcher = new IntentMatcher(ChatbotEngine.KEYWORDS,
+                Integer.getInteger("vaultx.chatbot.maxEdits", 2), budgetMicros * 1000);
+        Random rnd = new Random(7);
+
+        List<String[]> oneTypo = new ArrayList<>();   // {message, intent}
+        List<String[]> twoTypos = new ArrayList<>();
+        for (String[] row : ChatbotEngine.KEYWORDS) {
+            for (int i = 1; i < row.length; i++) {
+                String k = row[i];
+                if (k.length() < 4 || !k.matches("[a-z]+")) continue;
+                for (String t : typos(k)) {
+                    oneTypo.add(new String[]{t + " 50", row[0]});
+                    List<String> again = typos(t);
+                    twoTypos.add(new String[]{again.get(rnd.nextInt(again.size())) + " 50", row[0]});
+                }
+            }
+        }
+        List<String[]> noise = new ArrayList<>();
+        for (String w : NOT_KEYWORDS) noise.add(new String[]{w + " 50", "unknown"});
+
+        System.out.println("vocabulary " + matcher.vocabularySize() + " keywords, budget " + budgetMicros + " us");
+        System.out.println("corpus          messages  right  asked  wrong  missed   p50 ns   p99 ns   max ns");
+        run("1 typo", oneTypo, matcher);
+        run("2 typos", twoTypos, matcher);
+        run("no keyword", noise, matcher);
+    }
+
+    private static void run(String name, List<String[]> corpus, IntentMatcher matcher) {
+        // Warm up the JIT before timing
+        for (int i = 0; i < 20; i++) for (String[] c : corpus) classify(matcher, c[0]);
+
+        int right = 0;
+        int asked = 0;
+        int wrong = 0;
+        int missed = 0;
+        long[] nanos = new long[corpus.size()];
+        for (int i = 0; i < corpus.size(); i++) {
+            String[] c = corpus.get(i);
+            long t0 = System.nanoTime();
+            IntentMatcher.Correction r = classify(matcher, c[0]);
+            nanos[i] = System.nanoTime() - t0;
+
+            boolean noise = c[1].equals("unknown");
+            if (r == null) {
+                if (noise) right++;
+                else missed++;
+            } else if (!r.isSure()) {
+                // A question is harmless even when it is about a word that is no keyword
+                if (noise || ChatbotEngine.intentOf(r.getText().toLowerCase(Locale.ROOT)).equals(c[1])) asked++;
+                else wrong++;
+            } else if (!noise && ChatbotEngine.intentOf(r.getText().toLowerCase(Locale.ROOT)).equals(c[1])) {
+                right++;
+            } else {
+                wrong++;
+            }
+        }
+        Arrays.sort(nanos);
+        System.out.printf("%-14s %9d %6d %6d %6d %7d %8d %8d %8d%n", name, corpus.size(), right, asked, wrong,
+                missed, nanos[nanos.length / 2], nanos[(int) (nanos.length * 0.99)], nanos[nanos.length - 1]);
+    }
+
+    private static IntentMatcher.Correction classify(IntentMatcher matcher, String message) {
+        List<String> parts = ChatbotEngine.splitCommands(message);
+        return matcher.correct(message, parts,
+                p -> !ChatbotEngine.intentOf(p.toLowerCase(Locale.ROOT)).equals("unknown"));
+    }
+
+    // Drops, doubles, neighbour swaps and adjacent-key slips, without the word itself
+    private static List<String> typos(String w) {
+        List<String> out = new ArrayList<>();
+        for (int i = 0; i < w.length(); i++) {
+            out.add(w.substring(0, i) + w.substring(i + 1));
+            out.add(w.substring(0, i + 1) + w.charAt(i) + w.substring(i + 1));
+            if (i + 1 < w.length()) {
+                out.add(w.substring(0, i) + w.charAt(i + 1) + w.charAt(i) + w.substring(i + 2));
+            }
+            char near = neighbour(w.charAt(i));
+            if (near != 0) out.add(w.substring(0, i) + near + w.substring(i + 1));
+        }
+        out.removeIf(t -> t.equals(w) || t.length() < 3);
+        List<String> unique = new ArrayList<>(new LinkedHashSet<>(out));
+        Collections.shuffle(unique, new Random(w.hashCode()));
+        return unique;
+    }
+
+    private static char neighbour(char c) {
+        for (String row : KEYBOARD) {
+            int i = row.indexOf(c);
+            if (i >= 0) return row.charAt(i + 1 < row.length() ? i + 1 : i - 1);
+        }
+        return 0;
+    }
+}
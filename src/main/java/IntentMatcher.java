@@ -0,0 +1,184 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Typo-tolerant lookup of chatbot keywords ("withdraww", "balnce",
+ * "depsoit"). The single-word keywords of every intent go into a
+ * {@link BKTree}; a message that matched nothing exactly has each of its
+ * words looked up there and replaced by the nearest keyword.
+ *
+ * A correction is trusted (applied without asking) when it is a single
+ * edit in a keyword of five letters or more and no other intent is as
+ * close; anything else is only offered as a suggestion.
+ *
+ * Typing two letters the wrong way round is one typo but two Levenshtein
+ * edits, so the tree is searched one edit wider and the candidates are
+ * ranked by optimal string alignment distance, which counts a swap of
+ * neighbours as one edit. (The tree itself needs Levenshtein: OSA breaks
+ * the triangle inequality the pruning relies on.)
+ * <pre>
+ *   -Dvaultx.chatbot.maxEdits=n       most edits per word (default 2, 0 = off)
+ *   -Dvaultx.chatbot.budgetMicros=n   time allowed per message (default 2000)
+ * </pre>
+ * When the budget runs out the words looked up so far are still used.
+ */
+public class IntentMatcher {
+
+    private static final int MIN_WORD = 4;
+    private static final int SURE_KEYWORD = 5;
+    private static final Pattern WORD = Pattern.compile("[a-z]+");
+
+    /** A message with its misspelled keywords replaced. */
+    public static final class Correction {
+        private final String text;
+        private final boolean sure;
+        private final boolean complete;
+
+        Correction(String text, boolean sure, boolean complete) {
+            this.text = text;
+            this.sure = sure;
+            this.complete = complete;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        /** True when every replaced word was an unambiguous single edit. */
+        public boolean isSure() {
+            return sure;
+        }
+
+        /** False if the time budget ran out before every word was looked up. */
+        public boolean isComplete() {
+            return complete;
+        }
+    }
+
+    private final BKTree<String> tree = new BKTree<>();
+    private final int maxEdits;
+    private final long budgetNanos;
+
+    /** keywords[i] = {intent, keyword, keyword, ...}; phrases with spaces are skipped. */
+    public IntentMatcher(String[][] keywords, int maxEdits, long budgetNanos) {
+        this.maxEdits = maxEdits;
+        this.budgetNanos = budgetNanos;
+        for (String[] row : keywords) {
+            for (int i = 1; i < row.length; i++) {
+                String k = row[i];
+                if (k.length() >= MIN_WORD && WORD.matcher(k).matches()) tree.add(k, row[0]);
+            }
+        }
+    }
+
+    public static IntentMatcher fromConfig(String[][] keywords) {
+        return new IntentMatcher(keywords,
+                Integer.getInteger("vaultx.chatbot.maxEdits", 2),
+                Long.getLong("vaultx.chatbot.budgetMicros", 2000) * 1000);
+    }
+
+    public int vocabularySize() {
+        return tree.size();
+    }
+
+    /**
+     * Replaces misspelled keywords in the message, or returns null if no
+     * word is close enough to one. Only words of the parts that isKnown
+     * rejects are looked at, so amounts and names are left alone.
+     */
+    public Correction correct(String raw, List<String> parts, Predicate<String> isKnown) {
+        if (maxEdits <= 0) return null;
+        long deadline = System.nanoTime() + budgetNanos;
+        String text = raw;
+        boolean changed = false;
+        boolean sure = true;
+        boolean complete = true;
+        for (String part : parts) {
+            if (isKnown.test(part)) continue;
+            Matcher m = WORD.matcher(part.toLowerCase(Locale.ROOT));
+            while (m.find()) {
+                String word = m.group();
+                if (word.length() < MIN_WORD) continue;
+                BKTree.Search<String> s = tree.search(word, editsFor(word) + 1, deadline);
+                if (!s.complete) complete = false;
+                List<BKTree.Match<String>> found = rank(word, s.matches);
+                if (!found.isEmpty()) {
+                    BKTree.Match<String> best = found.get(0);
+                    text = replaceWord(text, word, best.word);
+                    changed = true;
+                    if (best.distance > 1 || best.word.length() < SURE_KEYWORD || ambiguous(found)) sure = false;
+                    break;   // one keyword per part is enough to pick its intent
+                }
+                if (!complete) break;
+            }
+            if (!complete) break;
+        }
+        return changed ? new Correction(text, sure && complete, complete) : null;
+    }
+
+    // Short words get fewer edits; two edits make almost any four-letter word some keyword
+    private int editsFor(String word) {
+        return Math.min(maxEdits, word.length() <= 4 ? 1 : word.length() <= 6 ? 2 : 3);
+    }
+
+    // Candidates within editsFor(word) by OSA distance, nearest first
+    private List<BKTree.Match<String>> rank(String word, List<BKTree.Match<String>> candidates) {
+        int max = editsFor(word);
+        List<BKTree.Match<String>> out = new ArrayList<>();
+        for (BKTree.Match<String> c : candidates) {
+            int d = c.distance <= 1 ? c.distance : osa(word, c.word);
+            if (d <= max) out.add(new BKTree.Match<>(c.word, c.value, d));
+        }
+        out.sort(Comparator.comparingInt(m -> m.distance));
+        return out;
+    }
+
+    /** Levenshtein distance that also counts swapping two neighbouring letters as one edit. */
+    static int osa(String a, String b) {
+        int la = a.length();
+        int lb = b.length();
+        int[][] d = new int[la + 1][lb + 1];
+        for (int i = 0; i <= la; i++) d[i][0] = i;
+        for (int j = 0; j <= lb; j++) d[0][j] = j;
+        for (int i = 1; i <= la; i++) {
+            for (int j = 1; j <= lb; j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int v = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1), d[i - 1][j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    v = Math.min(v, d[i - 2][j - 2] + 1);
+                }
+                d[i][j] = v;
+            }
+        }
+        return d[la][lb];
+    }
+
+    // Another intent at the same distance as the best match
+    private static boolean ambiguous(List<BKTree.Match<String>> matches) {
+        BKTree.Match<String> best = matches.get(0);
+        for (int i = 1; i < matches.size(); i++) {
+            BKTree.Match<String> m = matches.get(i);
+            if (m.distance > best.distance) break;
+            if (!m.value.equals(best.value)) return true;
+        }
+        return false;
+    }
+
+    // Replaces the first whole-word, case-insensitive occurrence
+    private static String replaceWord(String text, String word, String with) {
+        Matcher m = Pattern.compile("(?i)\\b" + Pattern.quote(word) + "\\b").matcher(text);
+        if (!m.find()) return text;
+        return text.substring(0, m.start()) + with + text.substring(m.end());
+    }
+
+    /** Nearest keywords to one word, for tools and benchmarks. */
+    List<BKTree.Match<String>> lookup(String word) {
+        String w = word.toLowerCase(Locale.ROOT);
+        return rank(w, tree.search(w, editsFor(w) + 1, System.nanoTime() + budgetNanos).matches);
+    }
+}
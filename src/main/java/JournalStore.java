@@ -0,0 +1,242 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Append-only file backend. Every change is one line at the end of the
+ * journal; opening the store replays the file into a {@link MemoryStore},
+ * which then serves all reads.
+ * <pre>
+ * U|username|base64(salt)|base64(hash)|balance|tier      account (last line wins)
+ * T|id|username|timestamp|prev_hash|hash|action          ledger row
+ * </pre>
+ * Each line is flushed before the call returns; with
+ * -Dvaultx.journal.fsync=true it is also forced to disk. A torn last line
+ * (crash mid-write) is cut off on open. Superseded account lines are
+ * dropped by {@link #compact()}, which runs on open once there are more
+ * than {@value #COMPACT_AFTER} of them.
+ */
+public class JournalStore extends MemoryStore {
+
+    static final int COMPACT_AFTER = 10_000;
+
+    private final Path file;
+    private final boolean fsync = Boolean.getBoolean("vaultx.journal.fsync");
+    private FileOutputStream out;
+    private BufferedWriter writer;
+
+    public JournalStore(Path file) {
+        this.file = file;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public String name() {
+        return "file";
+    }
+
+    @Override
+    public synchronized void init() {
+        try {
+            if (file.getParent() != null) Files.createDirectories(file.getParent());
+            if (Files.exists(file)) {
+                cutTornTail();
+                int superseded = replay();
+                if (superseded > COMPACT_AFTER) compact();
+            }
+            openWriter();
+        } catch (IOException e) {
+            EventLog.error("JournalStore.init", e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (writer == null) return;
+        try {
+            writer.close();
+        } catch (IOException e) {
+            EventLog.error("JournalStore.close", e);
+        }
+        writer = null;
+    }
+
+    /* ========= Writes ========= */
+
+    @Override
+    public synchronized boolean saveUser(User u) {
+        return write(userLine(u)) && super.saveUser(u);
+    }
+
+    @Override
+    public synchronized long append(String username, String timestamp, String action, String prevHash, String hash) {
+        String key = username.toLowerCase(Locale.ROOT);
+        if (hash != null && !fits(key, prevHash)) return -1;
+        long id = nextId();
+        String line = "T|" + id + "|" + key + "|" + timestamp + "|" + nullToEmpty(prevHash) + "|"
+                + nullToEmpty(hash) + "|" + action.replace('\n', ' ');
+        if (!write(line)) return -1;
+        return put(id, key, timestamp, action, hash);
+    }
+
+    /**
+     * The rows and the account line are written and flushed (and fsynced) together.
+     * A crash halfway through the write can still leave a prefix of the batch behind.
+     */
+    @Override
+    public synchronized boolean postBatch(User u, String timestamp, List<String> actions, String prevHash,
+                                          List<String> hashes) {
+        String key = u.getUsername().toLowerCase(Locale.ROOT);
+        if (!fits(key, prevHash)) return false;
+        long[] ids = new long[actions.size()];
+        StringBuilder lines = new StringBuilder();
+        String prev = prevHash;
+        for (int i = 0; i < actions.size(); i++) {
+            ids[i] = nextId();
+            lines.append("T|").append(ids[i]).append('|').append(key).append('|').append(timestamp).append('|')
+                    .append(nullToEmpty(prev)).append('|').append(nullToEmpty(hashes.get(i))).append('|')
+                    .append(actions.get(i).replace('\n', ' ')).append('\n');
+            prev = hashes.get(i);
+        }
+        lines.append(userLine(u));
+        if (!write(lines.toString())) return false;
+        for (int i = 0; i < actions.size(); i++) put(ids[i], key, timestamp, actions.get(i), hashes.get(i));
+        super.saveUser(u);
+        return true;
+    }
+
+    private boolean write(String line) {
+        if (writer == null) {
+            // Only the kind and account: user lines carry the salt and password hash
+            String[] f = line.split("\\|", 4);
+            String user = f[0].equals("T") && f.length > 2 ? f[2] : f.length > 1 ? f[1] : "?";
+            EventLog.error("JournalStore.write", new IllegalStateException(
+                    "journal not open, dropped " + f[0] + " record of " + user));
+            return false;
+        }
+        try {
+            writer.write(line);
+            writer.write('\n');
+            writer.flush();
+            if (fsync) out.getChannel().force(false);
+            return true;
+        } catch (IOException e) {
+            EventLog.error("JournalStore.write", e);
+            return false;
+        }
+    }
+
+    /* ========= Open / replay ========= */
+
+    private void openWriter() throws IOException {
+        out = new FileOutputStream(file.toFile(), true);
+        writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    }
+
+    // Returns how many account lines were superseded by later ones
+    private int replay() throws IOException {
+        int userLines = 0;
+        int bad = 0;
+        try (BufferedReader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                try {
+                    if (line.startsWith("U|")) {
+                        String[] p = line.split("\\|", 6);
+                        super.saveUser(new User(p[1],
+                                Base64.getDecoder().decode(p[2]),
+                                Base64.getDecoder().decode(p[3]),
+                                Double.parseDouble(p[4]),
+                                AccountTier.fromName(p[5])));
+                        userLines++;
+                    } else if (line.startsWith("T|")) {
+                        String[] p = line.split("\\|", 7);
+                        put(Long.parseLong(p[1]), p[2], p[3], p[6], p[5].isEmpty() ? null : p[5]);
+                    } else {
+                        bad++;
+                    }
+                } catch (RuntimeException e) {
+                    bad++;
+                }
+            }
+        }
+        if (bad > 0) EventLog.event(EventLog.Type.STORE, null, "JournalStore: skipped " + bad + " unreadable line(s) in " + file);
+        return userLines - usernames().size();
+    }
+
+    // A crash mid-write can leave a last line without its newline; drop it
+    private void cutTornTail() throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            long len = raf.length();
+            long end = len;
+            while (end > 0) {
+                raf.seek(end - 1);
+                if (raf.read() == '\n') break;
+                end--;
+            }
+            if (end < len) {
+                raf.setLength(end);
+                EventLog.event(EventLog.Type.STORE, null, "JournalStore: cut " + (len - end) + " byte(s) of a torn last line");
+            }
+        }
+    }
+
+    /**
+     * Rewrites the journal with every ledger line and one line per account.
+     * Written to a temp file and moved over the journal, so a crash leaves
+     * either the old or the new file.
+     */
+    public synchronized void compact() throws IOException {
+        boolean wasOpen = writer != null;
+        close();
+        Path tmp = file.resolveSibling(file.getFileName() + ".compact");
+        try (BufferedReader r = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+             BufferedWriter w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                if (line.startsWith("T|")) {
+                    w.write(line);
+                    w.write('\n');
+                }
+            }
+            for (String name : usernames()) {
+                w.write(userLine(loadUser(name)));
+                w.write('\n');
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (wasOpen) openWriter();
+    }
+
+    private static String userLine(User u) {
+        return String.join("|", "U",
+                u.getUsername().toLowerCase(Locale.ROOT),
+                Base64.getEncoder().encodeToString(u.getSalt()),
+                Base64.getEncoder().encodeToString(u.getPasswordHash()),
+                Double.toString(u.getBalance()),
+                u.getTier().name());
+    }
+
+    private static String nullToEmpty(String s) {
+        return s == null ? "" : s;
+    }
+
+    @Override
+    public String toString() {
+        return "JournalStore[" + file + "]";
+    }
+}
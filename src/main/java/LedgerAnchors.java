@@ -0,0 +1,108 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The newest chain hash of every account of one database, kept outside
+ * it (in {@link LedgerChain#secretsDir()}, next to the ledger key). The
+ * audit checks that each anchored hash is still in the ledger, so rows cut
+ * off the end of an account's chain are noticed even though nothing after
+ * them is left to break.
+ *
+ * The file is an append-only list of "username|hash" lines; the last line
+ * of an account wins and "-" forgets it. It is rewritten with one line per
+ * account when a process first opens it. Lines are written after the rows
+ * commit and are not forced, so after a crash an anchor can lag behind the
+ * ledger but never run ahead of it.
+ */
+public class LedgerAnchors {
+
+    private static final Map<String, LedgerAnchors> OPEN = new ConcurrentHashMap<>();
+
+    private final Path file;
+    private final Map<String, String> tails = new HashMap<>();
+    private FileChannel channel;
+
+    private LedgerAnchors(Path file) {
+        this.file = file;
+    }
+
+    /** The anchors of the database at this url, opened on first use. */
+    public static LedgerAnchors of(String url) {
+        return OPEN.computeIfAbsent(url, u -> {
+            LedgerAnchors a = new LedgerAnchors(LedgerChain.secretsDir()
+                    .resolve("anchors-" + LedgerChain.sha256(u).substring(0, 16)));
+            // An in-memory database doesn't outlive the process, so there is nothing to anchor
+            if (!u.contains(":memory:")) a.open();
+            return a;
+        });
+    }
+
+    private synchronized void open() {
+        try {
+            Files.createDirectories(file.getParent());
+            if (Files.exists(file)) {
+                for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                    int bar = line.lastIndexOf('|');
+                    if (bar <= 0) continue;   // torn last line after a crash
+                    String hash = line.substring(bar + 1);
+                    if (hash.equals("-")) tails.remove(line.substring(0, bar));
+                    else if (hash.length() == 64) tails.put(line.substring(0, bar), hash);
+                }
+            }
+            // Compact: one line per account
+            StringBuilder sb = new StringBuilder();
+            for (Map.Entry<String, String> t : tails.entrySet()) sb.append(t.getKey()).append('|').append(t.getValue()).append('\n');
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(tmp, sb.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            EventLog.error("LedgerAnchors.open", e);
+        }
+    }
+
+    /** Call once the row with this hash is committed as the account's newest. */
+    public synchronized void record(String username, String hash) {
+        String key = username.toLowerCase(Locale.ROOT);
+        if (channel == null || hash == null || hash.length() != 64 || hash.equals(tails.get(key))) return;
+        tails.put(key, hash);
+        write(key + "|" + hash + "\n");
+    }
+
+    /** Drops the account, e.g. once its rows moved to another database. */
+    public synchronized void forget(String username) {
+        String key = username.toLowerCase(Locale.ROOT);
+        if (channel == null || tails.remove(key) == null) return;
+        write(key + "|-\n");
+    }
+
+    private void write(String line) {
+        try {
+            ByteBuffer buf = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+            while (buf.hasRemaining()) channel.write(buf);
+        } catch (IOException e) {
+            EventLog.error("LedgerAnchors.write", e);
+        }
+    }
+
+    /** Every anchored account and its hash. */
+    public synchronized Map<String, String> all() {
+        return new TreeMap<>(tails);
+    }
+
+    @Override
+    public String toString() {
+        return "LedgerAnchors[" + file + "]";
+    }
+}
@@ -0,0 +1,587 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Tamper evidence for the ledger.
+ *
+ * Every transactions row carries {@code hash = HMAC-SHA256(key, prev_hash, username,
+ * timestamp, action)}, each field length-prefixed, where prev_hash is the hash of the
+ * account's previous row (64 zeros for the first). The key lives in a file outside the
+ * database ({@code -Dvaultx.ledger.keyFile}, default {@code ~/.vaultx_ledger/ledger.key},
+ * created on first use), so whoever can only write the database can't forge rows.
+ * Every {@link #CHECKPOINT_SIZE} rows of an account a Merkle root over their hashes is
+ * stored in {@code ledger_checkpoints}, together with the hash of the last row, and the
+ * newest hash of each account is anchored outside the database (see {@link LedgerAnchors}).
+ *
+ * Appending costs one HMAC over a short string: the tail hash of each account is
+ * cached, so the hot path does not read the previous row.
+ *
+ * Verification splits every account into its checkpoint ranges plus the open tail and
+ * checks the ranges on a thread pool. Each row stores its predecessor's hash, so the
+ * ranges are independent; archived rows are re-linked from the row before them. It also
+ * replays the postings of each account (archived and live) and compares the result to
+ * {@code users.balance}.
+ *
+ * Run as a tool: {@code java LedgerChain [verify|checkpoint|rechain] [threads]}. rechain
+ * re-links rows written with the earlier unkeyed hash; run it once, with the app stopped,
+ * before archiving again.
+ */
+public class LedgerChain {
+
+    public static final String GENESIS = "0000000000000000000000000000000000000000000000000000000000000000";
+    public static final int CHECKPOINT_SIZE = 1024;
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Hashing error", e);
+        }
+    });
+
+    private static final ThreadLocal<Mac> HMAC = ThreadLocal.withInitial(() -> {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key(), "HmacSHA256"));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Hashing error", e);
+        }
+    });
+
+    private static byte[] key;
+
+    private final ConcurrentHashMap<String, String> tails = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Object> locks = new ConcurrentHashMap<>();
+
+    /* ========= Append path ========= */
+
+    /** Lock to hold around tail() .. advance() so two postings of one account can't fork the chain. */
+    public Object lockFor(String username) {
+        return locks.computeIfAbsent(username.toLowerCase(Locale.ROOT), k -> new Object());
+    }
+
+    /** Hash of the account's newest row (cached after the first lookup). */
+    public String tail(LedgerStore ledger, String username) {
+        String key = username.toLowerCase(Locale.ROOT);
+        String cached = tails.get(key);
+        if (cached != null) return cached;
+        String tail = ledger.lastHash(key);
+        if (tail == null) tail = GENESIS;
+        tails.put(key, tail);
+        return tail;
+    }
+
+    /** Call once the row with this hash is committed. */
+    public void advance(String username, String hash) {
+        tails.put(username.toLowerCase(Locale.ROOT), hash);
+    }
+
+    /** Forget cached tails, e.g. after an insert failed half way. */
+    public void reset(String username) {
+        tails.remove(username.toLowerCase(Locale.ROOT));
+    }
+
+    public static String link(String prevHash, String username, String timestamp, String action) {
+        Mac mac = HMAC.get();
+        field(mac, prevHash);
+        field(mac, username.toLowerCase(Locale.ROOT));
+        field(mac, timestamp);
+        field(mac, action);
+        return hex(mac.doFinal());
+    }
+
+    // Length first, so no choice of field contents can shift a boundary
+    private static void field(Mac mac, String s) {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        mac.update(new byte[]{(byte) (b.length >>> 24), (byte) (b.length >>> 16), (byte) (b.length >>> 8), (byte) b.length});
+        mac.update(b);
+    }
+
+    // The unkeyed hash rows were chained with before; only rechain uses it
+    private static String legacyLink(String prevHash, String username, String timestamp, String action) {
+        return sha256(prevHash + "|" + username.toLowerCase(Locale.ROOT) + "|" + timestamp + "|" + action);
+    }
+
+    /** Where the ledger key and the anchors live: -Dvaultx.ledger.dir, default ~/.vaultx_ledger. */
+    public static Path secretsDir() {
+        return Paths.get(System.getProperty("vaultx.ledger.dir",
+                Paths.get(System.getProperty("user.home"), ".vaultx_ledger").toString()));
+    }
+
+    // Loads the chain key, creating a random one the first time
+    private static synchronized byte[] key() {
+        if (key == null) {
+            key = readKey(Paths.get(System.getProperty("vaultx.ledger.keyFile",
+                    secretsDir().resolve("ledger.key").toString())), "Ledger", true);
+        }
+        return key;
+    }
+
+    /**
+     * Reads a secret key file. With create, a missing one is made with 32
+     * random bytes, readable by the owner only; without, it must exist.
+     */
+    static byte[] readKey(Path file, String what, boolean create) {
+        try {
+            if (!Files.exists(file)) {
+                if (!create) throw new IOException(what + " key " + file + " does not exist");
+                Files.createDirectories(file.toAbsolutePath().getParent());
+                byte[] fresh = new byte[32];
+                new SecureRandom().nextBytes(fresh);
+                try {
+                    Files.write(file, fresh, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.SYNC);
+                    try {
+                        Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-------"));
+                    } catch (UnsupportedOperationException ignore) {
+                        // Not a POSIX file system
+                    }
+                } catch (FileAlreadyExistsException raced) {
+                    // Another process created it first; use theirs
+                }
+            }
+            byte[] k = Files.readAllBytes(file);
+            if (k.length < 32) throw new IOException(what + " key " + file + " is too short");
+            return k;
+        } catch (IOException e) {
+            throw new IllegalStateException(what + " key " + file + " can't be read", e);
+        }
+    }
+
+    /* ========= Checkpoints ========= */
+
+    /** Seals every complete block of CHECKPOINT_SIZE rows not yet covered by a checkpoint. */
+    public static int checkpoint(Connection conn, String username) throws SQLException {
+        String key = username.toLowerCase(Locale.ROOT);
+        long lastId = 0;
+        int seq = 0;
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT seq, last_id FROM ledger_checkpoints WHERE username = ? ORDER BY seq DESC LIMIT 1")) {
+            ps.setString(1, key);
+            ResultSet rs = ps.executeQuery();
+            if (rs.next()) {
+                seq = rs.getInt(1) + 1;
+                lastId = rs.getLong(2);
+            }
+        }
+
+        int sealed = 0;
+        List<String> hashes = new ArrayList<>(CHECKPOINT_SIZE);
+        long firstId = 0;
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT id, hash FROM transactions WHERE username = ? AND id > ? AND hash IS NOT NULL ORDER BY id ASC");
+             PreparedStatement ins = conn.prepareStatement(
+                     "INSERT INTO ledger_checkpoints (username, seq, first_id, last_id, last_hash, merkle_root) VALUES (?, ?, ?, ?, ?, ?)")) {
+            ps.setString(1, key);
+            ps.setLong(2, lastId);
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                if (hashes.isEmpty()) firstId = rs.getLong(1);
+                hashes.add(rs.getString(2));
+                if (hashes.size() == CHECKPOINT_SIZE) {
+                    ins.setString(1, key);
+                    ins.setInt(2, seq++);
+                    ins.setLong(3, firstId);
+                    ins.setLong(4, rs.getLong(1));
+                    ins.setString(5, hashes.get(hashes.size() - 1));
+                    ins.setString(6, merkleRoot(hashes));
+                    ins.executeUpdate();
+                    hashes.clear();
+                    sealed++;
+                }
+            }
+        }
+        return sealed;
+    }
+
+    public static String merkleRoot(List<String> hashes) {
+        if (hashes.isEmpty()) return GENESIS;
+        List<byte[]> level = new ArrayList<>(hashes.size());
+        for (String h : hashes) level.add(unhex(h));
+        MessageDigest md = SHA256.get();
+        while (level.size() > 1) {
+            List<byte[]> up = new ArrayList<>((level.size() + 1) / 2);
+            for (int i = 0; i < level.size(); i += 2) {
+                byte[] left = level.get(i);
+                byte[] right = i + 1 < level.size() ? level.get(i + 1) : left;
+                md.reset();
+                md.update(left);
+                md.update(right);
+                up.add(md.digest());
+            }
+            level = up;
+        }
+        return hex(level.get(0));
+    }
+
+    /* ========= Verification ========= */
+
+    public static class AuditReport {
+        final AtomicLong rows = new AtomicLong();
+        final AtomicLong legacyRows = new AtomicLong();
+        final AtomicLong ranges = new AtomicLong();
+        final List<String> problems = java.util.Collections.synchronizedList(new ArrayList<>());
+        long millis;
+
+        public boolean isClean() {
+            return problems.isEmpty();
+        }
+
+        public List<String> getProblems() {
+            return problems;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(String.format(Locale.US,
+                    "verified %,d rows in %,d ranges in %,d ms (%,.0f rows/s), %,d unchained legacy rows, %d problem(s)",
+                    rows.get(), ranges.get(), millis, millis == 0 ? 0.0 : rows.get() * 1000.0 / millis,
+                    legacyRows.get(), problems.size()));
+            synchronized (problems) {
+                for (String p : problems.subList(0, Math.min(50, problems.size()))) sb.append("\n  ").append(p);
+            }
+            return sb.toString();
+        }
+    }
+
+    /** One unit of parallel work: rows (afterId, toId] of an account, expected to start at prevHash. */
+    private static final class Range {
+        final String username;
+        final long afterId;
+        final long toId;           // Long.MAX_VALUE for the open tail
+        final String prevHash;
+        final String lastHash;     // null for the open tail
+        final String root;
+        final String anchor;       // open tail only: the anchored newest hash, or null
+
+        Range(String username, long afterId, long toId, String prevHash, String lastHash, String root, String anchor) {
+            this.username = username;
+            this.afterId = afterId;
+            this.toId = toId;
+            this.prevHash = prevHash;
+            this.lastHash = lastHash;
+            this.root = root;
+            this.anchor = anchor;
+        }
+    }
+
+    /** A row being checked; prevHash is null for an archived row, which doesn't keep it. */
+    private static final class Row {
+        final String timestamp;
+        final String action;
+        final String prevHash;
+        final String hash;
+
+        Row(String timestamp, String action, String prevHash, String hash) {
+            this.timestamp = timestamp;
+            this.action = action;
+            this.prevHash = prevHash;
+            this.hash = hash;
+        }
+    }
+
+    public static AuditReport verifyAll(int threads) throws Exception {
+        long start = System.currentTimeMillis();
+        AuditReport report = new AuditReport();
+        Map<String, String> anchors = LedgerAnchors.of(DBHelper.url()).all();
+
+        // Build the work list from the checkpoint table
+        List<Range> work = new ArrayList<>();
+        Map<String, Double> balances = new TreeMap<>();
+        try (Connection conn = DBHelper.connect(); Statement st = conn.createStatement()) {
+            ResultSet rs = st.executeQuery("SELECT username, balance FROM users");
+            while (rs.next()) balances.put(rs.getString(1), rs.getDouble(2));
+
+            for (String user : balances.keySet()) {
+                // Unchained rows come first and are skipped, so the first chained row links to GENESIS
+                String prev = GENESIS;
+                long after = 0;
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "SELECT first_id, last_id, last_hash, merkle_root FROM ledger_checkpoints WHERE username = ? ORDER BY seq ASC")) {
+                    ps.setString(1, user);
+                    ResultSet c = ps.executeQuery();
+                    while (c.next()) {
+                        work.add(new Range(user, c.getLong(1) - 1, c.getLong(2), prev, c.getString(3), c.getString(4), null));
+                        prev = c.getString(3);
+                        after = c.getLong(2);
+                    }
+                }
+                work.add(new Range(user, after, Long.MAX_VALUE, prev, null, null, anchors.get(user)));
+            }
+        }
+        for (String user : anchors.keySet()) {
+            if (!balances.containsKey(user)) report.problems.add(user + ": account is anchored but missing from users");
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            HistoryArchive archive = new HistoryArchive();
+            for (Range r : work) futures.add(pool.submit(() -> verifyRange(r, archive, report)));
+            for (Map.Entry<String, Double> b : balances.entrySet()) {
+                futures.add(pool.submit(() -> verifyBalance(b.getKey(), b.getValue(), archive, report)));
+            }
+            for (Future<?> f : futures) f.get();
+        } finally {
+            pool.shutdown();
+        }
+        report.millis = System.currentTimeMillis() - start;
+        return report;
+    }
+
+    private static void verifyRange(Range r, HistoryArchive archive, AuditReport report) {
+        // Archived rows first; a row still live after an interrupted archival run replaces its copy
+        TreeMap<Long, Row> rows = new TreeMap<>();
+        if (archive.maxArchivedId(r.username) > r.afterId) {
+            for (LedgerEntry e : archive.read(r.username, r.afterId, r.toId)) {
+                rows.put(e.getId(), new Row(e.getTimestamp(), e.getAction(), null, e.getHash()));
+            }
+        }
+        boolean anchorFound = r.anchor == null || r.anchor.equals(r.prevHash);
+        try (Connection conn = DBHelper.connect()) {
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT id, timestamp, action, prev_hash, hash FROM transactions " +
+                            "WHERE username = ? AND id > ? AND id <= ? ORDER BY id ASC")) {
+                ps.setString(1, r.username);
+                ps.setLong(2, r.afterId);
+                ps.setLong(3, r.toId);
+                ResultSet rs = ps.executeQuery();
+                while (rs.next()) {
+                    rows.put(rs.getLong(1), new Row(rs.getString(2), rs.getString(3), rs.getString(4), rs.getString(5)));
+                }
+            }
+            if (!anchorFound) {
+                for (Row row : rows.values()) anchorFound |= r.anchor.equals(row.hash);
+            }
+            if (!anchorFound) anchorFound = isInLedger(conn, r.username, r.anchor, archive);
+        } catch (SQLException e) {
+            report.problems.add(r.username + ": " + e.getMessage());
+            return;
+        }
+
+        List<String> hashes = new ArrayList<>();
+        String expectedPrev = r.prevHash;
+        for (Map.Entry<Long, Row> en : rows.entrySet()) {
+            long id = en.getKey();
+            Row row = en.getValue();
+            if (row.hash == null) {
+                report.legacyRows.incrementAndGet();
+                continue;
+            }
+            report.rows.incrementAndGet();
+            if (row.prevHash == null) {
+                // Archived: it must link to the row before it
+                if (!row.hash.equals(link(expectedPrev, r.username, row.timestamp, row.action))) {
+                    report.problems.add(r.username + " #" + id + ": archived row does not match its hash or follow the row before it");
+                }
+            } else {
+                if (!expectedPrev.equals(row.prevHash)) {
+                    report.problems.add(r.username + " #" + id + ": chain broken (row missing or reordered before it)");
+                }
+                if (!row.hash.equals(link(row.prevHash, r.username, row.timestamp, row.action))) {
+                    report.problems.add(r.username + " #" + id + ": row content does not match its hash");
+                }
+            }
+            hashes.add(row.hash);
+            expectedPrev = row.hash;
+        }
+        report.ranges.incrementAndGet();
+
+        if (r.root != null) {
+            if (hashes.size() != CHECKPOINT_SIZE) {
+                report.problems.add(r.username + " ids " + (r.afterId + 1) + ".." + r.toId + ": rows missing from sealed range");
+            } else if (!r.root.equals(merkleRoot(hashes)) || !r.lastHash.equals(expectedPrev)) {
+                report.problems.add(r.username + " ids " + (r.afterId + 1) + ".." + r.toId + ": checkpoint mismatch");
+            }
+        }
+        if (!anchorFound) {
+            report.problems.add(r.username + ": anchored row " + r.anchor.substring(0, 12) + "... is gone (rows cut off the end of the ledger)");
+        }
+    }
+
+    // An anchor normally is the tail; after a crash it can be an older row of any range
+    private static boolean isInLedger(Connection conn, String username, String hash, HistoryArchive archive) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT 1 FROM transactions WHERE username = ? AND hash = ? LIMIT 1")) {
+            ps.setString(1, username);
+            ps.setString(2, hash);
+            if (ps.executeQuery().next()) return true;
+        }
+        for (LedgerEntry e : archive.readAll(username)) if (hash.equals(e.getHash())) return true;
+        return false;
+    }
+
+    private static void verifyBalance(String username, double stored, HistoryArchive archive, AuditReport report) {
+        double replayed = 0;
+        for (LedgerEntry e : archive.readAll(username)) replayed += e.signedAmount();
+        try (Connection conn = DBHelper.connect();
+             PreparedStatement ps = conn.prepareStatement(
+                     "SELECT id, timestamp, action FROM transactions WHERE username = ? ORDER BY id ASC")) {
+            ps.setString(1, username);
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                replayed += new LedgerEntry(rs.getLong(1), username, rs.getString(2), rs.getString(3)).signedAmount();
+            }
+        } catch (SQLException e) {
+            report.problems.add(username + ": " + e.getMessage());
+            return;
+        }
+        if (Math.abs(replayed - stored) > 0.005) {
+            report.problems.add(String.format(Locale.US, "%s: balance %.2f does not match ledger %.2f", username, stored, replayed));
+        }
+    }
+
+    /* ========= Migration ========= */
+
+    /**
+     * Re-links one account's live rows with the keyed hash, re-seals its
+     * checkpoints and re-anchors its tail. Every row must still match the
+     * hash it was written with (unkeyed or keyed) and follow the row before
+     * it, so a tampered row is reported instead of being given a valid hash.
+     * Returns the rows re-linked, or -1 if the account was left as it was.
+     */
+    static int rechain(Connection conn, String username, HistoryArchive archive, List<String> problems) throws SQLException {
+        String key = username.toLowerCase(Locale.ROOT);
+        // The live chain goes on from the newest archived row that kept its hash
+        String prev = GENESIS;
+        for (LedgerEntry e : archive.readAll(key)) if (e.getHash() != null) prev = e.getHash();
+
+        int relinked = 0;
+        conn.setAutoCommit(false);
+        try {
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT id, timestamp, action, prev_hash, hash FROM transactions " +
+                            "WHERE username = ? AND hash IS NOT NULL ORDER BY id ASC");
+                 PreparedStatement upd = conn.prepareStatement(
+                         "UPDATE transactions SET prev_hash = ?, hash = ? WHERE id = ?")) {
+                ps.setString(1, key);
+                ResultSet rs = ps.executeQuery();
+                String oldPrev = null;
+                while (rs.next()) {
+                    long id = rs.getLong(1);
+                    String timestamp = rs.getString(2);
+                    String action = rs.getString(3);
+                    String rowPrev = rs.getString(4);
+                    String rowHash = rs.getString(5);
+                    boolean intact = rowHash.equals(legacyLink(rowPrev, key, timestamp, action))
+                            || rowHash.equals(link(rowPrev, key, timestamp, action));
+                    if (!intact || (oldPrev != null && !oldPrev.equals(rowPrev))) {
+                        problems.add(key + " #" + id + ": does not match its hash or the row before it; account left as it was");
+                        conn.rollback();
+                        return -1;
+                    }
+                    oldPrev = rowHash;
+                    String hash = link(prev, key, timestamp, action);
+                    upd.setString(1, prev);
+                    upd.setString(2, hash);
+                    upd.setLong(3, id);
+                    upd.addBatch();
+                    prev = hash;
+                    relinked++;
+                }
+                upd.executeBatch();
+            }
+            try (PreparedStatement del = conn.prepareStatement("DELETE FROM ledger_checkpoints WHERE username = ?")) {
+                del.setString(1, key);
+                del.executeUpdate();
+            }
+            checkpoint(conn, key);
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+        if (relinked > 0) LedgerAnchors.of(DBHelper.url()).record(key, prev);
+        return relinked;
+    }
+
+    /* ========= Helpers ========= */
+
+    static String sha256(String s) {
+        MessageDigest md = SHA256.get();
+        md.reset();
+        return hex(md.digest(s.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    static String hex(byte[] b) {
+        char[] out = new char[b.length * 2];
+        for (int i = 0; i < b.length; i++) {
+            out[i * 2] = HEX[(b[i] >> 4) & 0xF];
+            out[i * 2 + 1] = HEX[b[i] & 0xF];
+        }
+        return new String(out);
+    }
+
+    static byte[] unhex(String s) {
+        byte[] out = new byte[s.length() / 2];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = (byte) Integer.parseInt(s.substring(i * 2, i * 2 + 2), 16);
+        }
+        return out;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "verify";
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        DBHelper.initializeDatabase();
+
+        if (mode.equals("checkpoint")) {
+            int sealed = 0;
+            try (Connection conn = DBHelper.connect(); Statement st = conn.createStatement()) {
+                ResultSet rs = st.executeQuery("SELECT username FROM users");
+                List<String> users = new ArrayList<>();
+                while (rs.next()) users.add(rs.getString(1));
+                for (String u : users) sealed += checkpoint(conn, u);
+            }
+            System.out.println("sealed " + sealed + " checkpoint(s)");
+        } else if (mode.equals("rechain")) {
+            int rows = 0;
+            List<String> problems = new ArrayList<>();
+            HistoryArchive archive = new HistoryArchive();
+            try (Connection conn = DBHelper.connect(); Statement st = conn.createStatement()) {
+                ResultSet rs = st.executeQuery("SELECT username FROM users");
+                List<String> users = new ArrayList<>();
+                while (rs.next()) users.add(rs.getString(1));
+                for (String u : users) rows += Math.max(0, rechain(conn, u, archive, problems));
+            }
+            System.out.println("re-linked " + rows + " row(s), " + problems.size() + " account(s) left as they were");
+            for (String p : problems) System.out.println("  " + p);
+            if (!problems.isEmpty()) System.exit(1);
+        } else {
+            AuditReport r = verifyAll(threads);
+            System.out.println(r);
+            if (!r.isClean()) System.exit(1);
+        }
+    }
+}
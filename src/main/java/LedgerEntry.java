@@ -0,0 +1,125 @@
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+/**
+ * One row of the {@code transactions} table, with the free-text action
+ * parsed into a type, a channel (ATM panel or chatbot) and an amount.
+ */
+public class LedgerEntry {
+
+    public static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    public enum Type { DEPOSIT, WITHDRAW, BALANCE, TRANSFER_IN, TRANSFER_OUT, OTHER, INTEREST, FEE }
+
+    private final long id;
+    private final String username;
+    private final String timestamp;
+    private final String action;
+    private final Type type;
+    private final boolean chatbot;
+    private final double amount;
+    private final String hash;     // null for unchained rows, or when not loaded
+
+    public LedgerEntry(long id, String username, String timestamp, String action) {
+        this(id, username, timestamp, action, null);
+    }
+
+    public LedgerEntry(long id, String username, String timestamp, String action, String hash) {
+        this.id = id;
+        this.hash = hash;
+        this.username = username;
+        this.timestamp = timestamp;
+        this.action = action;
+
+        String a = action == null ? "" : action.toLowerCase(Locale.ROOT);
+        this.chatbot = a.startsWith("chatbot");
+        // "Transfer to bob: $5", "Transfer from alice: $5", "Transfer refund from bob: $5"
+        if (a.startsWith("transfer to ")) type = Type.TRANSFER_OUT;
+        else if (a.startsWith("transfer ")) type = Type.TRANSFER_IN;
+        // "Interest 2026-10-19: $1.20", "Fee 2026-10-19: $2.00" (EndOfDayJob)
+        else if (a.startsWith("interest ")) type = Type.INTEREST;
+        else if (a.startsWith("fee ")) type = Type.FEE;
+        else if (a.contains("deposit")) type = Type.DEPOSIT;
+        else if (a.contains("withdr")) type = Type.WITHDRAW;
+        else if (a.contains("balance")) type = Type.BALANCE;
+        else type = Type.OTHER;
+        this.amount = parseAmount(action);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getTimestamp() {
+        return timestamp;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    /** The row's chain hash (see LedgerChain), if the store loaded it. */
+    public String getHash() {
+        return hash;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public boolean isChatbot() {
+        return chatbot;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    /** Effect on the balance: +amount for deposits, -amount for withdrawals, 0 otherwise. */
+    public double signedAmount() {
+        switch (type) {
+            case DEPOSIT:
+            case TRANSFER_IN:
+            case INTEREST:
+                return amount;
+            case WITHDRAW:
+            case TRANSFER_OUT:
+            case FEE:
+                return -amount;
+            default:
+                return 0;
+        }
+    }
+
+    /** Parsed timestamp, or null if the stored text is not in the ledger format. */
+    public LocalDateTime getTime() {
+        try {
+            return LocalDateTime.parse(timestamp, TIMESTAMP_FORMAT);
+        } catch (DateTimeParseException | NullPointerException e) {
+            return null;
+        }
+    }
+
+    /** Same text the history panel has always shown. */
+    public String format() {
+        return "[" + timestamp + "] " + action;
+    }
+
+    // Actions are written as "<verb>: $<amount>" (see AtmService.saveTransaction)
+    static double parseAmount(String action) {
+        if (action == null) return 0;
+        int i = action.lastIndexOf('$');
+        if (i < 0) return 0;
+        try {
+            return Double.parseDouble(action.substring(i + 1).replace(",", "").trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
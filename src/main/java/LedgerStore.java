@@ -0,0 +1,32 @@
+import java.util.List;
+
+/**
+ * Where transaction rows live. Rows are append-only and each account's
+ * rows get ids that grow with every append, so {@link #afterId} returns
+ * them in posting order.
+ * Hash chaining is done by the caller (see {@link LedgerChain}); the store
+ * only keeps the hashes.
+ */
+public interface LedgerStore {
+
+    /**
+     * Appends one row and returns its id, or -1 if it failed. A chained row
+     * (hash not null) is refused with -1 when prevHash is no longer the
+     * account's newest hash: another writer got in first, and the caller
+     * must chain onto the new tail instead of forking the chain.
+     */
+    long append(String username, String timestamp, String action, String prevHash, String hash);
+
+    /** Hash of the account's newest row, or null if it has none. */
+    String lastHash(String username);
+
+    /** Rows with timestamp &gt;= since, oldest first, with their hashes. */
+    List<LedgerEntry> since(String username, String since);
+
+    /** Rows with id &gt; afterId, oldest first (afterId 0 = all rows), with their hashes. */
+    List<LedgerEntry> afterId(String username, long afterId);
+
+    /** Seals full blocks of the account's rows; a no-op where there is nothing to seal. */
+    default void checkpoint(String username) {
+    }
+}
@@ -0,0 +1,575 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Stream;
+
+/**
+ * Drives the whole engine ({@link AtmService} and {@link ChatbotEngine},
+ * no UI) with many concurrent clients and reports throughput, latency
+ * percentiles and error counts per operation.
+ *
+ * It first seeds a scratch store (in a temp directory, never the
+ * configured database) with accounts and a chained history each. Every
+ * client then owns one account and sends requests at its share of the
+ * arrival rate, with exponential gaps between them. Latency counts from
+ * when a request was due, not from when the client got round to it, so a
+ * slow system can't hide its queueing by sending less. Rate 0 runs every
+ * client back to back instead.
+ *
+ * "replay" runs an event log recorded with -Dvaultx.events=on instead:
+ * every user in it gets a client that repeats that user's logins,
+ * postings, transfers and chatbot requests at the recorded pace.
+ * Logouts, expiries and errors in the log are skipped. A synthetic run
+ * ends by checking every stored balance against its ledger.
+ * <pre>
+ *   java LoadGenerator [-users 2000] [-history 20] [-clients 200] [-rate 500] [-seconds 30]
+ *                      [-mix login=5,balance=20,deposit=20,withdraw=20,history=10,chatbot=20,transfer=5]
+ *                      [-store memory|file|sqlite|sharded] [-seed 1]
+ *   java LoadGenerator replay &lt;events dir or file&gt; [-speed 1] [-store ...]
+ * </pre>
+ * Clients run on virtual threads where the JVM has them (Java 21+), on
+ * one platform thread each otherwise.
+ */
+public class LoadGenerator {
+
+    private static final String PASSWORD = "LoadTest1!";
+
+    enum Op { LOGIN, BALANCE, DEPOSIT, WITHDRAW, HISTORY, CHATBOT, TRANSFER }
+
+    private static final String[] CHAT = {
+            "balance", "show balance", "deposit 1000", "withdraw 500", "history", "limits", "notes 2500",
+            "deposit 2000 and withdraw 1000 then show balance", "balnce", "withdraww 500", "help", "what's the weather"
+    };
+
+    /** One request for a client: what, when (nanos from the start) and its argument. */
+    static final class Request {
+        final Op op;
+        final long dueNanos;
+        final double amount;
+        final String text;
+
+        Request(Op op, long dueNanos, double amount, String text) {
+            this.op = op;
+            this.dueNanos = dueNanos;
+            this.amount = amount;
+            this.text = text;
+        }
+    }
+
+    private final AtmService service;
+    private final ChatbotEngine chatbot;
+    private final Latency[] latency = new Latency[Op.values().length];
+    private final AtomicLongArray ok = new AtomicLongArray(Op.values().length);
+    private final AtomicLongArray rejected = new AtomicLongArray(Op.values().length);
+    private final AtomicLongArray errors = new AtomicLongArray(Op.values().length);
+
+    LoadGenerator(AtmService service) {
+        this.service = service;
+        this.chatbot = new ChatbotEngine(service);
+        for (int i = 0; i < latency.length; i++) latency[i] = new Latency();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opt = new LinkedHashMap<>();
+        List<String> rest = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("-") && i + 1 < args.length) opt.put(args[i].substring(1), args[++i]);
+            else rest.add(args[i]);
+        }
+        boolean replay = !rest.isEmpty() && rest.get(0).equals("replay");
+        if (replay && rest.size() < 2) {
+            System.out.println("usage: java LoadGenerator replay <events dir or file> [-speed 1] [-store memory]");
+            return;
+        }
+
+        // Scratch state only: cassettes, outbox and event log of the run go to the temp directory
+        Path dir = Files.createTempDirectory("vaultx-load");
+        System.setProperty("vaultx.events", System.getProperty("vaultx.events", "off"));
+        System.setProperty("vaultx.cassettes", "10000:10000000,5000:10000000,1000:10000000,500:10000000");
+        System.setProperty("vaultx.cassettes.file", dir.resolve("cassettes").toString());
+        System.setProperty("vaultx.outbox.file", dir.resolve("outbox").toString());
+
+        Store store = StoreBench.create(opt.getOrDefault("store", "memory"), dir, "load");
+        AtmService service = new AtmService(store);
+        service.init();
+        LoadGenerator gen = new LoadGenerator(service);
+        try {
+            if (replay) gen.replay(Paths.get(rest.get(1)), Double.parseDouble(opt.getOrDefault("speed", "1")));
+            else gen.synthetic(opt);
+        } finally {
+            service.close();
+            deleteAll(dir);
+        }
+    }
+
+    /* ========= Synthetic load ========= */
+
+    private void synthetic(Map<String, String> opt) throws InterruptedException {
+        int users = Integer.parseInt(opt.getOrDefault("users", "2000"));
+        int history = Integer.parseInt(opt.getOrDefault("history", "20"));
+        int clients = Math.min(users, Integer.parseInt(opt.getOrDefault("clients", "200")));
+        double rate = Double.parseDouble(opt.getOrDefault("rate", "500"));
+        long seconds = Long.parseLong(opt.getOrDefault("seconds", "30"));
+        double[] mix = parseMix(opt.getOrDefault("mix", "login=5,balance=20,deposit=20,withdraw=20,history=10,chatbot=20,transfer=5"));
+        Random rnd = new Random(Long.parseLong(opt.getOrDefault("seed", "1")));
+
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < users; i++) names.add(String.format(Locale.ROOT, "load%06d", i));
+        long t = System.nanoTime();
+        seed(names, history, rnd);
+        System.out.printf(Locale.US, "seeded %d account(s) with %d row(s) each in %.1f s%n",
+                users, history, (System.nanoTime() - t) / 1e9);
+
+        long endNanos = TimeUnit.SECONDS.toNanos(seconds);
+        double perClient = rate / clients;
+        List<Iterator<Request>> plans = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            Random own = new Random(rnd.nextLong());
+            plans.add(new Iterator<Request>() {
+                private long due;
+
+                @Override
+                public boolean hasNext() {
+                    return rate <= 0 || due < endNanos;
+                }
+
+                @Override
+                public Request next() {
+                    Op op = pick(mix, own);
+                    double amount = 500 * (1 + own.nextInt(20));
+                    String text = op == Op.CHATBOT ? CHAT[own.nextInt(CHAT.length)]
+                            : op == Op.TRANSFER ? names.get(own.nextInt(users)) : null;
+                    Request r = new Request(op, rate <= 0 ? 0 : due, amount, text);
+                    if (rate > 0) due += (long) (-Math.log(1 - own.nextDouble()) / perClient * 1e9);
+                    return r;
+                }
+            });
+        }
+        System.out.println(clients + " client(s), " + (rate > 0 ? String.format(Locale.US, "%.0f request(s)/s", rate)
+                : "back to back") + " for " + seconds + " s on " + threadKind());
+        run(names.subList(0, clients), plans, rate <= 0 ? endNanos : Long.MAX_VALUE);
+        checkBalances(names);
+    }
+
+    // Every stored balance must still equal its ledger; a posting that wrote a
+    // stale session balance over a transfer in would show up here
+    private void checkBalances(List<String> names) {
+        Store store = service.getStore();
+        int off = 0;
+        for (String name : names) {
+            User u = store.loadUser(name);
+            if (u == null) continue;
+            double replayed = 0;
+            for (LedgerEntry e : store.afterId(name, 0)) replayed += e.signedAmount();
+            if (Math.abs(replayed - u.getBalance()) > 0.005) {
+                if (off++ < 10) {
+                    System.out.printf(Locale.US, "  %s: balance %.2f, ledger %.2f%n", name, u.getBalance(), replayed);
+                }
+            }
+        }
+        System.out.println(off == 0 ? "all " + names.size() + " balance(s) match their ledger"
+                : off + " of " + names.size() + " balance(s) don't match their ledger");
+    }
+
+    private static double[] parseMix(String spec) {
+        double[] w = new double[Op.values().length];
+        for (String part : spec.split(",")) {
+            String[] kv = part.trim().split("=");
+            w[Op.valueOf(kv[0].trim().toUpperCase(Locale.ROOT)).ordinal()] = Double.parseDouble(kv[1].trim());
+        }
+        return w;
+    }
+
+    private static Op pick(double[] mix, Random rnd) {
+        double total = 0;
+        for (double w : mix) total += w;
+        double r = rnd.nextDouble() * total;
+        for (int i = 0; i < mix.length; i++) {
+            r -= mix[i];
+            if (r < 0) return Op.values()[i];
+        }
+        return Op.BALANCE;
+    }
+
+    // Accounts with a chained history of deposits, written one batch per account
+    private void seed(List<String> names, int history, Random rnd) {
+        Store store = service.getStore();
+        for (String name : names) {
+            if (store.loadUser(name) != null) continue;
+            service.signup(name, PASSWORD, PASSWORD);
+            User u = store.loadUser(name);
+            String timestamp = LedgerEntry.TIMESTAMP_FORMAT.format(java.time.LocalDateTime.now().minusDays(1 + rnd.nextInt(30)));
+            List<String> actions = new ArrayList<>();
+            List<String> hashes = new ArrayList<>();
+            String prev = LedgerChain.GENESIS;
+            String link = prev;
+            double balance = 0;
+            for (int i = 0; i < history; i++) {
+                double amount = 1000 * (1 + rnd.nextInt(20));
+                if (balance + amount > User.MAX_BALANCE) break;
+                balance += amount;
+                String action = "Deposited: $" + AtmService.fmt(amount);
+                link = LedgerChain.link(link, name, timestamp, action);
+                actions.add(action);
+                hashes.add(link);
+            }
+            User seeded = new User(name, u.getSalt(), u.getPasswordHash(), balance, u.getTier());
+            if (!actions.isEmpty()) store.postBatch(seeded, timestamp, actions, prev, hashes);
+        }
+    }
+
+    /* ========= Replay ========= */
+
+    private void replay(Path source, double speed) throws IOException, InterruptedException {
+        List<String[]> events = new ArrayList<>();   // {time, type, user, detail, amount}
+        List<Path> files = new ArrayList<>();
+        if (Files.isDirectory(source)) {
+            try (Stream<Path> s = Files.list(source)) {
+                s.filter(p -> p.getFileName().toString().endsWith(".log")).forEach(files::add);
+            }
+        } else {
+            files.add(source);
+        }
+        for (Path f : files) {
+            for (String line : Files.readAllLines(f, StandardCharsets.UTF_8)) {
+                String time = field(line, "time");
+                String user = field(line, "user");
+                if (time == null || user == null) continue;
+                events.add(new String[]{time, field(line, "type"), user.toLowerCase(Locale.ROOT),
+                        field(line, "detail"), field(line, "amount")});
+            }
+        }
+        events.sort(Comparator.comparing((String[] e) -> e[0]));
+        if (events.isEmpty()) {
+            System.out.println("no user events in " + source);
+            return;
+        }
+
+        long first = Instant.parse(events.get(0)[0]).toEpochMilli();
+        Map<String, List<Request>> byUser = new LinkedHashMap<>();
+        int skipped = 0;
+        for (String[] e : events) {
+            long due = speed <= 0 ? 0 : (long) ((Instant.parse(e[0]).toEpochMilli() - first) * 1_000_000L / speed);
+            Request r = toRequest(e, due);
+            if (r == null) skipped++;
+            else byUser.computeIfAbsent(e[2], k -> new ArrayList<>()).add(r);
+        }
+        List<String> names = new ArrayList<>(byUser.keySet());
+        List<String> accounts = new ArrayList<>(names);
+        for (List<Request> rs : byUser.values()) {
+            for (Request r : rs) if (r.op == Op.TRANSFER) accounts.add(r.text.toLowerCase(Locale.ROOT));
+        }
+        seed(accounts, 20, new Random(1));
+        List<Iterator<Request>> plans = new ArrayList<>();
+        for (String n : names) plans.add(byUser.get(n).iterator());
+        System.out.println("replaying " + (events.size() - skipped) + " event(s) of " + names.size() + " user(s) ("
+                + skipped + " skipped) at " + (speed <= 0 ? "full speed" : speed + "x") + " on " + threadKind());
+        run(names, plans, Long.MAX_VALUE);
+    }
+
+    // The request an event stands for, or null for events that aren't requests
+    private static Request toRequest(String[] e, long due) {
+        String type = e[1];
+        String detail = e[3] == null ? "" : e[3];
+        String d = detail.toLowerCase(Locale.ROOT);
+        double amount = LedgerEntry.parseAmount(detail);
+        switch (type == null ? "" : type) {
+            case "LOGIN":
+            case "LOGIN_FAILED":
+                return new Request(Op.LOGIN, due, 0, null);
+            case "TRANSFER":
+                return new Request(Op.TRANSFER, due, e[4] == null ? 0 : Double.parseDouble(e[4]), detail);
+            case "POSTING":
+                // Chatbot postings come back as the chat message that made them
+                if (d.startsWith("chatbot deposit")) return new Request(Op.CHATBOT, due, 0, "deposit " + AtmService.fmt(amount));
+                if (d.startsWith("chatbot withdr")) return new Request(Op.CHATBOT, due, 0, "withdraw " + AtmService.fmt(amount));
+                if (d.contains("deposit")) return new Request(Op.DEPOSIT, due, amount, null);
+                if (d.contains("withdr")) return new Request(Op.WITHDRAW, due, amount, null);
+                if (d.startsWith("checked balance")) return new Request(Op.BALANCE, due, 0, null);
+                return null;
+            case "INTENT":
+                // Postings were replayed above; the rest of the chatbot's intents are replayed here
+                if (d.equals("history") || d.equals("limits") || d.equals("notes") || d.equals("help")) {
+                    return new Request(d.equals("history") ? Op.HISTORY : Op.CHATBOT, due, 0, d);
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    // Value of one top-level field of an EventLog line, unescaped; null if absent
+    static String field(String json, String name) {
+        int i = json.indexOf("\"" + name + "\":");
+        if (i < 0) return null;
+        i += name.length() + 3;
+        if (i >= json.length()) return null;
+        if (json.charAt(i) != '"') {
+            int end = i;
+            while (end < json.length() && json.charAt(end) != ',' && json.charAt(end) != '}') end++;
+            return json.substring(i, end);
+        }
+        StringBuilder b = new StringBuilder();
+        for (i++; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (c == '"') return b.toString();
+            if (c == '\\' && i + 1 < json.length()) {
+                char n = json.charAt(++i);
+                switch (n) {
+                    case 'n': b.append('\n'); break;
+                    case 'r': b.append('\r'); break;
+                    case 't': b.append('\t'); break;
+                    case 'u':
+                        b.append((char) Integer.parseInt(json.substring(i + 1, i + 5), 16));
+                        i += 4;
+                        break;
+                    default: b.append(n);
+                }
+            } else {
+                b.append(c);
+            }
+        }
+        return null;
+    }
+
+    /* ========= Running ========= */
+
+    // One client per account; stops at the end of its plan or at stopNanos
+    private void run(List<String> names, List<Iterator<Request>> plans, long stopNanos) throws InterruptedException {
+        ExecutorService pool = clientExecutor();
+        long start = System.nanoTime();
+        AtomicLong done = new AtomicLong();
+        for (int c = 0; c < names.size(); c++) {
+            Client client = new Client(names.get(c));
+            Iterator<Request> plan = plans.get(c);
+            pool.execute(() -> {
+                while (plan.hasNext()) {
+                    Request r = plan.next();
+                    long due = start + r.dueNanos;
+                    long wait = due - System.nanoTime();
+                    if (wait > 0) {
+                        try {
+                            TimeUnit.NANOSECONDS.sleep(wait);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    if (System.nanoTime() - start > stopNanos) return;
+                    // Back to back runs have no schedule: time each request from its own start
+                    long from = r.dueNanos == 0 ? System.nanoTime() : due;
+                    client.execute(r);
+                    latency[r.op.ordinal()].record(System.nanoTime() - from);
+                    done.incrementAndGet();
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        report(done.get(), System.nanoTime() - start);
+    }
+
+    private static ExecutorService clientExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    private static String threadKind() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return "virtual threads";
+        } catch (NoSuchMethodException e) {
+            return "platform threads (no virtual threads in Java " + Runtime.version().feature() + ")";
+        }
+    }
+
+    /** One terminal: a logged-in account and a chat session for it. */
+    private final class Client implements ChatbotEngine.Session {
+        private final String name;
+        private User user;
+
+        Client(String name) {
+            this.name = name;
+        }
+
+        void execute(Request r) {
+            int op = r.op.ordinal();
+            try {
+                if (user == null && r.op != Op.LOGIN) user = service.login(name, PASSWORD).getUser();
+                AtmService.Result res;
+                switch (r.op) {
+                    case LOGIN:
+                        res = service.login(name, PASSWORD);
+                        if (res.isOk()) user = res.getUser();
+                        break;
+                    case BALANCE:
+                        res = service.checkBalance(user);
+                        break;
+                    case DEPOSIT:
+                        res = service.deposit(user, r.amount, false);
+                        break;
+                    case WITHDRAW:
+                        res = service.withdraw(user, r.amount, false);
+                        break;
+                    case TRANSFER:
+                        res = service.transfer(user, r.text, r.amount);
+                        break;
+                    case HISTORY:
+                        service.history(user);
+                        res = null;
+                        break;
+                    default:
+                        chatbot.reply(r.text, this);
+                        res = null;
+                }
+                if (res == null || res.isOk()) ok.incrementAndGet(op);
+                else rejected.incrementAndGet(op);
+            } catch (RuntimeException e) {
+                errors.incrementAndGet(op);
+                EventLog.error("LoadGenerator." + r.op.name().toLowerCase(Locale.ROOT), e);
+            }
+        }
+
+        @Override
+        public User currentUser() {
+            return user;
+        }
+
+        @Override
+        public boolean requireLogin() {
+            return user != null;
+        }
+
+        @Override
+        public String showHistory() {
+            return service.history(user).size() + " transaction(s)";
+        }
+
+        @Override
+        public void clearChat() {
+        }
+
+        @Override
+        public void logout() {
+            // Stays logged in: the next request would only log in again
+        }
+
+        @Override
+        public void changed() {
+        }
+    }
+
+    /* ========= Report ========= */
+
+    private void report(long requests, long nanos) {
+        System.out.printf(Locale.US, "%n%d request(s) in %.1f s: %.0f/s%n", requests, nanos / 1e9, requests * 1e9 / nanos);
+        System.out.println("op            count        ok  rejected  errors    p50 ms    p99 ms  p99.9 ms    max ms");
+        Latency all = new Latency();
+        long okAll = 0;
+        long rejAll = 0;
+        long errAll = 0;
+        for (Op op : Op.values()) {
+            int i = op.ordinal();
+            Latency l = latency[i];
+            if (l.count() == 0) continue;
+            all.add(l);
+            okAll += ok.get(i);
+            rejAll += rejected.get(i);
+            errAll += errors.get(i);
+            line(op.name().toLowerCase(Locale.ROOT), l, ok.get(i), rejected.get(i), errors.get(i));
+        }
+        line("all", all, okAll, rejAll, errAll);
+    }
+
+    private static void line(String name, Latency l, long ok, long rejected, long errors) {
+        System.out.printf(Locale.US, "%-10s %8d %9d %9d %7d %9.2f %9.2f %9.2f %9.2f%n", name, l.count(), ok, rejected, errors,
+                l.percentile(0.50) / 1e6, l.percentile(0.99) / 1e6, l.percentile(0.999) / 1e6, l.max() / 1e6);
+    }
+
+    /**
+     * Latency histogram with about 3% resolution: exact below 64 us, then
+     * 32 buckets per power of two. Lock-free, so clients record straight
+     * into it.
+     */
+    static final class Latency {
+        private static final int SUB = 32;
+        private final AtomicLongArray buckets = new AtomicLongArray(64 + 40 * SUB);
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long nanos) {
+            long us = Math.max(0, nanos / 1000);
+            buckets.incrementAndGet(index(us));
+            max.accumulateAndGet(nanos, Math::max);
+        }
+
+        private static int index(long us) {
+            if (us < 64) return (int) us;
+            int exp = 63 - Long.numberOfLeadingZeros(us);   // >= 6
+            int sub = (int) (us >>> (exp - 5)) & (SUB - 1);
+            return Math.min(64 + (exp - 6) * SUB + sub, 64 + 40 * SUB - 1);
+        }
+
+        // Lowest value of a bucket, in nanos
+        private static long lowest(int index) {
+            if (index < 64) return index * 1000L;
+            int exp = (index - 64) / SUB + 6;
+            int sub = (index - 64) % SUB;
+            return ((long) (SUB + sub) << (exp - 5)) * 1000L;
+        }
+
+        long count() {
+            long n = 0;
+            for (int i = 0; i < buckets.length(); i++) n += buckets.get(i);
+            return n;
+        }
+
+        long max() {
+            return max.get();
+        }
+
+        long percentile(double p) {
+            long n = count();
+            if (n == 0) return 0;
+            long rank = (long) Math.ceil(p * n);
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) return Math.min(lowest(i), max.get());
+            }
+            return max.get();
+        }
+
+        void add(Latency other) {
+            for (int i = 0; i < buckets.length(); i++) buckets.addAndGet(i, other.buckets.get(i));
+            max.accumulateAndGet(other.max.get(), Math::max);
+        }
+    }
+
+    private static void deleteAll(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            List<Path> all = new ArrayList<>();
+            files.forEach(all::add);
+            Collections.reverse(all);
+            for (Path p : all) Files.deleteIfExists(p);
+        }
+    }
+}
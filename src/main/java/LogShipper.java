@@ -0,0 +1,560 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Ships committed changes to a standby on a background thread.
+ *
+ * Writers only {@link #offer} a record to a bounded queue, which never
+ * blocks. The "vaultx-shipper" thread drains up to {@link #BATCH} records
+ * at a time, deflates them into one frame and hands it to the target:
+ * <ul>
+ *   <li>{@code file:<path>}: frames are appended to the file and forced
+ *       to disk (put it on another disk); {@code java Standby replay}
+ *       turns it into a store</li>
+ *   <li>{@code tcp:<host>:<port>}: frames go to {@code java Standby listen},
+ *       which applies them to its own store and acknowledges each one</li>
+ * </ul>
+ * A frame that fails is retried (reconnecting if needed) until it is
+ * acknowledged, so records arrive in sequence order, possibly twice; the
+ * standby drops repeats by sequence number.
+ *
+ * Frame: int MAGIC, long epoch, long firstSeq, int count, int rawLength,
+ * long crc32(raw), int deflatedLength, deflated bytes, then an
+ * HMAC-SHA256 of everything before it. The epoch is the primary's start
+ * time, so sequence numbers restart with each run.
+ *
+ * The HMAC key is shared by the primary and the standby:
+ * -Dvaultx.standby.keyFile, default standby.key in
+ * {@link LedgerChain#secretsDir()}. The primary creates it on first use;
+ * copy it to the standby, which refuses frames (and promote requests)
+ * that were not made with it.
+ */
+public class LogShipper {
+
+    static final int MAGIC = 0x56585247;   // "VXRG"; "VXRF" frames had no HMAC
+    static final int PROMOTE = -1;         // count of a control frame asking the standby to take over
+    static final int BATCH = 512;
+    private static final int QUEUE_SIZE = 200_000;
+    private static final long LINGER_MILLIS = 20;
+    private static final int HEADER = 40;
+    private static final int MAC_LENGTH = 32;
+    private static final int MAX_FRAME = 64 << 20;   // well above BATCH records of any size
+
+    private static byte[] key;
+
+    /** One change: an account snapshot ('U') or a ledger row ('T'). */
+    static final class Record {
+        char kind;
+        long seq;
+        long enqueuedNanos;
+        String username;
+        // U
+        byte[] salt;
+        byte[] passwordHash;
+        double balance;
+        String tier;
+        // T
+        String timestamp;
+        String action;
+        String prevHash;
+        String hash;
+        long ordinal = -1;   // position in the account's ledger, only for unchained (legacy) rows
+
+        static Record user(User u) {
+            Record r = new Record();
+            r.kind = 'U';
+            r.username = u.getUsername().toLowerCase(Locale.ROOT);
+            r.salt = u.getSalt();
+            r.passwordHash = u.getPasswordHash();
+            r.balance = u.getBalance();
+            r.tier = u.getTier().name();
+            return r;
+        }
+
+        static Record row(String username, String timestamp, String action, String prevHash, String hash) {
+            Record r = new Record();
+            r.kind = 'T';
+            r.username = username.toLowerCase(Locale.ROOT);
+            r.timestamp = timestamp;
+            r.action = action;
+            r.prevHash = prevHash;
+            r.hash = hash;
+            return r;
+        }
+    }
+
+    private final Target target;
+    private final BlockingQueue<Record> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final long epoch = System.currentTimeMillis();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    // Stats; sequence numbers are written by offer() under this lock
+    private long nextSeq = 1;
+    private volatile long ackedSeq;
+    private volatile long lastLagMillis;
+    private volatile long frames;
+    private volatile long rawBytes;
+    private volatile long sentBytes;
+    private volatile long dropped;
+    private volatile long standbySkipped;
+    private volatile String lastError;
+
+    public LogShipper(Target target) {
+        key(true);   // fail at startup, not on the first frame
+        this.target = target;
+        this.thread = new Thread(this::run, "vaultx-shipper");
+        this.thread.setDaemon(true);
+    }
+
+    /** Parses file:path or tcp:host:port. */
+    public static Target targetOf(String spec) {
+        if (spec.startsWith("file:")) return new FileTarget(Paths.get(spec.substring(5)));
+        if (spec.startsWith("tcp:")) {
+            String hp = spec.substring(4);
+            int colon = hp.lastIndexOf(':');
+            return new SocketTarget(hp.substring(0, colon), Integer.parseInt(hp.substring(colon + 1)));
+        }
+        throw new IllegalArgumentException("Standby must be file:<path> or tcp:<host>:<port>, got " + spec);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Queues a committed change. Never blocks: if the standby has fallen
+     * {@value #QUEUE_SIZE} records behind the record is dropped and counted,
+     * and the caller should resync.
+     */
+    public boolean offer(Record r) {
+        synchronized (this) {
+            r.seq = nextSeq;
+            r.enqueuedNanos = System.nanoTime();
+            if (!queue.offer(r)) {
+                dropped++;
+                return false;
+            }
+            nextSeq++;
+        }
+        return true;
+    }
+
+    /** Waits up to timeoutMillis for the queue to drain, then stops the thread. */
+    public void close(long timeoutMillis) {
+        long end = System.currentTimeMillis() + timeoutMillis;
+        while (System.currentTimeMillis() < end && ackedSeq < enqueuedSeq()) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        target.close();
+    }
+
+    public synchronized long enqueuedSeq() {
+        return nextSeq - 1;
+    }
+
+    public long getDropped() {
+        return dropped;
+    }
+
+    /** Rows the standby could not chain onto its copy (it needs a resync). */
+    public long getStandbySkipped() {
+        return standbySkipped;
+    }
+
+    /** One line for logs: how far behind the standby is and what shipping costs. */
+    public String lagReport() {
+        long behind = enqueuedSeq() - ackedSeq;
+        return String.format(Locale.US,
+                "standby %s: %d record(s) behind, last batch lag %d ms, %d frames, %d -> %d bytes (x%.1f)%s%s%s",
+                target, behind, lastLagMillis, frames, rawBytes, sentBytes,
+                sentBytes == 0 ? 0.0 : (double) rawBytes / sentBytes,
+                dropped > 0 ? ", " + dropped + " dropped (resync needed)" : "",
+                standbySkipped > 0 ? ", standby skipped " + standbySkipped + " row(s)" : "",
+                lastError != null ? ", last error: " + lastError : "");
+    }
+
+    /* ========= Shipper thread ========= */
+
+    private void run() {
+        List<Record> batch = new ArrayList<>(BATCH);
+        long backoff = 100;
+        while (running) {
+            try {
+                if (batch.isEmpty()) {
+                    Record first = queue.poll(500, TimeUnit.MILLISECONDS);
+                    if (first == null) continue;
+                    batch.add(first);
+                    // Give a burst a moment to fill the frame
+                    if (queue.size() < BATCH) Thread.sleep(LINGER_MILLIS);
+                    queue.drainTo(batch, BATCH - 1);
+                }
+                byte[] raw = encode(batch);
+                byte[] frame = frame(epoch, batch.get(0).seq, batch.size(), raw);
+                Ack ack = target.send(frame, batch.get(batch.size() - 1).seq);
+                ackedSeq = ack.seq;
+                standbySkipped = ack.skipped;
+                lastLagMillis = (System.nanoTime() - batch.get(0).enqueuedNanos) / 1_000_000;
+                frames++;
+                rawBytes += raw.length;
+                sentBytes += frame.length;
+                lastError = null;
+                batch.clear();
+                backoff = 100;
+            } catch (InterruptedException e) {
+                if (!running) break;
+            } catch (IOException e) {
+                // Keep the batch and try again; the standby ignores records it already has
+                lastError = e.getMessage();
+                target.close();
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    if (!running) break;
+                }
+                backoff = Math.min(backoff * 2, 5_000);
+            }
+        }
+    }
+
+    /* ========= Encoding ========= */
+
+    /**
+     * Loads the shared frame key; only the primary creates it when it is
+     * missing, a standby needs the primary's.
+     */
+    static synchronized byte[] key(boolean create) {
+        if (key == null) {
+            key = LedgerChain.readKey(Paths.get(System.getProperty("vaultx.standby.keyFile",
+                    LedgerChain.secretsDir().resolve("standby.key").toString())), "Standby", create);
+        }
+        return key;
+    }
+
+    private static Mac mac() throws IOException {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key(false), "HmacSHA256"));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Frame key can't be used", e);
+        }
+    }
+
+    static byte[] encode(List<Record> records) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(records.size() * 96);
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (Record r : records) {
+            out.writeByte(r.kind);
+            out.writeUTF(r.username);
+            if (r.kind == 'U') {
+                out.writeShort(r.salt.length);
+                out.write(r.salt);
+                out.writeShort(r.passwordHash.length);
+                out.write(r.passwordHash);
+                out.writeDouble(r.balance);
+                out.writeUTF(r.tier);
+            } else {
+                out.writeUTF(r.timestamp);
+                out.writeUTF(r.action);
+                out.writeUTF(r.prevHash == null ? "" : r.prevHash);
+                out.writeUTF(r.hash == null ? "" : r.hash);
+                out.writeLong(r.ordinal);
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static List<Record> decode(byte[] raw, long firstSeq, int count) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw));
+        List<Record> out = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Record r = new Record();
+            r.kind = (char) in.readByte();
+            r.seq = firstSeq + i;
+            r.username = in.readUTF();
+            if (r.kind == 'U') {
+                r.salt = new byte[in.readShort()];
+                in.readFully(r.salt);
+                r.passwordHash = new byte[in.readShort()];
+                in.readFully(r.passwordHash);
+                r.balance = in.readDouble();
+                r.tier = in.readUTF();
+            } else {
+                r.timestamp = in.readUTF();
+                r.action = in.readUTF();
+                r.prevHash = emptyToNull(in.readUTF());
+                r.hash = emptyToNull(in.readUTF());
+                r.ordinal = in.readLong();
+            }
+            out.add(r);
+        }
+        return out;
+    }
+
+    static byte[] frame(long epoch, long firstSeq, int count, byte[] raw) throws IOException {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream z = new ByteArrayOutputStream(raw.length / 3 + 64);
+        byte[] buf = new byte[8192];
+        while (!deflater.finished()) z.write(buf, 0, deflater.deflate(buf));
+        deflater.end();
+        CRC32 crc = new CRC32();
+        crc.update(raw);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(z.size() + 40);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeLong(epoch);
+        out.writeLong(firstSeq);
+        out.writeInt(count);
+        out.writeInt(raw.length);
+        out.writeLong(crc.getValue());
+        out.writeInt(z.size());
+        z.writeTo(out);
+        out.flush();
+        Mac mac = mac();
+        mac.update(bytes.toByteArray());
+        out.write(mac.doFinal());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /** A frame as read back by the standby. */
+    static final class Frame {
+        long epoch;
+        long firstSeq;
+        int count;
+        byte[] raw;
+    }
+
+    /**
+     * Reads the next frame, or returns null at a clean end of stream. A frame
+     * whose HMAC doesn't match is rejected before anything in it is used.
+     */
+    static Frame readFrame(DataInputStream in) throws IOException {
+        int first = in.read();
+        if (first < 0) return null;
+        byte[] head = new byte[HEADER];
+        head[0] = (byte) first;
+        in.readFully(head, 1, HEADER - 1);
+        ByteBuffer h = ByteBuffer.wrap(head);
+        int magic = h.getInt();
+        if (magic != MAGIC) throw new IOException("Bad frame magic " + Integer.toHexString(magic));
+        Frame f = new Frame();
+        f.epoch = h.getLong();
+        f.firstSeq = h.getLong();
+        f.count = h.getInt();
+        int rawLength = h.getInt();
+        long crc = h.getLong();
+        int zLength = h.getInt();
+        if (rawLength < 0 || rawLength > MAX_FRAME || zLength < 0 || zLength > MAX_FRAME) {
+            throw new IOException("Bad frame lengths at seq " + f.firstSeq);
+        }
+        byte[] z = new byte[zLength];
+        in.readFully(z);
+        byte[] tag = new byte[MAC_LENGTH];
+        in.readFully(tag);
+        Mac mac = mac();
+        mac.update(head);
+        mac.update(z);
+        if (!MessageDigest.isEqual(mac.doFinal(), tag)) {
+            throw new IOException("Frame at seq " + f.firstSeq + " failed authentication (is this the primary's standby key?)");
+        }
+        f.raw = new byte[rawLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(z);
+            int n = 0;
+            while (n < rawLength && !inflater.finished()) n += inflater.inflate(f.raw, n, rawLength - n);
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt frame at seq " + f.firstSeq, e);
+        } finally {
+            inflater.end();
+        }
+        CRC32 check = new CRC32();
+        check.update(f.raw);
+        if (check.getValue() != crc) throw new IOException("Checksum mismatch in frame at seq " + f.firstSeq);
+        return f;
+    }
+
+    /**
+     * Length of the whole frames at the start of a shipping file; whatever
+     * follows is a frame torn by a crash. Only the headers are read.
+     */
+    static long completeLength(Path file) throws IOException {
+        long good = 0;
+        long size = Files.size(file);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (size - good >= HEADER) {
+                byte[] head = new byte[HEADER];
+                in.readFully(head);
+                ByteBuffer h = ByteBuffer.wrap(head);
+                if (h.getInt() != MAGIC) {
+                    // Not a torn write (those keep their magic): refuse rather than cut off someone else's data
+                    throw new IOException(file + " has an unknown frame at byte " + good + "; move it aside");
+                }
+                long frameLength = HEADER + (long) h.getInt(HEADER - 4) + MAC_LENGTH;
+                if (size - good < frameLength) break;
+                in.skipNBytes(frameLength - HEADER);
+                good += frameLength;
+            }
+        }
+        return good;
+    }
+
+    private static String emptyToNull(String s) {
+        return s.isEmpty() ? null : s;
+    }
+
+    /* ========= Targets ========= */
+
+    /** What the standby confirmed: last sequence applied and rows it had to skip. */
+    static final class Ack {
+        final long seq;
+        final long skipped;
+
+        Ack(long seq, long skipped) {
+            this.seq = seq;
+            this.skipped = skipped;
+        }
+    }
+
+    public interface Target {
+        /** Delivers the frame durably and returns the standby's acknowledgement. */
+        Ack send(byte[] frame, long lastSeq) throws IOException;
+
+        void close();
+    }
+
+    /**
+     * Appends frames to a file and forces each one to disk. A frame that
+     * failed part way is cut off before it is retried, and so is a frame torn
+     * by a crash, so the file always reads back as whole frames.
+     */
+    static final class FileTarget implements Target {
+        private final Path file;
+        private FileOutputStream out;
+        private long good = -1;   // bytes of whole frames; -1 until the file was checked
+
+        FileTarget(Path file) {
+            this.file = file;
+        }
+
+        @Override
+        public Ack send(byte[] frame, long lastSeq) throws IOException {
+            if (out == null) {
+                if (file.getParent() != null) Files.createDirectories(file.getParent());
+                if (good < 0) good = Files.exists(file) ? completeLength(file) : 0;
+                out = new FileOutputStream(file.toFile(), true);
+            }
+            FileChannel ch = out.getChannel();
+            if (ch.size() != good) ch.truncate(good);
+            out.write(frame);
+            ch.force(false);
+            good += frame.length;
+            return new Ack(lastSeq, 0);
+        }
+
+        @Override
+        public void close() {
+            if (out == null) return;
+            try {
+                out.close();
+            } catch (IOException ignored) {
+            }
+            out = null;
+        }
+
+        @Override
+        public String toString() {
+            return "file:" + file;
+        }
+    }
+
+    /** Sends frames to a Standby process; each frame is answered with (seq, skipped). */
+    static final class SocketTarget implements Target {
+        private final String host;
+        private final int port;
+        private Socket socket;
+        private DataOutputStream out;
+        private DataInputStream in;
+
+        SocketTarget(String host, int port) {
+            this.host = host;
+            this.port = port;
+        }
+
+        @Override
+        public Ack send(byte[] frame, long lastSeq) throws IOException {
+            if (socket == null) {
+                socket = new Socket();
+                socket.connect(new InetSocketAddress(host, port), 3_000);
+                socket.setSoTimeout(30_000);
+                socket.setTcpNoDelay(true);
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            }
+            out.write(frame);
+            out.flush();
+            return new Ack(in.readLong(), in.readLong());
+        }
+
+        @Override
+        public void close() {
+            if (socket == null) return;
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+            socket = null;
+        }
+
+        @Override
+        public String toString() {
+            return "tcp:" + host + ":" + port;
+        }
+    }
+}
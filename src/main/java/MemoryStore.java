@@ -0,0 +1,140 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps everything on the heap. Nothing survives the JVM; meant for
+ * tests, benchmarks and demos. {@link JournalStore} builds on it.
+ *
+ * Accounts are stored as copies, so a loaded User behaves like one read
+ * from SQLite: changes only stick once it is saved.
+ */
+public class MemoryStore implements Store {
+
+    private final Map<String, User> users = new ConcurrentHashMap<>();
+    private final Map<String, Rows> ledgers = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+
+    // One account's rows, in id order
+    static final class Rows {
+        final List<LedgerEntry> entries = new ArrayList<>();
+        String lastHash;
+    }
+
+    @Override
+    public String name() {
+        return "memory";
+    }
+
+    @Override
+    public void init() {
+    }
+
+    /* ========= Accounts ========= */
+
+    @Override
+    public User loadUser(String username) {
+        User u = users.get(username.toLowerCase(Locale.ROOT));
+        return u == null ? null : new User(username, u.getSalt(), u.getPasswordHash(), u.getBalance(), u.getTier());
+    }
+
+    @Override
+    public boolean saveUser(User u) {
+        String key = u.getUsername().toLowerCase(Locale.ROOT);
+        users.put(key, new User(key, u.getSalt(), u.getPasswordHash(), u.getBalance(), u.getTier()));
+        return true;
+    }
+
+    @Override
+    public List<String> usernames() {
+        List<String> names = new ArrayList<>(users.keySet());
+        Collections.sort(names);
+        return names;
+    }
+
+    /* ========= Ledger ========= */
+
+    @Override
+    public long append(String username, String timestamp, String action, String prevHash, String hash) {
+        Rows rows = ledgers.computeIfAbsent(username.toLowerCase(Locale.ROOT), k -> new Rows());
+        synchronized (rows) {
+            if (hash != null && !isTail(rows.lastHash, prevHash)) return -1;
+            return put(nextId(), username, timestamp, action, hash);
+        }
+    }
+
+    // Whether rows chained to prevHash still fit onto the account's tail
+    boolean fits(String username, String prevHash) {
+        return isTail(lastHash(username), prevHash);
+    }
+
+    private static boolean isTail(String tail, String prevHash) {
+        return (tail == null ? LedgerChain.GENESIS : tail).equals(prevHash == null ? LedgerChain.GENESIS : prevHash);
+    }
+
+    long nextId() {
+        return nextId.getAndIncrement();
+    }
+
+    // Also used by JournalStore when replaying its file
+    long put(long id, String username, String timestamp, String action, String hash) {
+        String key = username.toLowerCase(Locale.ROOT);
+        Rows rows = ledgers.computeIfAbsent(key, k -> new Rows());
+        synchronized (rows) {
+            rows.entries.add(new LedgerEntry(id, key, timestamp, action, hash));
+            if (hash != null) rows.lastHash = hash;
+        }
+        nextId.accumulateAndGet(id + 1, Math::max);
+        return id;
+    }
+
+    @Override
+    public String lastHash(String username) {
+        Rows rows = ledgers.get(username.toLowerCase(Locale.ROOT));
+        if (rows == null) return null;
+        synchronized (rows) {
+            return rows.lastHash;
+        }
+    }
+
+    @Override
+    public List<LedgerEntry> since(String username, String since) {
+        List<LedgerEntry> out = new ArrayList<>();
+        Rows rows = ledgers.get(username.toLowerCase(Locale.ROOT));
+        if (rows == null) return out;
+        synchronized (rows) {
+            for (LedgerEntry e : rows.entries) {
+                if (e.getTimestamp().compareTo(since) >= 0) out.add(e);
+            }
+        }
+        return out;
+    }
+
+    @Override
+    public List<LedgerEntry> afterId(String username, long afterId) {
+        List<LedgerEntry> out = new ArrayList<>();
+        Rows rows = ledgers.get(username.toLowerCase(Locale.ROOT));
+        if (rows == null) return out;
+        synchronized (rows) {
+            List<LedgerEntry> list = rows.entries;
+            // Ids only grow, so binary search for the first one > afterId
+            int lo = 0, hi = list.size();
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (list.get(mid).getId() <= afterId) lo = mid + 1;
+                else hi = mid;
+            }
+            out.addAll(list.subList(lo, list.size()));
+        }
+        return out;
+    }
+
+    @Override
+    public String toString() {
+        return "MemoryStore[" + users.size() + " users]";
+    }
+}
@@ -0,0 +1,201 @@
+import javafx.animation.AnimationTimer;
+import javafx.geometry.Pos;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.Region;
+import javafx.scene.layout.StackPane;
+import javafx.scene.layout.VBox;
+
+/**
+ * Non-modal notifications for one scene: toasts in the bottom-right corner
+ * and an inline confirmation bar.
+ *
+ * All nodes are created once. Toasts come from a fixed pool of labels that
+ * are shown, re-texted and hidden again: a hidden one is taken first, and
+ * only when all are visible is the one shown longest reused. The newest
+ * toast is moved to the bottom of the stack. One AnimationTimer hides them on expiry and runs only while a
+ * toast is visible. Back-to-back operations therefore never open a window
+ * or add nodes to the scene graph.
+ *
+ * Usage: put {@link #getLayer()} on top of the scene root in a StackPane and
+ * {@link #getConfirmBar()} wherever the inline question should appear.
+ */
+public class Notifier {
+
+    private static final int POOL_SIZE = 4;
+    private static final long INFO_NANOS = 2_500_000_000L;
+    private static final long WARN_NANOS = 4_000_000_000L;
+
+    private final VBox layer = new VBox(8);
+    private final Label[] toasts = new Label[POOL_SIZE];
+    private final long[] hideAt = new long[POOL_SIZE];   // System.nanoTime(), 0 = hidden
+    private final long[] shownAt = new long[POOL_SIZE];
+    private AnimationTimer ticker;   // created on first use, on the FX thread
+    private boolean ticking;
+
+    // Inline confirmation
+    private final Label confirmText = new Label();
+    private final Button firstButton = new Button();
+    private final Button secondButton = new Button();
+    private final Button cancelButton = new Button("Cancel");
+    private final VBox confirmBar;
+    private Runnable onFirst;
+    private Runnable onSecond;
+
+    public Notifier() {
+        layer.setAlignment(Pos.BOTTOM_RIGHT);
+        layer.setMaxWidth(340);
+        layer.setMaxHeight(Region.USE_PREF_SIZE);
+        layer.setMouseTransparent(true);
+        layer.setPickOnBounds(false);
+        StackPane.setAlignment(layer, Pos.BOTTOM_RIGHT);
+        StackPane.setMargin(layer, new javafx.geometry.Insets(16));
+        for (int i = 0; i < POOL_SIZE; i++) {
+            Label t = new Label();
+            t.setWrapText(true);
+            t.setMaxWidth(340);
+            t.getStyleClass().add("toast");
+            hide(t);
+            toasts[i] = t;
+            layer.getChildren().add(t);
+        }
+
+        confirmText.setWrapText(true);
+        for (Button b : new Button[]{firstButton, secondButton, cancelButton}) {
+            b.getStyleClass().add("btn-atm");
+            b.setMaxWidth(Double.MAX_VALUE);
+            HBox.setHgrow(b, Priority.ALWAYS);
+        }
+        firstButton.setOnAction(e -> answer(onFirst));
+        secondButton.setOnAction(e -> answer(onSecond));
+        cancelButton.setOnAction(e -> answer(null));
+        confirmBar = new VBox(8, confirmText, new HBox(8, firstButton, secondButton, cancelButton));
+        confirmBar.getStyleClass().add("confirm-bar");
+        hide(confirmBar);
+    }
+
+    /** Toast overlay; add it above the scene root in a StackPane. */
+    public VBox getLayer() {
+        return layer;
+    }
+
+    /** Inline confirmation bar; add it to the layout where the question belongs. */
+    public VBox getConfirmBar() {
+        return confirmBar;
+    }
+
+    public void info(String title, String msg) {
+        show(title, msg, false);
+    }
+
+    public void warn(String title, String msg) {
+        show(title, msg, true);
+    }
+
+    /**
+     * Shows the inline question with two choices and Cancel. Asking again
+     * while the bar is open just replaces the question.
+     */
+    public void confirm(String message, String firstLabel, Runnable first, String secondLabel, Runnable second) {
+        confirmText.setText(message);
+        firstButton.setText(firstLabel);
+        secondButton.setText(secondLabel);
+        onFirst = first;
+        onSecond = second;
+        confirmBar.setVisible(true);
+        confirmBar.setManaged(true);
+        firstButton.requestFocus();
+    }
+
+    public boolean isConfirming() {
+        return confirmBar.isVisible();
+    }
+
+    /** Closes the confirmation bar without running a choice. */
+    public void cancelConfirm() {
+        answer(null);
+    }
+
+    /** Hides everything, e.g. on logout. */
+    public void clear() {
+        for (int i = 0; i < POOL_SIZE; i++) {
+            hideAt[i] = 0;
+            hide(toasts[i]);
+        }
+        cancelConfirm();
+    }
+
+    /* ========= Internals ========= */
+
+    private void show(String title, String msg, boolean warn) {
+        int i = freeSlot();
+        Label t = toasts[i];
+        t.setText(title + ": " + msg);
+        if (warn) {
+            t.getStyleClass().remove("toast-info");
+            if (!t.getStyleClass().contains("toast-warn")) t.getStyleClass().add("toast-warn");
+        } else {
+            t.getStyleClass().remove("toast-warn");
+            if (!t.getStyleClass().contains("toast-info")) t.getStyleClass().add("toast-info");
+        }
+        t.setVisible(true);
+        t.setManaged(true);
+        t.toFront();   // last child: the bottom of the stack
+        long now = System.nanoTime();
+        shownAt[i] = now;
+        hideAt[i] = now + (warn ? WARN_NANOS : INFO_NANOS);
+        startTicker();
+    }
+
+    // A hidden toast if there is one, else the one shown longest
+    private int freeSlot() {
+        int oldest = 0;
+        for (int i = 0; i < POOL_SIZE; i++) {
+            if (hideAt[i] == 0) return i;
+            if (shownAt[i] - shownAt[oldest] < 0) oldest = i;
+        }
+        return oldest;
+    }
+
+    private void startTicker() {
+        if (ticking) return;
+        if (ticker == null) {
+            ticker = new AnimationTimer() {
+                @Override
+                public void handle(long now) {
+                    boolean any = false;
+                    long t = System.nanoTime();
+                    for (int i = 0; i < POOL_SIZE; i++) {
+                        if (hideAt[i] == 0) continue;
+                        if (t >= hideAt[i]) {
+                            hideAt[i] = 0;
+                            hide(toasts[i]);
+                        } else {
+                            any = true;
+                        }
+                    }
+                    if (!any) {
+                        ticking = false;
+                        stop();
+                    }
+                }
+            };
+        }
+        ticking = true;
+        ticker.start();
+    }
+
+    private void answer(Runnable choice) {
+        onFirst = null;
+        onSecond = null;
+        hide(confirmBar);
+        if (choice != null) choice.run();
+    }
+
+    private static void hide(Region n) {
+        n.setVisible(false);
+        n.setManaged(false);
+    }
+}
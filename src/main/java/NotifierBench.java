@@ -0,0 +1,157 @@
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.scene.Node;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.Control;
+import javafx.scene.control.Label;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.StackPane;
+import javafx.scene.layout.VBox;
+import javafx.stage.Stage;
+import javafx.stage.Window;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Scripted high-rate input check for {@link Notifier}: every frame it
+ * clicks a deposit button, a quick-amount button and the first choice of
+ * the confirmation bar that one opens, many times over, the way a user
+ * hammering the ATM screen would, only faster.
+ *
+ * Usage: java NotifierBench [clicks-per-frame] [seconds] (default 60, 5)
+ * Needs JavaFX and a display, like the app itself.
+ *
+ * Prints the clicks handled per second, the FX thread time they took and
+ * the longest gap between frames. Passes when no window or node was added
+ * to the scene, the newest toast was always the visible bottom one, and no
+ * frame gap exceeded -Dvaultx.bench.maxGapMillis (default 100).
+ */
+public class NotifierBench {
+
+    private final int perFrame;
+    private final long runNanos;
+    private final long maxGapNanos = Long.getLong("vaultx.bench.maxGapMillis", 100) * 1_000_000L;
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private final Notifier notifier = new Notifier();
+    private String lastText;
+    private long clicks;
+    private long busyNanos;
+    private long maxGap;
+    private long slowFrames;
+    private long frames;
+    private long notNewest;
+    private boolean ok;
+
+    private NotifierBench(int perFrame, int seconds) {
+        this.perFrame = perFrame;
+        this.runNanos = seconds * 1_000_000_000L;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        NotifierBench bench = new NotifierBench(
+                args.length > 0 ? Integer.parseInt(args[0]) : 60,
+                args.length > 1 ? Integer.parseInt(args[1]) : 5);
+        Platform.startup(bench::start);
+        bench.done.await();
+        Platform.exit();
+        System.out.println(bench.ok ? "PASS" : "FAIL");
+        System.exit(bench.ok ? 0 : 1);
+    }
+
+    /* ========= Script ========= */
+
+    // FX thread
+    private void start() {
+        Button deposit = new Button("Deposit");
+        deposit.setOnAction(e -> toast(false, "Deposit", "$" + AtmService.fmt(clicks % 500) + " added."));
+        Button quick = new Button("$20");
+        quick.setOnAction(e -> notifier.confirm("$20. Deposit or Withdraw?",
+                "Deposit", () -> toast(false, "Deposit", "$20.00 added."),
+                "Withdraw", () -> toast(true, "Failed", "Insufficient balance.")));
+        // The confirmation bar's first button, clicked like a user would
+        Button answer = (Button) ((HBox) notifier.getConfirmBar().getChildren().get(1)).getChildren().get(0);
+
+        VBox root = new VBox(8, deposit, quick, notifier.getConfirmBar());
+        Scene scene = new Scene(new StackPane(root, notifier.getLayer()), 600, 400);
+        Stage stage = new Stage();
+        stage.setTitle("NotifierBench");
+        stage.setScene(scene);
+        stage.show();
+
+        int windows = Window.getWindows().size();
+        int nodes = countNodes(scene.getRoot());
+
+        new AnimationTimer() {
+            private long first;
+            private long last;
+
+            @Override
+            public void handle(long now) {
+                if (first == 0) {
+                    first = now;
+                } else {
+                    long gap = now - last;
+                    maxGap = Math.max(maxGap, gap);
+                    if (gap > maxGapNanos) slowFrames++;
+                }
+                last = now;
+                frames++;
+
+                long t0 = System.nanoTime();
+                for (int k = 0; k < perFrame; k++) {
+                    switch (k % 3) {
+                        case 0: deposit.fire(); break;
+                        case 1: quick.fire(); break;
+                        default: if (notifier.isConfirming()) answer.fire(); break;
+                    }
+                    clicks++;
+                    if (!newestShown()) notNewest++;
+                }
+                busyNanos += System.nanoTime() - t0;
+
+                if (now - first < runNanos) return;
+                stop();
+                int windowsAfter = Window.getWindows().size();
+                int nodesAfter = countNodes(scene.getRoot());
+                double secs = (now - first) / 1e9;
+                System.out.printf(Locale.US, "clicks   %,d in %.1f s (%,.0f/s), %.1f us FX time each%n",
+                        clicks, secs, clicks / secs, busyNanos / 1e3 / clicks);
+                System.out.printf(Locale.US, "frames   %,d, longest gap %.1f ms, %d over %d ms%n",
+                        frames, maxGap / 1e6, slowFrames, maxGapNanos / 1_000_000);
+                System.out.printf("windows  %d -> %d, nodes %d -> %d, newest toast hidden %d time(s)%n",
+                        windows, windowsAfter, nodes, nodesAfter, notNewest);
+                ok = windowsAfter == windows && nodesAfter == nodes && notNewest == 0 && slowFrames == 0;
+                stage.hide();
+                done.countDown();
+            }
+        }.start();
+    }
+
+    private void toast(boolean warn, String title, String msg) {
+        if (warn) notifier.warn(title, msg);
+        else notifier.info(title, msg);
+        lastText = title + ": " + msg;
+    }
+
+    // The last toast shown must be visible and at the bottom of the stack
+    private boolean newestShown() {
+        if (lastText == null) return true;
+        List<Node> toasts = notifier.getLayer().getChildren();
+        Label bottom = (Label) toasts.get(toasts.size() - 1);
+        return bottom.isVisible() && lastText.equals(bottom.getText());
+    }
+
+    // Layout nodes and controls; a control's skin is its own business
+    private static int countNodes(Parent p) {
+        int n = 1;
+        for (Node c : p.getChildrenUnmodifiable()) {
+            n += c instanceof Parent && !(c instanceof Control) ? countNodes((Parent) c) : 1;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,293 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.IntSupplier;
+
+/**
+ * Postings taken while the store can't be reached, kept until they are in
+ * it. Each posting is appended to a local file and forced to disk before
+ * the customer gets the cash or the receipt; a sync thread
+ * ("vaultx-outbox") then hands them to the store in batches and appends an
+ * ack for each one it got in. The file is emptied once nothing is pending.
+ *
+ * Every posting carries a random key that also goes into its ledger row
+ * ("Deposited (offline #3f9a...): $50.00"), so a posting that reached the
+ * store but lost its ack in a crash is recognised and not applied again.
+ *
+ * Offline withdrawals are held to conservative limits, since the balance
+ * the terminal has may be stale:
+ * <pre>
+ *   -Dvaultx.outbox.file=path            (default ~/.vaultx_outbox)
+ *   -Dvaultx.offline.maxWithdraw=50000   per withdrawal
+ *   -Dvaultx.offline.maxPending=100000   all pending withdrawals of one account
+ *   -Dvaultx.outbox.syncMillis=5000      how often the sync thread retries
+ *   -Dvaultx.outbox.batch=100            postings per sync round
+ *   -Dvaultx.outbox.parkMillis=30000     how long an account the store refused is left out
+ * </pre>
+ */
+public class Outbox {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /** One posting waiting for the store. */
+    public static final class Entry {
+        private final String key;
+        private final String username;
+        private final double delta;
+        private final String timestamp;
+        private final String action;
+
+        Entry(String key, String username, double delta, String timestamp, String action) {
+            this.key = key;
+            this.username = username;
+            this.delta = delta;
+            this.timestamp = timestamp;
+            this.action = action;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /** Lower-case account name. */
+        public String getUsername() {
+            return username;
+        }
+
+        /** Balance change: positive for a deposit, negative for a withdrawal. */
+        public double getDelta() {
+            return delta;
+        }
+
+        public String getTimestamp() {
+            return timestamp;
+        }
+
+        /** The ledger row, with the key in it. */
+        public String getAction() {
+            return action;
+        }
+    }
+
+    private final Path file;
+    private final double maxWithdraw;
+    private final double maxPending;
+    private final long syncMillis;
+    private final int batch;
+    private final long parkMillis;
+    private final Map<String, Entry> pending = new LinkedHashMap<>();   // by key, oldest first
+    private final Map<String, Long> parkedUntil = new HashMap<>();      // by account
+    private FileChannel channel;
+    private Thread syncer;
+    private volatile boolean running;
+
+    public Outbox(Path file, double maxWithdraw, double maxPending, long syncMillis, int batch, long parkMillis) {
+        this.file = file;
+        this.maxWithdraw = maxWithdraw;
+        this.maxPending = maxPending;
+        this.syncMillis = syncMillis;
+        this.batch = batch;
+        this.parkMillis = parkMillis;
+    }
+
+    public static Outbox fromConfig() {
+        return new Outbox(
+                Paths.get(System.getProperty("vaultx.outbox.file",
+                        Paths.get(System.getProperty("user.home"), ".vaultx_outbox").toString())),
+                Double.parseDouble(System.getProperty("vaultx.offline.maxWithdraw", "50000")),
+                Double.parseDouble(System.getProperty("vaultx.offline.maxPending", "100000")),
+                Long.getLong("vaultx.outbox.syncMillis", 5000),
+                Integer.getInteger("vaultx.outbox.batch", 100),
+                Long.getLong("vaultx.outbox.parkMillis", 30000));
+    }
+
+    /** A fresh idempotency key for a posting. */
+    public static String newKey() {
+        return String.format(Locale.ROOT, "%016x", RANDOM.nextLong());
+    }
+
+    /** The marker a posting's ledger row carries. */
+    public static String tag(String key) {
+        return "(offline #" + key + ")";
+    }
+
+    /* ========= File ========= */
+
+    /** Opens the file and loads whatever an earlier run left unsynced. */
+    public synchronized void open() throws IOException {
+        // A crash mid-append leaves a last line without its newline; that
+        // posting was never confirmed to anyone, so it is cut off
+        int complete = 0;
+        if (Files.exists(file)) {
+            byte[] bytes = Files.readAllBytes(file);
+            complete = bytes.length;
+            while (complete > 0 && bytes[complete - 1] != '\n') complete--;
+            for (String line : new String(bytes, 0, complete, StandardCharsets.UTF_8).split("\n")) {
+                String[] f = line.split("\\|", -1);
+                if (f[0].equals("P") && f.length == 6) {
+                    pending.put(f[1], new Entry(f[1], f[2], Double.parseDouble(f[3]), f[4], f[5]));
+                } else if (f[0].equals("A") && f.length == 2) {
+                    pending.remove(f[1]);
+                }
+            }
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        channel.truncate(pending.isEmpty() ? 0 : complete);
+    }
+
+    /**
+     * Appends a posting and forces it to disk. Returns false if it could
+     * not be written, in which case the posting must be refused.
+     */
+    public synchronized boolean record(String key, String username, double delta, String timestamp, String action) {
+        if (channel == null) return false;   // the file couldn't be opened
+        Entry e = new Entry(key, username.toLowerCase(Locale.ROOT), delta, timestamp, action);
+        try {
+            write("P|" + e.key + "|" + e.username + "|" + e.delta + "|" + e.timestamp + "|" + e.action + "\n");
+        } catch (IOException ex) {
+            EventLog.error("Outbox.record", ex);
+            return false;
+        }
+        pending.put(key, e);
+        return true;
+    }
+
+    /** Marks postings as in the store; empties the file when nothing is left. */
+    public synchronized void ack(Collection<Entry> done) {
+        if (done.isEmpty()) return;
+        StringBuilder sb = new StringBuilder();
+        for (Entry e : done) sb.append("A|").append(e.key).append('\n');
+        try {
+            for (Entry e : done) pending.remove(e.key);
+            if (pending.isEmpty()) {
+                channel.truncate(0);
+                channel.force(false);
+            } else {
+                write(sb.toString());
+            }
+        } catch (IOException ex) {
+            // Not fatal: an unacked posting is recognised by its key next time
+            EventLog.error("Outbox.ack", ex);
+        }
+    }
+
+    private void write(String s) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8));
+        while (buf.hasRemaining()) channel.write(buf);
+        channel.force(false);
+    }
+
+    public synchronized void close() {
+        stop();
+        try {
+            if (channel != null) channel.close();
+        } catch (IOException e) {
+            EventLog.error("Outbox.close", e);
+        }
+    }
+
+    /* ========= State ========= */
+
+    /** True while postings are waiting: the terminal is (still) offline. */
+    public synchronized boolean isOffline() {
+        return !pending.isEmpty();
+    }
+
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    public synchronized boolean hasPending(String username) {
+        String key = username.toLowerCase(Locale.ROOT);
+        for (Entry e : pending.values()) if (e.username.equals(key)) return true;
+        return false;
+    }
+
+    /** Why this withdrawal can't be taken offline, or null if it can. */
+    public synchronized String withdrawLimitMessage(String username, double amount) {
+        if (amount > maxWithdraw) {
+            return "The bank can't be reached right now. Offline withdrawals are limited to $"
+                    + AtmService.fmt(maxWithdraw) + ".";
+        }
+        String key = username.toLowerCase(Locale.ROOT);
+        double owed = 0;
+        for (Entry e : pending.values()) if (e.username.equals(key) && e.delta < 0) owed -= e.delta;
+        if (owed + amount > maxPending) {
+            return "The bank can't be reached right now. You can withdraw $"
+                    + AtmService.fmt(Math.max(0, maxPending - owed)) + " more until it is back.";
+        }
+        return null;
+    }
+
+    /** The oldest pending postings of accounts that aren't parked, up to the batch size. */
+    public synchronized List<Entry> peek() {
+        long now = System.currentTimeMillis();
+        parkedUntil.values().removeIf(until -> until <= now);
+        List<Entry> out = new ArrayList<>(Math.min(batch, pending.size()));
+        for (Entry e : pending.values()) {
+            if (out.size() == batch) break;
+            if (!parkedUntil.containsKey(e.username)) out.add(e);
+        }
+        return out;
+    }
+
+    /**
+     * Leaves the account's postings out of the next rounds for a while, so
+     * one the store keeps refusing doesn't hold up everyone behind it. They
+     * stay pending and on disk.
+     */
+    public synchronized void park(String username) {
+        parkedUntil.put(username.toLowerCase(Locale.ROOT), System.currentTimeMillis() + parkMillis);
+    }
+
+    /* ========= Sync thread ========= */
+
+    /** Calls sync every few seconds while postings are pending; sync returns how many got in. */
+    public synchronized void start(IntSupplier sync) {
+        if (running) return;
+        running = true;
+        syncer = new Thread(() -> {
+            while (running) {
+                try {
+                    Thread.sleep(syncMillis);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                try {
+                    // Keep draining while rounds make progress
+                    int synced;
+                    do {
+                        synced = isOffline() ? sync.getAsInt() : 0;
+                    } while (running && synced > 0);
+                } catch (RuntimeException e) {
+                    EventLog.error("Outbox.sync", e);
+                }
+            }
+        }, "vaultx-outbox");
+        syncer.setDaemon(true);
+        syncer.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (syncer != null) syncer.interrupt();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Outbox[" + pending.size() + " pending, " + file + "]";
+    }
+}
@@ -0,0 +1,251 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Wraps the primary store and ships every committed change to a standby
+ * through a {@link LogShipper}. Turned on with
+ * -Dvaultx.standby=file:&lt;path&gt; or tcp:&lt;host&gt;:&lt;port&gt; (see
+ * {@link Stores#fromConfig()}).
+ *
+ * Writes go to the primary first; only once it returns is the change queued
+ * for shipping, so a posting costs one non-blocking queue offer on top of
+ * the primary write.
+ *
+ * The standby appends a row only if its prev_hash matches the standby's
+ * own tail of that account, so replaying history it already has is a
+ * no-op. {@link #resync()} relies on that: it queues every account and
+ * every row again and the standby keeps what it is missing. It runs on
+ * start with -Dvaultx.standby.seed=true, and by itself after records were
+ * dropped or the standby reported rows it could not chain.
+ */
+public class ReplicatedStore implements Store {
+
+    private static final long REPORT_MILLIS = Long.getLong("vaultx.standby.report", 60) * 1000;
+
+    private final Store primary;
+    private final LogShipper shipper;
+    private Thread monitor;
+    private volatile boolean open;
+
+    public ReplicatedStore(Store primary, LogShipper shipper) {
+        this.primary = primary;
+        this.shipper = shipper;
+    }
+
+    public Store getPrimary() {
+        return primary;
+    }
+
+    public LogShipper getShipper() {
+        return shipper;
+    }
+
+    @Override
+    public String name() {
+        return primary.name() + "+standby";
+    }
+
+    @Override
+    public void init() {
+        primary.init();
+        shipper.start();
+        open = true;
+        if (Boolean.getBoolean("vaultx.standby.seed")) resync();
+
+        // Logs the lag now and then, and resyncs once the standby has fallen out of step
+        monitor = new Thread(() -> {
+            long dropped = 0;
+            long skipped = 0;
+            while (open) {
+                try {
+                    Thread.sleep(REPORT_MILLIS);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                EventLog.event(EventLog.Type.STORE, null, shipper.lagReport());
+                if (shipper.getDropped() > dropped || shipper.getStandbySkipped() > skipped) {
+                    dropped = shipper.getDropped();
+                    skipped = shipper.getStandbySkipped();
+                    resync();
+                }
+            }
+        }, "vaultx-standby-monitor");
+        monitor.setDaemon(true);
+        monitor.start();
+    }
+
+    @Override
+    public void close() {
+        open = false;
+        if (monitor != null) monitor.interrupt();
+        shipper.close(5_000);
+        EventLog.event(EventLog.Type.STORE, null, shipper.lagReport());
+        primary.close();
+    }
+
+    /** Queues a full copy of the primary; the standby keeps what it is missing. */
+    public int resync() {
+        int queued = 0;
+        for (String name : primary.usernames()) {
+            User u = primary.loadUser(name);
+            if (u != null && shipper.offer(LogShipper.Record.user(u))) queued++;
+            queued += shipRows(name, primary.afterId(name, 0), LedgerChain.GENESIS, 0);
+        }
+        EventLog.event(EventLog.Type.STORE, null, "ReplicatedStore: queued " + queued + " record(s) for resync");
+        return queued;
+    }
+
+    // Queues rows in order; unchained rows before the first hash are sent with their position
+    private int shipRows(String username, List<LedgerEntry> rows, String prev, long firstOrdinal) {
+        int queued = 0;
+        long ordinal = firstOrdinal;
+        for (LedgerEntry e : rows) {
+            LogShipper.Record r = LogShipper.Record.row(username, e.getTimestamp(), e.getAction(), prev, e.getHash());
+            if (e.getHash() == null) r.ordinal = ordinal;
+            else prev = e.getHash();
+            ordinal++;
+            if (shipper.offer(r)) queued++;
+        }
+        return queued;
+    }
+
+    /* ========= Accounts ========= */
+
+    @Override
+    public User loadUser(String username) {
+        return primary.loadUser(username);
+    }
+
+    @Override
+    public boolean saveUser(User u) {
+        if (!primary.saveUser(u)) return false;
+        shipper.offer(LogShipper.Record.user(u));
+        return true;
+    }
+
+    @Override
+    public List<String> usernames() {
+        return primary.usernames();
+    }
+
+    /* ========= Ledger ========= */
+
+    @Override
+    public long append(String username, String timestamp, String action, String prevHash, String hash) {
+        long id = primary.append(username, timestamp, action, prevHash, hash);
+        if (id >= 0) shipper.offer(LogShipper.Record.row(username, timestamp, action, prevHash, hash));
+        return id;
+    }
+
+    @Override
+    public String lastHash(String username) {
+        return primary.lastHash(username);
+    }
+
+    @Override
+    public List<LedgerEntry> since(String username, String since) {
+        return primary.since(username, since);
+    }
+
+    @Override
+    public List<LedgerEntry> afterId(String username, long afterId) {
+        return primary.afterId(username, afterId);
+    }
+
+    @Override
+    public void checkpoint(String username) {
+        primary.checkpoint(username);
+    }
+
+    @Override
+    public boolean postBatch(User u, String timestamp, List<String> actions, String prevHash, List<String> hashes) {
+        if (!primary.postBatch(u, timestamp, actions, prevHash, hashes)) return false;
+        String username = u.getUsername().toLowerCase(Locale.ROOT);
+        String prev = prevHash;
+        for (int i = 0; i < actions.size(); i++) {
+            shipper.offer(LogShipper.Record.row(username, timestamp, actions.get(i), prev, hashes.get(i)));
+            prev = hashes.get(i);
+        }
+        shipper.offer(LogShipper.Record.user(u));
+        return true;
+    }
+
+    @Override
+    public double post(String username, double delta, boolean guarded, String timestamp,
+                       List<String> actions, String prevHash, List<String> hashes) {
+        double balance = primary.post(username, delta, guarded, timestamp, actions, prevHash, hashes);
+        if (Double.isNaN(balance)) return balance;
+        String key = username.toLowerCase(Locale.ROOT);
+        String prev = prevHash;
+        for (int i = 0; i < actions.size(); i++) {
+            shipper.offer(LogShipper.Record.row(key, timestamp, actions.get(i), prev, hashes.get(i)));
+            prev = hashes.get(i);
+        }
+        // The standby takes the balance the primary ended up with
+        User u = primary.loadUser(key);
+        if (u != null) shipper.offer(LogShipper.Record.user(u));
+        return balance;
+    }
+
+    @Override
+    public int adjust(String timestamp, List<Adjustment> batch) {
+        int applied = primary.adjust(timestamp, batch);
+        for (Adjustment a : batch) {
+            if (!a.isApplied()) continue;
+            String prev = a.prevHash;
+            for (int i = 0; i < a.getActions().size(); i++) {
+                shipper.offer(LogShipper.Record.row(a.getUsername(), timestamp, a.getActions().get(i), prev, a.hashes.get(i)));
+                prev = a.hashes.get(i);
+            }
+            User u = primary.loadUser(a.getUsername());
+            if (u != null) shipper.offer(LogShipper.Record.user(u));
+        }
+        return applied;
+    }
+
+    /* ========= Transfers ========= */
+
+    /** The primary writes transfer rows itself, so they are looked up afterwards by their hashes. */
+    @Override
+    public String transfer(String from, String to, double amount, String timestamp) {
+        String a = from.toLowerCase(Locale.ROOT);
+        String b = to.toLowerCase(Locale.ROOT);
+        String tailA = primary.lastHash(a);
+        String tailB = primary.lastHash(b);
+        String err = primary.transfer(a, b, amount, timestamp);
+        // A refused transfer can still have written a refund pair on a sharded primary
+        shipNewRows(a, tailA, timestamp);
+        shipNewRows(b, tailB, timestamp);
+        for (String name : new String[]{a, b}) {
+            User u = primary.loadUser(name);
+            if (u != null) shipper.offer(LogShipper.Record.user(u));
+        }
+        return err;
+    }
+
+    // Rows after the one whose hash was the old tail
+    private void shipNewRows(String username, String oldTail, String timestamp) {
+        List<LedgerEntry> recent = primary.since(username, timestamp);
+        int start = 0;
+        if (oldTail != null) {
+            start = recent.size();
+            for (int i = recent.size() - 1; i >= 0; i--) {
+                if (oldTail.equals(recent.get(i).getHash())) {
+                    start = i + 1;
+                    break;
+                }
+            }
+        }
+        List<LedgerEntry> fresh = new ArrayList<>();
+        for (LedgerEntry e : recent.subList(start, recent.size())) {
+            if (e.getHash() != null) fresh.add(e);
+        }
+        shipRows(username, fresh, oldTail == null ? LedgerChain.GENESIS : oldTail, 0);
+    }
+
+    @Override
+    public String toString() {
+        return "ReplicatedStore[" + primary + " -> " + shipper.lagReport() + "]";
+    }
+}
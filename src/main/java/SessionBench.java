@@ -0,0 +1,110 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load check for {@link SessionManager}: opens many sessions, touches them
+ * at random and lets the idle ones expire, all on a simulated clock so the
+ * run takes seconds instead of minutes.
+ *
+ * Usage: java SessionBench [sessions] (default 100000)
+ *
+ * Prints the heap used per session, the cost of a touch, and how long it
+ * takes to reap a whole generation of idle sessions. Also checks that no
+ * session expires while it is still within its idle time and that every
+ * expired session was flushed exactly once.
+ */
+public class SessionBench {
+
+    private static final long IDLE = 120_000;
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        // Expiries are logged; keep a benchmark's worth of them out of the real event log
+        if (System.getProperty("vaultx.events") == null) System.setProperty("vaultx.events", "off");
+
+        List<User> users = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) users.add(new User("user" + i, new byte[16], new byte[32], 100));
+
+        AtomicLong flushed = new AtomicLong();
+        SessionManager sessions = new SessionManager(IDLE, u -> flushed.incrementAndGet());
+        long now = System.currentTimeMillis();
+
+        /* ========= Open ========= */
+
+        long heapBefore = usedHeap();
+        long t0 = System.nanoTime();
+        String[] tokens = new String[n];
+        for (int i = 0; i < n; i++) tokens[i] = sessions.open(users.get(i), null, now).getToken();
+        long openNs = System.nanoTime() - t0;
+        long heapAfter = usedHeap();
+        System.out.printf("open     %,d sessions in %d ms (%.0f ns each), ~%d bytes per session%n",
+                n, openNs / 1_000_000, (double) openNs / n, (heapAfter - heapBefore) / n);
+
+        /* ========= Touch ========= */
+
+        // The first half stays busy for a minute; the second half goes idle
+        int touches = 2_000_000;
+        long seed = 42;
+        now += 60_000;
+        t0 = System.nanoTime();
+        for (int i = 0; i < touches; i++) {
+            seed = seed * 6364136223846793005L + 1442695040888963407L;
+            int k = (int) ((seed >>> 33) % (n / 2));
+            sessions.touch(tokens[k], now);
+        }
+        long touchNs = System.nanoTime() - t0;
+        System.out.printf("touch    %,d touches, %.0f ns each%n", touches, (double) touchNs / touches);
+
+        /* ========= Expire ========= */
+
+        // One idle period after opening: only the untouched half may go
+        int early = 0;
+        now += IDLE - 60_000;
+        t0 = System.nanoTime();
+        int first = reap(sessions, now);
+        long firstNs = System.nanoTime() - t0;
+        for (int i = 0; i < n / 2; i++) {
+            if (sessions.get(tokens[i]) == null) early++;
+        }
+        System.out.printf("expire   %,d idle sessions in %d ms (%.0f ns each), %,d still open%n",
+                first, firstNs / 1_000_000, (double) firstNs / Math.max(1, first), sessions.size());
+
+        // ...and the busy half one idle period after its last touch
+        now += 60_000;
+        t0 = System.nanoTime();
+        int second = reap(sessions, now);
+        long secondNs = System.nanoTime() - t0;
+        System.out.printf("expire   %,d rescheduled sessions in %d ms, %,d still open%n",
+                second, secondNs / 1_000_000, sessions.size());
+
+        boolean ok = early == 0
+                && first == n - n / 2
+                && second == n / 2
+                && sessions.size() == 0
+                && flushed.get() == n;
+        System.out.println((ok ? "PASS" : "FAIL") + ": early=" + early + " flushed=" + flushed.get() + "/" + n
+                + " " + sessions);
+        if (!ok) System.exit(1);
+    }
+
+    // The reaper ticks once per second; replay those ticks up to one past now
+    private static int reap(SessionManager sessions, long now) {
+        int total = 0;
+        for (long t = now - 60_000; t <= now + 1_000; t += 1_000) total += sessions.expireIdle(t);
+        return total;
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
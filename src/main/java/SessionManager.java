@@ -0,0 +1,204 @@
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Logged-in sessions, keyed by an unguessable token, with idle expiry.
+ *
+ * All sessions share one {@link TimerWheel} and one reaper thread
+ * ("vaultx-sessions") that advances it once per tick; there is no task or
+ * timer object per session. {@link #touch} only stores the time of last
+ * activity. When a session's timer fires the reaper looks at that time:
+ * idle long enough and the session ends, otherwise it is scheduled again
+ * for the rest of the idle period. Touch and expiry are both O(1).
+ *
+ * Ending a session, by {@link #close} or by expiry, runs the flush callback
+ * (AtmService.logout: save the balance, seal the ledger) and then the
+ * session's own expiry listener, if any, so the front end can return to its
+ * login screen. Listeners run on the reaper thread.
+ *
+ * Idle timeout: -Dvaultx.session.idle=seconds (default 120).
+ */
+public class SessionManager {
+
+    private static final long TICK_MILLIS = 1_000;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /** One logged-in user. */
+    public static final class Session extends TimerWheel.Node {
+        private final String token;
+        private final User user;
+        private final long createdMillis;
+        private volatile long lastActive;
+        private volatile boolean ended;
+        private final Consumer<Session> onExpire;
+
+        Session(String token, User user, long now, Consumer<Session> onExpire) {
+            this.token = token;
+            this.user = user;
+            this.createdMillis = now;
+            this.lastActive = now;
+            this.onExpire = onExpire;
+        }
+
+        public String getToken() {
+            return token;
+        }
+
+        public User getUser() {
+            return user;
+        }
+
+        public long getCreatedMillis() {
+            return createdMillis;
+        }
+
+        public long getLastActive() {
+            return lastActive;
+        }
+
+        public boolean isEnded() {
+            return ended;
+        }
+    }
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final TimerWheel wheel;
+    private final long idleMillis;
+    private final Consumer<User> flush;
+    private Thread reaper;
+    private volatile boolean running;
+    private volatile long expiredCount;
+
+    public SessionManager(long idleMillis, Consumer<User> flush) {
+        this.idleMillis = idleMillis;
+        this.flush = flush;
+        this.wheel = new TimerWheel(TICK_MILLIS, System.currentTimeMillis());
+    }
+
+    /** The idle timeout from -Dvaultx.session.idle, in milliseconds. */
+    public static long configuredIdleMillis() {
+        return Long.getLong("vaultx.session.idle", 120) * 1000;
+    }
+
+    /** Starts the reaper thread; without it sessions only expire through {@link #expireIdle}. */
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        reaper = new Thread(() -> {
+            while (running) {
+                try {
+                    Thread.sleep(TICK_MILLIS);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                expireIdle(System.currentTimeMillis());
+            }
+        }, "vaultx-sessions");
+        reaper.setDaemon(true);
+        reaper.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (reaper != null) reaper.interrupt();
+    }
+
+    /* ========= Sessions ========= */
+
+    public Session open(User user, Consumer<Session> onExpire) {
+        return open(user, onExpire, System.currentTimeMillis());
+    }
+
+    Session open(User user, Consumer<Session> onExpire, long now) {
+        Session s = new Session(newToken(), user, now, onExpire);
+        sessions.put(s.token, s);
+        synchronized (wheel) {
+            wheel.schedule(s, now + idleMillis);
+        }
+        return s;
+    }
+
+    /** The live session for the token, or null. Does not count as activity. */
+    public Session get(String token) {
+        return token == null ? null : sessions.get(token);
+    }
+
+    /** Records activity; returns false if the session is gone (expired or closed). */
+    public boolean touch(String token) {
+        return touch(token, System.currentTimeMillis());
+    }
+
+    boolean touch(String token, long now) {
+        Session s = get(token);
+        if (s == null || s.ended) return false;
+        s.lastActive = now;
+        return true;
+    }
+
+    /** Ends the session now (explicit logout) and flushes its account. */
+    public void close(String token) {
+        Session s = token == null ? null : sessions.remove(token);
+        if (s == null) return;
+        synchronized (wheel) {
+            wheel.cancel(s);
+        }
+        end(s, false);
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    public long getExpiredCount() {
+        return expiredCount;
+    }
+
+    /** Advances the wheel to now and ends every session idle for the full timeout. */
+    public int expireIdle(long now) {
+        List<Session> due = new ArrayList<>();
+        synchronized (wheel) {
+            wheel.advance(now, n -> {
+                Session s = (Session) n;
+                long idleUntil = s.lastActive + idleMillis;
+                if (idleUntil > now) wheel.schedule(s, idleUntil);   // touched since: wait the rest
+                else due.add(s);
+            });
+        }
+        for (Session s : due) {
+            if (sessions.remove(s.token, s)) end(s, true);
+        }
+        expiredCount += due.size();
+        return due.size();
+    }
+
+    /* ========= Internals ========= */
+
+    private void end(Session s, boolean expired) {
+        s.ended = true;
+        try {
+            flush.accept(s.user);
+        } catch (RuntimeException e) {
+            EventLog.error("SessionManager.flush", e);
+        }
+        if (!expired) return;
+        EventLog.event(EventLog.Type.SESSION_EXPIRED, s.user.getUsername(), null);
+        if (s.onExpire != null) s.onExpire.accept(s);
+    }
+
+    private static String newToken() {
+        byte[] b = new byte[16];
+        RANDOM.nextBytes(b);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(b);
+    }
+
+    @Override
+    public String toString() {
+        return "SessionManager[" + sessions.size() + " open, " + expiredCount + " expired, idle "
+                + idleMillis / 1000 + "s]";
+    }
+}
@@ -0,0 +1,74 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write throughput of {@link ShardedStore} for a growing number of shards
+ * on this machine. Each "posting" is what a deposit costs: a chained
+ * ledger append plus a balance save.
+ *
+ * Usage: java ShardBench [threads] [seconds] [shardCounts...]
+ * defaults: 8 threads, 5 s, shard counts 1 2 4 8. Runs in a temp
+ * directory. Needs the SQLite driver on the classpath.
+ */
+public class ShardBench {
+
+    private static final int ACCOUNTS = 1_000;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        List<Integer> counts = new ArrayList<>();
+        for (int i = 2; i < args.length; i++) counts.add(Integer.parseInt(args[i]));
+        if (counts.isEmpty()) counts.addAll(List.of(1, 2, 4, 8));
+
+        System.out.println("threads=" + threads + ", " + seconds + " s per run, " + ACCOUNTS + " accounts");
+        double base = 0;
+        for (int n : counts) {
+            double rate = run(n, threads, seconds);
+            if (base == 0) base = rate;
+            System.out.println(String.format(Locale.US, "shards=%d  %8.0f postings/s  x%.2f", n, rate, rate / base));
+        }
+    }
+
+    private static double run(int shards, int threads, int seconds) throws IOException, InterruptedException {
+        Path dir = Files.createTempDirectory("vaultx-shardbench");
+        ShardedStore store = new ShardedStore(dir, shards, threads);
+        store.init();
+        byte[] b = new byte[16];
+        for (int i = 0; i < ACCOUNTS; i++) store.saveUser(new User("user" + i, b, b, 0));
+
+        AtomicLong done = new AtomicLong();
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        String ts = LedgerEntry.TIMESTAMP_FORMAT.format(java.time.LocalDateTime.now());
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            // Each thread owns every threads-th account, so no two threads fork one chain
+            Thread w = new Thread(() -> {
+                double[] balance = new double[ACCOUNTS];
+                int i = id;
+                while (System.nanoTime() < end) {
+                    String name = "user" + i;
+                    balance[i] += 1;
+                    store.appendChained(name, ts, "Deposited: $1.00");
+                    store.saveUser(new User(name, b, b, balance[i]));
+                    done.incrementAndGet();
+                    i += threads;
+                    if (i >= ACCOUNTS) i = id;
+                }
+            }, "shardbench-" + t);
+            workers.add(w);
+            w.start();
+        }
+        long t0 = System.nanoTime();
+        for (Thread w : workers) w.join();
+        double rate = done.get() * 1e9 / (System.nanoTime() - t0);
+        store.close();
+        return rate;
+    }
+}
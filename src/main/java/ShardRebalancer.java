@@ -0,0 +1,156 @@
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Properties;
+
+/**
+ * Changes the number of shards of a {@link ShardedStore} and moves the
+ * accounts whose shard changes. Run it with the app stopped:
+ * <pre>java -Dvaultx.shard.dir=... ShardRebalancer &lt;newCount&gt;</pre>
+ *
+ * Pending cross-shard transfers are finished first. The target count is
+ * written to {@code shards.properties} as "rebalancing" before anything
+ * moves (the store refuses to open meanwhile) and becomes "count" at the
+ * end. Each account is copied to its new shard in one transaction, then
+ * deleted from the old one in another; a copy first clears whatever an
+ * interrupted run left on the target, so the tool can simply be run again
+ * after a crash.
+ *
+ * Moved rows get new ids on the target but keep their hashes, so the
+ * ledger chain stays intact; the account's Merkle checkpoints are rebuilt
+ * there. Shrinking leaves the surplus shard files empty.
+ */
+public class ShardRebalancer {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: java ShardRebalancer <newCount>");
+            return;
+        }
+        int target = Integer.parseInt(args[0]);
+        Path dir = Paths.get(System.getProperty("vaultx.shard.dir",
+                Paths.get(System.getProperty("user.home"), ".vaultx_shards").toString()));
+        int pool = Integer.getInteger("vaultx.shard.pool", 4);
+
+        Properties p = ShardedStore.readConfig(dir);
+        if (p.getProperty("count") == null) {
+            System.out.println("No " + ShardedStore.COUNT_FILE + " in " + dir + "; nothing to rebalance.");
+            return;
+        }
+        int from = Integer.parseInt(p.getProperty("count"));
+        if (p.getProperty("rebalancing") != null) {
+            int unfinished = Integer.parseInt(p.getProperty("rebalancing"));
+            if (unfinished != target) {
+                System.out.println("An earlier rebalance to " + unfinished + " shards is unfinished; run it with " + unfinished + " first.");
+                return;
+            }
+            System.out.println("Resuming rebalance " + from + " -> " + target);
+        } else {
+            if (from == target) {
+                System.out.println("Already " + target + " shards.");
+                return;
+            }
+            ShardedStore current = new ShardedStore(dir, from, pool);
+            current.init();   // finishes pending transfers
+            current.close();
+            p.setProperty("rebalancing", Integer.toString(target));
+            ShardedStore.writeConfig(dir, p);
+        }
+
+        long t0 = System.currentTimeMillis();
+        ShardRing newRing = new ShardRing(target);
+        SqliteStore[] shards = new SqliteStore[Math.max(from, target)];
+        for (int i = 0; i < shards.length; i++) shards[i] = ShardedStore.openShard(dir, i, pool);
+
+        int moved = 0;
+        long rows = 0;
+        // Accounts can sit on any old shard (or, after a crash, on both sides)
+        for (int i = 0; i < shards.length; i++) {
+            for (String username : shards[i].usernames()) {
+                int to = newRing.shardOf(username);
+                if (to == i) continue;
+                rows += move(username, shards[i], shards[to]);
+                moved++;
+            }
+        }
+
+        p.setProperty("count", Integer.toString(target));
+        p.remove("rebalancing");
+        ShardedStore.writeConfig(dir, p);
+        for (SqliteStore s : shards) s.close();
+        System.out.println("Rebalanced " + from + " -> " + target + " shards: moved " + moved
+                + " account(s), " + rows + " ledger row(s) in " + (System.currentTimeMillis() - t0) + " ms");
+    }
+
+    // Copies one account with its ledger to the target shard, then removes it from the source
+    private static long move(String username, SqliteStore source, SqliteStore target) throws SQLException {
+        long copied = 0;
+        String tail = null;
+        try (Connection src = source.connect();
+             Connection dst = target.connect()) {
+            dst.setAutoCommit(false);
+            deleteAccount(dst, username);   // leftovers of an interrupted run
+            try (PreparedStatement read = src.prepareStatement(
+                    "SELECT salt, password_hash, balance, tier FROM users WHERE username = ?");
+                 PreparedStatement ins = dst.prepareStatement(
+                         "INSERT INTO users (username, salt, password_hash, balance, tier) VALUES (?, ?, ?, ?, ?)")) {
+                read.setString(1, username);
+                ResultSet rs = read.executeQuery();
+                if (!rs.next()) {
+                    dst.rollback();
+                    return 0;
+                }
+                ins.setString(1, username);
+                ins.setBytes(2, rs.getBytes(1));
+                ins.setBytes(3, rs.getBytes(2));
+                ins.setDouble(4, rs.getDouble(3));
+                ins.setString(5, rs.getString(4));
+                ins.executeUpdate();
+            }
+            try (PreparedStatement read = src.prepareStatement(
+                    "SELECT timestamp, action, prev_hash, hash FROM transactions WHERE username = ? ORDER BY id ASC");
+                 PreparedStatement ins = dst.prepareStatement(
+                         "INSERT INTO transactions (username, timestamp, action, prev_hash, hash) VALUES (?, ?, ?, ?, ?)")) {
+                read.setString(1, username);
+                ResultSet rs = read.executeQuery();
+                while (rs.next()) {
+                    ins.setString(1, username);
+                    ins.setString(2, rs.getString(1));
+                    ins.setString(3, rs.getString(2));
+                    ins.setString(4, rs.getString(3));
+                    ins.setString(5, rs.getString(4));
+                    if (rs.getString(4) != null) tail = rs.getString(4);
+                    ins.addBatch();
+                    if (++copied % 1000 == 0) ins.executeBatch();
+                }
+                ins.executeBatch();
+            }
+            dst.commit();
+
+            src.setAutoCommit(false);
+            deleteAccount(src, username);
+            src.commit();
+        }
+        LedgerAnchors.of(target.getUrl()).record(username, tail);
+        LedgerAnchors.of(source.getUrl()).forget(username);
+        target.checkpoint(username);
+        return copied;
+    }
+
+    private static void deleteAccount(Connection conn, String username) throws SQLException {
+        String[] sql = {
+                "DELETE FROM ledger_checkpoints WHERE username = ?",
+                "DELETE FROM transactions WHERE username = ?",
+                "DELETE FROM users WHERE username = ?"
+        };
+        for (String s : sql) {
+            try (PreparedStatement ps = conn.prepareStatement(s)) {
+                ps.setString(1, username);
+                ps.executeUpdate();
+            }
+        }
+    }
+}
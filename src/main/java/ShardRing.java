@@ -0,0 +1,64 @@
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Consistent hashing of usernames onto shards 0..n-1.
+ *
+ * Every shard owns {@link #VNODES} points on a 64-bit ring (hashes of
+ * "shard-i#v"); a username belongs to the first point at or after its own
+ * hash. Going from n to n+1 shards therefore only moves about 1/(n+1) of
+ * the accounts, all of them onto the new shard.
+ */
+public class ShardRing {
+
+    static final int VNODES = 128;
+
+    private final int shards;
+    private final long[] points;   // sorted
+    private final int[] owners;    // owners[i] owns points[i]
+
+    public ShardRing(int shards) {
+        if (shards < 1) throw new IllegalArgumentException("Need at least one shard");
+        this.shards = shards;
+        long[][] pairs = new long[shards * VNODES][];
+        int k = 0;
+        for (int s = 0; s < shards; s++) {
+            for (int v = 0; v < VNODES; v++) pairs[k++] = new long[]{hash("shard-" + s + "#" + v), s};
+        }
+        Arrays.sort(pairs, (a, b) -> Long.compare(a[0], b[0]));
+        points = new long[pairs.length];
+        owners = new int[pairs.length];
+        for (int i = 0; i < pairs.length; i++) {
+            points[i] = pairs[i][0];
+            owners[i] = (int) pairs[i][1];
+        }
+    }
+
+    public int size() {
+        return shards;
+    }
+
+    /** Shard of the account (usernames are case-insensitive). */
+    public int shardOf(String username) {
+        long h = hash(username.toLowerCase(Locale.ROOT));
+        int i = Arrays.binarySearch(points, h);
+        if (i < 0) i = -i - 1;
+        if (i == points.length) i = 0;   // wrap around
+        return owners[i];
+    }
+
+    // First 8 bytes of MD5: spread well, and stable across JVMs and versions
+    static long hash(String key) {
+        try {
+            byte[] d = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            long h = 0;
+            for (int i = 0; i < 8; i++) h = (h << 8) | (d[i] & 0xff);
+            return h;
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Hashing error", e);
+        }
+    }
+}
@@ -0,0 +1,372 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.UUID;
+
+/**
+ * Spreads accounts over several SQLite files ({@code shard-0.db} ..
+ * {@code shard-<n-1>.db}) so that writes to different accounts don't all
+ * wait for the one file lock. {@link ShardRing} picks the shard of each
+ * username; every shard has its own {@link ConnectionPool} and runs in WAL
+ * mode.
+ *
+ * The shard count is stored in {@code shards.properties} next to the files
+ * and wins over -Dvaultx.shards once it exists; change it with
+ * {@link ShardRebalancer}, which also moves the affected accounts.
+ *
+ * Transfers between accounts on the same shard are one transaction. Across
+ * shards they run in three steps, each a local transaction:
+ * <ol>
+ *   <li>sender's shard: debit, ledger row, {@code transfers_out} row PENDING</li>
+ *   <li>recipient's shard: credit and ledger row, unless {@code transfers_in}
+ *       already has the transfer id (so the step can be repeated safely)</li>
+ *   <li>sender's shard: mark DONE, or, if the credit was refused, refund and
+ *       mark REFUNDED</li>
+ * </ol>
+ * A transfer interrupted after step 1 stays PENDING and is finished by
+ * {@link #recoverTransfers()} the next time the store is opened.
+ */
+public class ShardedStore implements Store {
+
+    static final String COUNT_FILE = "shards.properties";
+
+    private final Path dir;
+    private final int requestedShards;
+    private final int poolSize;
+    private ShardRing ring;
+    private SqliteStore[] shards;
+
+    public ShardedStore(Path dir, int shards, int poolSize) {
+        this.dir = dir;
+        this.requestedShards = shards;
+        this.poolSize = poolSize;
+    }
+
+    @Override
+    public String name() {
+        return "sharded";
+    }
+
+    @Override
+    public void init() {
+        try {
+            Files.createDirectories(dir);
+            Properties p = readConfig(dir);
+            if (p.getProperty("rebalancing") != null) {
+                throw new IllegalStateException("Rebalance to " + p.getProperty("rebalancing")
+                        + " shards not finished in " + dir + "; run ShardRebalancer again");
+            }
+            int n = p.getProperty("count") != null ? Integer.parseInt(p.getProperty("count")) : requestedShards;
+            if (p.getProperty("count") == null) {
+                p.setProperty("count", Integer.toString(n));
+                writeConfig(dir, p);
+            }
+            ring = new ShardRing(n);
+            shards = new SqliteStore[n];
+            for (int i = 0; i < n; i++) shards[i] = openShard(dir, i, poolSize);
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't open shards in " + dir, e);
+        }
+        int finished = recoverTransfers();
+        if (finished > 0) EventLog.event(EventLog.Type.STORE, null, "ShardedStore: finished " + finished + " interrupted transfer(s)");
+    }
+
+    @Override
+    public void close() {
+        if (shards == null) return;
+        for (SqliteStore s : shards) s.close();
+    }
+
+    public int shardCount() {
+        return shards.length;
+    }
+
+    public int shardOf(String username) {
+        return ring.shardOf(username);
+    }
+
+    private SqliteStore shardFor(String username) {
+        return shards[ring.shardOf(username)];
+    }
+
+    /* ========= Routing ========= */
+
+    @Override
+    public User loadUser(String username) {
+        return shardFor(username).loadUser(username);
+    }
+
+    @Override
+    public boolean saveUser(User u) {
+        return shardFor(u.getUsername()).saveUser(u);
+    }
+
+    @Override
+    public List<String> usernames() {
+        List<String> names = new ArrayList<>();
+        for (SqliteStore s : shards) names.addAll(s.usernames());
+        Collections.sort(names);
+        return names;
+    }
+
+    @Override
+    public long append(String username, String timestamp, String action, String prevHash, String hash) {
+        return shardFor(username).append(username, timestamp, action, prevHash, hash);
+    }
+
+    /** An account and its ledger share a shard, so a batch stays one local transaction. */
+    @Override
+    public boolean postBatch(User u, String timestamp, List<String> actions, String prevHash, List<String> hashes) {
+        return shardFor(u.getUsername()).postBatch(u, timestamp, actions, prevHash, hashes);
+    }
+
+    @Override
+    public double post(String username, double delta, boolean guarded, String timestamp,
+                       List<String> actions, String prevHash, List<String> hashes) {
+        return shardFor(username).post(username, delta, guarded, timestamp, actions, prevHash, hashes);
+    }
+
+    /** Split by shard; each shard applies its part as one local transaction. */
+    @Override
+    public int adjust(String timestamp, List<Adjustment> batch) {
+        List<List<Adjustment>> parts = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) parts.add(new ArrayList<>());
+        for (Adjustment a : batch) parts.get(ring.shardOf(a.getUsername())).add(a);
+        int applied = 0;
+        for (int i = 0; i < shards.length; i++) {
+            if (!parts.get(i).isEmpty()) applied += shards[i].adjust(timestamp, parts.get(i));
+        }
+        return applied;
+    }
+
+    @Override
+    public String lastHash(String username) {
+        return shardFor(username).lastHash(username);
+    }
+
+    @Override
+    public List<LedgerEntry> since(String username, String since) {
+        return shardFor(username).since(username, since);
+    }
+
+    @Override
+    public List<LedgerEntry> afterId(String username, long afterId) {
+        return shardFor(username).afterId(username, afterId);
+    }
+
+    @Override
+    public void checkpoint(String username) {
+        shardFor(username).checkpoint(username);
+    }
+
+    /* ========= Transfers ========= */
+
+    @Override
+    public String transfer(String from, String to, double amount, String timestamp) {
+        String src = from.toLowerCase(Locale.ROOT);
+        String dst = to.toLowerCase(Locale.ROOT);
+        int a = ring.shardOf(src);
+        int b = ring.shardOf(dst);
+        if (a == b) return shards[a].transfer(src, dst, amount, timestamp);
+        if (shards[b].loadUser(dst) == null) return "Recipient not found or can't receive that much.";
+
+        // 1) Debit and remember the transfer on the sender's shard
+        String id = UUID.randomUUID().toString();
+        try (Connection conn = shards[a].connect()) {
+            conn.setAutoCommit(false);
+            String err = SqliteStore.debit(conn, src, amount);
+            if (err != null) {
+                conn.rollback();
+                return err;
+            }
+            String tail = SqliteStore.appendChained(conn, src, timestamp, "Transfer to " + dst + ": $" + AtmService.fmt(amount));
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "INSERT INTO transfers_out (id, from_user, to_user, amount, timestamp, state) VALUES (?, ?, ?, ?, ?, 'PENDING')")) {
+                ps.setString(1, id);
+                ps.setString(2, src);
+                ps.setString(3, dst);
+                ps.setDouble(4, amount);
+                ps.setString(5, timestamp);
+                ps.executeUpdate();
+            }
+            conn.commit();
+            LedgerAnchors.of(shards[a].getUrl()).record(src, tail);
+        } catch (SQLException e) {
+            EventLog.error("ShardedStore.transfer", e);
+            return "Transfer failed, nothing was moved.";
+        }
+
+        // 2) + 3)
+        String state = complete(a, id, src, dst, amount, timestamp);
+        if (state.equals("REFUNDED")) return "Recipient can't receive that much; the amount was returned.";
+        if (state.equals("PENDING")) EventLog.event(EventLog.Type.STORE, src, "ShardedStore: transfer " + id + " is pending, will retry on next open");
+        return null;
+    }
+
+    /**
+     * Finishes every PENDING cross-shard transfer. Safe to run any number
+     * of times; returns how many were finished.
+     */
+    public int recoverTransfers() {
+        int finished = 0;
+        for (int a = 0; a < shards.length; a++) {
+            List<Object[]> pending = new ArrayList<>();
+            try (Connection conn = shards[a].connect();
+                 Statement st = conn.createStatement()) {
+                ResultSet rs = st.executeQuery(
+                        "SELECT id, from_user, to_user, amount, timestamp FROM transfers_out WHERE state = 'PENDING'");
+                while (rs.next()) {
+                    pending.add(new Object[]{rs.getString(1), rs.getString(2), rs.getString(3), rs.getDouble(4), rs.getString(5)});
+                }
+            } catch (SQLException e) {
+                EventLog.error("ShardedStore.recoverTransfers", e);
+                continue;
+            }
+            for (Object[] t : pending) {
+                if (!complete(a, (String) t[0], (String) t[1], (String) t[2], (Double) t[3], (String) t[4]).equals("PENDING")) {
+                    finished++;
+                }
+            }
+        }
+        return finished;
+    }
+
+    // Steps 2 and 3; returns DONE, REFUNDED or PENDING (a shard was unreachable)
+    private String complete(int a, String id, String src, String dst, double amount, String timestamp) {
+        String outcome;
+        SqliteStore target = shards[ring.shardOf(dst)];
+        try (Connection conn = target.connect()) {
+            conn.setAutoCommit(false);
+            boolean applied;
+            try (PreparedStatement ps = conn.prepareStatement("SELECT 1 FROM transfers_in WHERE id = ?")) {
+                ps.setString(1, id);
+                applied = ps.executeQuery().next();
+            }
+            if (applied) {
+                conn.rollback();
+                outcome = "DONE";
+            } else if (SqliteStore.credit(conn, dst, amount) != null) {
+                conn.rollback();
+                outcome = "REFUNDED";
+            } else {
+                String tail = SqliteStore.appendChained(conn, dst, timestamp, "Transfer from " + src + ": $" + AtmService.fmt(amount));
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "INSERT INTO transfers_in (id, from_user, amount) VALUES (?, ?, ?)")) {
+                    ps.setString(1, id);
+                    ps.setString(2, src);
+                    ps.setDouble(3, amount);
+                    ps.executeUpdate();
+                }
+                conn.commit();
+                LedgerAnchors.of(target.getUrl()).record(dst, tail);
+                outcome = "DONE";
+            }
+        } catch (SQLException e) {
+            EventLog.error("ShardedStore.complete", e);
+            return "PENDING";
+        }
+
+        String refundTail = null;
+        try (Connection conn = shards[a].connect()) {
+            conn.setAutoCommit(false);
+            int closed;
+            // Only a PENDING row is closed, so a repeated step 3 can't refund twice
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "UPDATE transfers_out SET state = ? WHERE id = ? AND state = 'PENDING'")) {
+                ps.setString(1, outcome);
+                ps.setString(2, id);
+                closed = ps.executeUpdate();
+            }
+            if (closed == 1 && outcome.equals("REFUNDED")) {
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "UPDATE users SET balance = balance + ? WHERE username = ?")) {
+                    ps.setDouble(1, amount);
+                    ps.setString(2, src);
+                    ps.executeUpdate();
+                }
+                refundTail = SqliteStore.appendChained(conn, src, timestamp,
+                        "Transfer refund from " + dst + ": $" + AtmService.fmt(amount));
+            }
+            conn.commit();
+            if (refundTail != null) LedgerAnchors.of(shards[a].getUrl()).record(src, refundTail);
+        } catch (SQLException e) {
+            EventLog.error("ShardedStore.complete", e);
+            return "PENDING";
+        }
+        return outcome;
+    }
+
+    /* ========= Shard files ========= */
+
+    static String urlOf(Path dir, int shard) {
+        return "jdbc:sqlite:" + dir.resolve("shard-" + shard + ".db");
+    }
+
+    /** Opens (creating if needed) one shard file with its own pool. */
+    static SqliteStore openShard(Path dir, int shard, int poolSize) {
+        String url = urlOf(dir, shard);
+        SqliteStore s = new SqliteStore(url, new ConnectionPool(url, poolSize));
+        s.init();
+        try (Connection conn = s.connect();
+             Statement st = conn.createStatement()) {
+            // Readers don't block the writer; the setting sticks to the file
+            st.execute("PRAGMA journal_mode = WAL");
+            st.execute("CREATE TABLE IF NOT EXISTS transfers_out (" +
+                    "id TEXT PRIMARY KEY," +
+                    "from_user TEXT NOT NULL," +
+                    "to_user TEXT NOT NULL," +
+                    "amount REAL NOT NULL," +
+                    "timestamp TEXT NOT NULL," +
+                    "state TEXT NOT NULL" +
+                    ");");
+            st.execute("CREATE TABLE IF NOT EXISTS transfers_in (" +
+                    "id TEXT PRIMARY KEY," +
+                    "from_user TEXT NOT NULL," +
+                    "amount REAL NOT NULL" +
+                    ");");
+            st.execute("CREATE INDEX IF NOT EXISTS idx_transfers_out_state ON transfers_out(state)");
+        } catch (SQLException e) {
+            EventLog.error("ShardedStore.openShard", e);
+        }
+        return s;
+    }
+
+    static Properties readConfig(Path dir) throws IOException {
+        Properties p = new Properties();
+        Path f = dir.resolve(COUNT_FILE);
+        if (Files.exists(f)) {
+            try (Reader r = Files.newBufferedReader(f, StandardCharsets.UTF_8)) {
+                p.load(r);
+            }
+        }
+        return p;
+    }
+
+    // Written to a temp file and moved into place, so it is never half written
+    static void writeConfig(Path dir, Properties p) throws IOException {
+        Path tmp = dir.resolve(COUNT_FILE + ".tmp");
+        try (Writer w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            p.store(w, "VAULT-X shard layout (change with ShardRebalancer)");
+        }
+        Files.move(tmp, dir.resolve(COUNT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public String toString() {
+        return "ShardedStore[" + dir + ", " + (shards == null ? requestedShards : shards.length) + " shards]";
+    }
+}
@@ -0,0 +1,450 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The SQLite backend: the {@code users} and {@code transactions} tables
+ * created by {@link DBHelper#initializeDatabase(String)}. Opens a
+ * connection per call, as the app always has, unless it is given a
+ * {@link ConnectionPool}.
+ */
+public class SqliteStore implements Store {
+
+    private final String url;
+    private final ConnectionPool pool;   // null = connection per call
+
+    public SqliteStore(String url) {
+        this(url, null);
+    }
+
+    public SqliteStore(String url, ConnectionPool pool) {
+        this.url = url;
+        this.pool = pool;
+    }
+
+    Connection connect() throws SQLException {
+        return pool != null ? pool.get() : DBHelper.connect(url);
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    @Override
+    public String name() {
+        return "sqlite";
+    }
+
+    @Override
+    public void init() {
+        DBHelper.initializeDatabase(url);
+    }
+
+    @Override
+    public void close() {
+        if (pool != null) pool.close();
+    }
+
+    /* ========= Accounts ========= */
+
+    //Load user from SQLite ////////////////////////////////////////////////
+    @Override
+    public User loadUser(String username) {
+        String sql = "SELECT * FROM users WHERE username = ?";
+        try (Connection conn = connect();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, username.toLowerCase());
+            ResultSet rs = pstmt.executeQuery();
+            if (rs.next()) {
+                byte[] salt = rs.getBytes("salt");
+                byte[] hash = rs.getBytes("password_hash");
+                double balance = rs.getDouble("balance");
+                AccountTier tier = AccountTier.fromName(rs.getString("tier"));
+                return new User(username, salt, hash, balance, tier);
+            }
+        } catch (SQLException e) {
+            EventLog.error("SqliteStore.loadUser", e);
+        }
+        return null;
+    }
+
+    //Save/update user to DB///////////////////////////////////////////////////////////////////////////////////////////
+    @Override
+    public boolean saveUser(User u) {
+        String sql = "INSERT OR REPLACE INTO users (username, salt, password_hash, balance, tier) VALUES (?, ?, ?, ?, ?)";
+        try (Connection conn = connect();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, u.getUsername().toLowerCase());
+            pstmt.setBytes(2, u.getSalt());
+            pstmt.setBytes(3, u.getPasswordHash());
+            pstmt.setDouble(4, u.getBalance());
+            pstmt.setString(5, u.getTier().name());
+            pstmt.executeUpdate();
+            return true;
+        } catch (SQLException e) {
+            EventLog.error("SqliteStore.saveUser", e);
+            return false;
+        }
+    }
+
+    @Override
+    public List<String> usernames() {
+        List<String> names = new ArrayList<>();
+        try (Connection conn = connect();
+             Statement st = conn.createStatement()) {
+            ResultSet rs = st.executeQuery("SELECT username FROM users ORDER BY username");
+            while (rs.next()) names.add(rs.getString(1));
+        } catch (SQLException e) {
+            EventLog.error("SqliteStore.usernames", e);
+        }
+        return names;
+    }
+
+    /* ========= Ledger ========= */
+
+    @Override
+    public long append(String username, String timestamp, String action, String prevHash, String hash) {
+        // A chained row goes in only if prevHash is still the tail, checked by the INSERT itself
+        String sql = hash == null
+                ? "INSERT INTO transactions (username, timestamp, action, prev_hash, hash) VALUES (?, ?, ?, ?, ?)"
+                : "INSERT INTO transactions (username, timestamp, action, prev_hash, hash) SELECT ?, ?, ?, ?, ? WHERE "
+                        + TAIL_SQL + " = ?";
+        try (Connection conn = connect();
+             PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            String key = username.toLowerCase(Locale.ROOT);
+            pstmt.setString(1, key);
+            pstmt.setString(2, timestamp);
+            pstmt.setString(3, action);
+            pstmt.setString(4, prevHash);
+            pstmt.setString(5, hash);
+            if (hash != null) {
+                pstmt.setString(6, key);
+                pstmt.setString(7, prevHash == null ? LedgerChain.GENESIS : prevHash);
+            }
+            if (pstmt.executeUpdate() != 1) return -1;   // another writer moved the tail
+            ResultSet keys = pstmt.getGeneratedKeys();
+            if (!keys.next()) return -1;
+            LedgerAnchors.of(url).record(username, hash);
+            return keys.getLong(1);
+        } catch (SQLException e) {
+            // Callers check for -1 and drop their cached chain tail
+            EventLog.error("SqliteStore.append", e);
+            return -1;
+        }
+    }
+
+    @Override
+    public String lastHash(String username) {
+        String sql = "SELECT hash FROM transactions WHERE username = ? AND hash IS NOT NULL ORDER BY id DESC LIMIT 1";
+        try (Connection conn = connect();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, username.toLowerCase(Locale.ROOT));
+            ResultSet rs = ps.executeQuery();
+            if (rs.next()) return rs.getString(1);
+        } catch (SQLException e) {
+            EventLog.error("SqliteStore.lastHash", e);
+        }
+        return null;
+    }
+
+    //Ledger rows since a timestamp (used to rebuild withdrawal limit counters)////////////////////////////////////////////////
+    @Override
+    public List<LedgerEntry> since(String username, String since) {
+        List<LedgerEntry> rows = new ArrayList<>();
+        String sql = "SELECT id, timestamp, action, hash FROM transactions WHERE username = ? AND timestamp >= ? ORDER BY id ASC";
+        try (Connection conn = connect();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, username.toLowerCase());
+            pstmt.setString(2, since);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                rows.add(new LedgerEntry(rs.getLong("id"), username, rs.getString("timestamp"), rs.getString("action"),
+                        rs.getString("hash")));
+            }
+        } catch (SQLException e) {
+            EventLog.error("SqliteStore.since", e);
+        }
+        return rows;
+    }
+
+    //Ledger rows after an id (history, and keeping the search index up to date)/////////////////////////////////////////////
+    @Override
+    public List<LedgerEntry> afterId(String username, long afterId) {
+        List<LedgerEntry> rows = new ArrayList<>();
+        String sql = "SELECT id, timestamp, action, hash FROM transactions WHERE username = ? AND id > ? ORDER BY id ASC";
+        try (Connection conn = connect();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, username.toLowerCase());
+            pstmt.setLong(2, afterId);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                rows.add(new LedgerEntry(rs.getLong("id"), username, rs.getString("timestamp"), rs.getString("action"),
+                        rs.getString("hash")));
+            }
+        } catch (SQLException e) {
+            EventLog.error("SqliteStore.afterId", e);
+        }
+        return rows;
+    }
+
+    //Seal full blocks of the user's ledger with Merkle checkpoints////////////////////////////////////////////////////////////
+    @Override
+    public void checkpoint(String username) {
+        try (Connection conn = connect()) {
+            LedgerChain.checkpoint(conn, username);
+        } catch (SQLException e) {
+            EventLog.error("SqliteStore.checkpoint", e);
+        }
+    }
+
+    /* ========= Batches ========= */
+
+    /** The balance and every row of the batch go in one SQLite transaction. */
+    @Override
+    public boolean postBatch(User u, String timestamp, List<String> actions, String prevHash, List<String> hashes) {
+        String username = u.getUsername().toLowerCase(Locale.ROOT);
+        try (Connection conn = connect()) {
+            conn.setAutoCommit(false);
+            // The UPDATE takes the write lock, so the tail checked after it can't move
+            try (PreparedStatement ps = conn.prepareStatement("UPDATE users SET balance = ? WHERE username = ?")) {
+                ps.setDouble(1, u.getBalance());
+                ps.setString(2, username);
+                if (ps.executeUpdate() != 1 || !isTail(conn, username, prevHash)) {
+                    conn.rollback();
+                    return false;
+                }
+            }
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "INSERT INTO transactions (username, timestamp, action, prev_hash, hash) VALUES (?, ?, ?, ?, ?)")) {
+                String prev = prevHash;
+                for (int i = 0; i < actions.size(); i++) {
+                    ps.setString(1, username);
+                    ps.setString(2, timestamp);
+                    ps.setString(3, actions.get(i));
+                    ps.setString(4, prev);
+                    ps.setString(5, hashes.get(i));
+                    ps.addBatch();
+                    prev = hashes.get(i);
+                }
+                ps.executeBatch();
+            }
+            conn.commit();
+            if (!hashes.isEmpty()) LedgerAnchors.of(url).record(username, hashes.get(hashes.size() - 1));
+            return true;
+        } catch (SQLException e) {
+            EventLog.error("SqliteStore.postBatch", e);
+            return false;
+        }
+    }
+
+    /** The guarded delta UPDATE, the rows and the read-back of the balance are one SQLite transaction. */
+    @Override
+    public double post(String username, double delta, boolean guarded, String timestamp,
+                       List<String> actions, String prevHash, List<String> hashes) {
+        String key = username.toLowerCase(Locale.ROOT);
+        try (Connection conn = connect()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "UPDATE users SET balance = ROUND(balance + ?, 2) WHERE username = ? AND balance + ? BETWEEN ? AND ?")) {
+                ps.setDouble(1, delta);
+                ps.setString(2, key);
+                ps.setDouble(3, delta);
+                ps.setDouble(4, guarded && delta < 0 ? 0 : -Double.MAX_VALUE);
+                ps.setDouble(5, guarded && delta > 0 ? User.MAX_BALANCE : Double.MAX_VALUE);
+                // The UPDATE takes the write lock, so the tail checked after it can't move
+                if (ps.executeUpdate() != 1 || !isTail(conn, key, prevHash)) {
+                    conn.rollback();
+                    return Double.NaN;
+                }
+            }
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "INSERT INTO transactions (username, timestamp, action, prev_hash, hash) VALUES (?, ?, ?, ?, ?)")) {
+                String prev = prevHash;
+                for (int i = 0; i < actions.size(); i++) {
+                    ps.setString(1, key);
+                    ps.setString(2, timestamp);
+                    ps.setString(3, actions.get(i));
+                    ps.setString(4, prev);
+                    ps.setString(5, hashes.get(i));
+                    ps.addBatch();
+                    prev = hashes.get(i);
+                }
+                ps.executeBatch();
+            }
+            double balance;
+            try (PreparedStatement ps = conn.prepareStatement("SELECT balance FROM users WHERE username = ?")) {
+                ps.setString(1, key);
+                ResultSet rs = ps.executeQuery();
+                rs.next();
+                balance = rs.getDouble(1);
+            }
+            conn.commit();
+            if (!hashes.isEmpty()) LedgerAnchors.of(url).record(key, hashes.get(hashes.size() - 1));
+            return balance;
+        } catch (SQLException e) {
+            EventLog.error("SqliteStore.post", e);
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * One transaction per batch: a batched UPDATE guarded on the expected
+     * balance, then the rows of the accounts it matched as one batched
+     * INSERT. The update takes the write lock first, so the tails read
+     * between the two can't move.
+     */
+    @Override
+    public int adjust(String timestamp, List<Adjustment> batch) {
+        for (Adjustment a : batch) a.applied = false;
+        try (Connection conn = connect()) {
+            conn.setAutoCommit(false);
+            int[] counts;
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "UPDATE users SET balance = ? WHERE username = ? AND balance = ?")) {
+                for (Adjustment a : batch) {
+                    ps.setDouble(1, a.getNewBalance());
+                    ps.setString(2, a.getUsername());
+                    ps.setDouble(3, a.getExpectedBalance());
+                    ps.addBatch();
+                }
+                counts = ps.executeBatch();
+            }
+            int applied = 0;
+            try (PreparedStatement tail = conn.prepareStatement(
+                    "SELECT hash FROM transactions WHERE username = ? AND hash IS NOT NULL ORDER BY id DESC LIMIT 1");
+                 PreparedStatement ins = conn.prepareStatement(
+                    "INSERT INTO transactions (username, timestamp, action, prev_hash, hash) VALUES (?, ?, ?, ?, ?)")) {
+                for (int i = 0; i < batch.size(); i++) {
+                    if (counts[i] != 1) continue;
+                    Adjustment a = batch.get(i);
+                    String prev = LedgerChain.GENESIS;
+                    tail.setString(1, a.getUsername());
+                    ResultSet rs = tail.executeQuery();
+                    if (rs.next()) prev = rs.getString(1);
+                    a.prevHash = prev;
+                    a.hashes = new ArrayList<>(a.getActions().size());
+                    for (String action : a.getActions()) {
+                        String hash = LedgerChain.link(prev, a.getUsername(), timestamp, action);
+                        ins.setString(1, a.getUsername());
+                        ins.setString(2, timestamp);
+                        ins.setString(3, action);
+                        ins.setString(4, prev);
+                        ins.setString(5, hash);
+                        ins.addBatch();
+                        a.hashes.add(hash);
+                        prev = hash;
+                    }
+                    applied++;
+                }
+                ins.executeBatch();
+            }
+            conn.commit();
+            LedgerAnchors anchors = LedgerAnchors.of(url);
+            for (int i = 0; i < batch.size(); i++) {
+                Adjustment a = batch.get(i);
+                a.applied = counts[i] == 1;
+                if (a.applied && !a.hashes.isEmpty()) anchors.record(a.getUsername(), a.hashes.get(a.hashes.size() - 1));
+            }
+            return applied;
+        } catch (SQLException e) {
+            EventLog.error("SqliteStore.adjust", e);
+            return 0;
+        }
+    }
+
+    /* ========= Transfers ========= */
+
+    /** Both accounts live in this file, so the whole transfer is one SQLite transaction. */
+    @Override
+    public String transfer(String from, String to, double amount, String timestamp) {
+        String src = from.toLowerCase(Locale.ROOT);
+        String dst = to.toLowerCase(Locale.ROOT);
+        try (Connection conn = connect()) {
+            conn.setAutoCommit(false);
+            String err = debit(conn, src, amount);
+            if (err == null) err = credit(conn, dst, amount);
+            if (err != null) {
+                conn.rollback();
+                return err;
+            }
+            String srcTail = appendChained(conn, src, timestamp, "Transfer to " + dst + ": $" + AtmService.fmt(amount));
+            String dstTail = appendChained(conn, dst, timestamp, "Transfer from " + src + ": $" + AtmService.fmt(amount));
+            conn.commit();
+            LedgerAnchors.of(url).record(src, srcTail);
+            LedgerAnchors.of(url).record(dst, dstTail);
+            return null;
+        } catch (SQLException e) {
+            EventLog.error("SqliteStore.transfer", e);
+            return "Transfer failed, nothing was moved.";
+        }
+    }
+
+    // Takes amount off the balance if it is there; returns the rejection or null
+    static String debit(Connection conn, String username, double amount) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "UPDATE users SET balance = balance - ? WHERE username = ? AND balance >= ?")) {
+            ps.setDouble(1, amount);
+            ps.setString(2, username);
+            ps.setDouble(3, amount);
+            return ps.executeUpdate() == 1 ? null : "Insufficient balance.";
+        }
+    }
+
+    // Adds amount unless the account is missing or would go over User.MAX_BALANCE
+    static String credit(Connection conn, String username, double amount) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "UPDATE users SET balance = balance + ? WHERE username = ? AND balance + ? <= ?")) {
+            ps.setDouble(1, amount);
+            ps.setString(2, username);
+            ps.setDouble(3, amount);
+            ps.setDouble(4, User.MAX_BALANCE);
+            if (ps.executeUpdate() == 1) return null;
+        }
+        return "Recipient not found or can't receive that much.";
+    }
+
+    // Appends a row chained to the account's newest one, inside the caller's transaction;
+    // returns its hash, to anchor once the transaction commits
+    // The account's chain tail as an SQL expression of one parameter (the username)
+    private static final String TAIL_SQL = "COALESCE((SELECT hash FROM transactions WHERE username = ? AND hash IS NOT NULL"
+            + " ORDER BY id DESC LIMIT 1), '" + LedgerChain.GENESIS + "')";
+
+    static String tail(Connection conn, String username) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT " + TAIL_SQL)) {
+            ps.setString(1, username);
+            ResultSet rs = ps.executeQuery();
+            rs.next();
+            return rs.getString(1);
+        }
+    }
+
+    // Whether rows chained to prevHash still fit: another process may have written since the caller read its tail
+    static boolean isTail(Connection conn, String username, String prevHash) throws SQLException {
+        return tail(conn, username).equals(prevHash == null ? LedgerChain.GENESIS : prevHash);
+    }
+
+    static String appendChained(Connection conn, String username, String timestamp, String action) throws SQLException {
+        String prev = tail(conn, username);
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO transactions (username, timestamp, action, prev_hash, hash) VALUES (?, ?, ?, ?, ?)")) {
+            ps.setString(1, username);
+            ps.setString(2, timestamp);
+            ps.setString(3, action);
+            ps.setString(4, prev);
+            String hash = LedgerChain.link(prev, username, timestamp, action);
+            ps.setString(5, hash);
+            ps.executeUpdate();
+            return hash;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SqliteStore[" + url + "]";
+    }
+}
@@ -0,0 +1,213 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The receiving end of {@link LogShipper}: applies shipped frames to a
+ * store of its own, chosen with the usual -Dvaultx.store / -Dvaultx.db.url /
+ * -Dvaultx.journal properties.
+ * <pre>
+ *   java Standby listen &lt;port&gt;          apply frames from the primary until promoted
+ *   java Standby replay &lt;frames-file&gt;   apply a file:... shipping log (e.g. after losing the primary)
+ *   java Standby promote &lt;host:port&gt;    tell a listening standby to stop and take over
+ * </pre>
+ * A shipped row is appended only when its prev_hash is the standby's
+ * current tail of the account. Rows it already has are skipped quietly;
+ * rows that don't fit are counted and reported back, and the primary then
+ * resyncs. After promote (or replay) the store is complete up to the last
+ * frame received; start the app against it to make it the primary.
+ *
+ * listen binds to the loopback address unless -Dvaultx.standby.bind names
+ * another one (e.g. the address the primary reaches it on). Frames and
+ * promote requests must carry the HMAC of the primary's standby key (see
+ * {@link LogShipper}); copy that file here first. Frames from an earlier
+ * run of the primary than the one already seen are ignored, so old traffic
+ * can't be played back over newer rows.
+ */
+public class Standby {
+
+    private final Store store;
+    private long epoch = -1;
+    private long lastSeq;
+    private long applied;
+    private long duplicates;
+    private long skipped;
+    // Hashes per account, loaded the first time a row doesn't fit the tail
+    private final Map<String, Set<String>> knownHashes = new HashMap<>();
+
+    public Standby(Store store) {
+        this.store = store;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: java Standby listen <port> | replay <frames-file> | promote <host:port>");
+            return;
+        }
+        switch (args[0]) {
+            case "promote":
+                LogShipper.key(false);
+                sendPromote(args[1]);
+                return;
+            case "listen":
+            case "replay":
+                break;
+            default:
+                System.out.println("Unknown command: " + args[0]);
+                return;
+        }
+
+        LogShipper.key(false);   // the primary's key, copied here; never a fresh one
+        // Never wrap the standby's own store in another ReplicatedStore
+        Store store = Stores.open(System.getProperty("vaultx.store", "sqlite"));
+        store.init();
+        Standby standby = new Standby(store);
+        if (args[0].equals("listen")) standby.listen(Integer.parseInt(args[1]));
+        else standby.replay(args[1]);
+        store.close();
+        System.out.println("Standby store " + store + " is ready to serve as the primary.");
+    }
+
+    /* ========= Modes ========= */
+
+    private void listen(int port) throws IOException {
+        String bind = System.getProperty("vaultx.standby.bind");
+        InetAddress address = bind == null ? InetAddress.getLoopbackAddress() : InetAddress.getByName(bind);
+        try (ServerSocket server = new ServerSocket(port, 50, address)) {
+            System.out.println("Standby listening on " + address.getHostAddress() + ":" + port + ", applying to " + store);
+            while (true) {
+                try (Socket socket = server.accept()) {
+                    socket.setTcpNoDelay(true);
+                    DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                    LogShipper.Frame f;
+                    while ((f = LogShipper.readFrame(in)) != null) {
+                        if (f.count == LogShipper.PROMOTE) {
+                            out.writeLong(lastSeq);
+                            out.writeLong(skipped);
+                            out.flush();
+                            System.out.println("Promoted. " + status());
+                            return;
+                        }
+                        apply(f);
+                        out.writeLong(lastSeq);
+                        out.writeLong(skipped);
+                        out.flush();
+                    }
+                } catch (IOException e) {
+                    // The primary reconnects and resends whatever was not acknowledged
+                    System.out.println("Standby: connection lost (" + e.getMessage() + "). " + status());
+                }
+            }
+        }
+    }
+
+    private void replay(String file) throws IOException {
+        long t0 = System.currentTimeMillis();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(file))))) {
+            LogShipper.Frame f;
+            while ((f = LogShipper.readFrame(in)) != null) apply(f);
+        } catch (EOFException e) {
+            System.out.println("Standby: last frame is incomplete and was ignored");
+        }
+        System.out.println("Replayed " + file + " in " + (System.currentTimeMillis() - t0) + " ms. " + status());
+    }
+
+    private static void sendPromote(String hostPort) throws IOException {
+        int colon = hostPort.lastIndexOf(':');
+        try (Socket socket = new Socket(hostPort.substring(0, colon), Integer.parseInt(hostPort.substring(colon + 1)))) {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.write(LogShipper.frame(0, 0, LogShipper.PROMOTE, new byte[0]));
+            out.flush();
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            System.out.println("Standby promoted at seq " + in.readLong() + " (" + in.readLong() + " skipped rows)");
+        }
+    }
+
+    /* ========= Applying ========= */
+
+    void apply(LogShipper.Frame f) throws IOException {
+        if (f.epoch < epoch) {
+            System.out.println("Standby: ignored a frame from an earlier run of the primary (seq " + f.firstSeq + ")");
+            return;
+        }
+        if (f.epoch != epoch) {
+            // The primary restarted; its sequence starts again at 1
+            epoch = f.epoch;
+            lastSeq = 0;
+        } else if (f.firstSeq > lastSeq + 1) {
+            System.out.println("Standby: records " + (lastSeq + 1) + ".." + (f.firstSeq - 1) + " never arrived");
+        }
+        List<LogShipper.Record> records = LogShipper.decode(f.raw, f.firstSeq, f.count);
+        for (LogShipper.Record r : records) {
+            if (r.seq <= lastSeq) {
+                duplicates++;
+                continue;
+            }
+            if (r.kind == 'U') {
+                store.saveUser(new User(r.username, r.salt, r.passwordHash, r.balance, AccountTier.fromName(r.tier)));
+                applied++;
+            } else {
+                applyRow(r);
+            }
+            lastSeq = r.seq;
+        }
+    }
+
+    private void applyRow(LogShipper.Record r) {
+        String tail = store.lastHash(r.username);
+        if (r.hash == null) {
+            // Unchained row from before hashing: place it by position
+            long have = store.afterId(r.username, 0).size();
+            if (tail == null && have == r.ordinal) {
+                store.append(r.username, r.timestamp, r.action, null, null);
+                applied++;
+            } else if (have > r.ordinal) {
+                duplicates++;
+            } else {
+                skipped++;
+            }
+            return;
+        }
+        String expected = tail == null ? LedgerChain.GENESIS : tail;
+        String prev = r.prevHash == null ? LedgerChain.GENESIS : r.prevHash;
+        if (prev.equals(expected)) {
+            store.append(r.username, r.timestamp, r.action, r.prevHash, r.hash);
+            Set<String> known = knownHashes.get(r.username);
+            if (known != null) known.add(r.hash);
+            applied++;
+        } else if (r.hash.equals(tail) || hasRow(r.username, r.hash)) {
+            duplicates++;
+        } else {
+            skipped++;
+        }
+    }
+
+    // Only reached for rows that don't fit the tail, i.e. during a resync
+    private boolean hasRow(String username, String hash) {
+        return knownHashes.computeIfAbsent(username, u -> {
+            Set<String> set = new HashSet<>();
+            for (LedgerEntry e : store.afterId(u, 0)) {
+                if (e.getHash() != null) set.add(e.getHash());
+            }
+            return set;
+        }).contains(hash);
+    }
+
+    String status() {
+        return "applied " + applied + ", duplicates " + duplicates + ", skipped " + skipped + ", last seq " + lastSeq;
+    }
+}
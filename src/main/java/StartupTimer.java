@@ -0,0 +1,55 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Records how long each startup phase took, measured from JVM start, so
+ * time-to-first-frame can be tracked across kiosk hardware.
+ *
+ * Each finished startup appends one line to {@code ~/.vaultx_startup.log}
+ * (override with -Dvaultx.startup.log=path):
+ * <pre>2026-10-19T09:12:03 jvm->start()=412ms first-frame=530ms schema=610ms ...</pre>
+ */
+public class StartupTimer {
+
+    private final long jvmStartMillis = ManagementFactory.getRuntimeMXBean().getStartTime();
+    private final List<String> phases = new ArrayList<>();
+
+    /** Marks the end of a phase. Safe to call from any thread. */
+    public synchronized long mark(String phase) {
+        long ms = System.currentTimeMillis() - jvmStartMillis;
+        phases.add(phase + "=" + ms + "ms");
+        return ms;
+    }
+
+    public synchronized String report() {
+        return String.join(" ", phases);
+    }
+
+    /** Prints the phases and appends them to the startup log. Does file I/O: keep it off the FX thread. */
+    public void finish() {
+        String line = LocalDateTime.now().withNano(0) + " " + report();
+        System.out.println("Startup: " + line);
+        Path log = Paths.get(System.getProperty("vaultx.startup.log",
+                Paths.get(System.getProperty("user.home"), ".vaultx_startup.log").toString()));
+        try {
+            Files.write(log, (line + System.lineSeparator()).getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            EventLog.error("StartupTimer.finish", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "StartupTimer[%s]", report());
+    }
+}
@@ -0,0 +1,146 @@
+import java.util.List;
+
+/**
+ * A storage backend: accounts plus their ledger. Pick one with
+ * {@link Stores#fromConfig()}.
+ */
+public interface Store extends AccountStore, LedgerStore {
+
+    /** Short name, as used for -Dvaultx.store. */
+    String name();
+
+    /** Creates / opens whatever the backend needs. Call once before use. */
+    void init();
+
+    /** Flushes and releases files; the store can't be used afterwards. */
+    default void close() {
+    }
+
+    /**
+     * Moves amount from one account to another and writes a chained ledger
+     * row on each side. Returns the reason it was refused, or null.
+     *
+     * This default is a plain sequence of loads, saves and appends under the
+     * store's own lock (the one {@link #post} takes), with no atomicity if a
+     * write fails part way; backends that can do better override it.
+     */
+    default String transfer(String from, String to, double amount, String timestamp) {
+        synchronized (this) {
+            return transferLocked(from, to, amount, timestamp);
+        }
+    }
+
+    private String transferLocked(String from, String to, double amount, String timestamp) {
+        User src = loadUser(from);
+        User dst = loadUser(to);
+        if (src == null || dst == null) return "Recipient not found or can't receive that much.";
+        if (!src.withdraw(amount)) return "Insufficient balance.";
+        if (!dst.deposit(amount)) return "Recipient not found or can't receive that much.";
+        if (!saveUser(src)) return "Transfer failed, nothing was moved.";
+        if (!saveUser(dst)) {
+            // Put the money back rather than leave it nowhere
+            src.deposit(amount);
+            saveUser(src);
+            return "Transfer failed, nothing was moved.";
+        }
+        String a = from.toLowerCase(java.util.Locale.ROOT);
+        String b = to.toLowerCase(java.util.Locale.ROOT);
+        appendChained(a, timestamp, "Transfer to " + b + ": $" + AtmService.fmt(amount));
+        appendChained(b, timestamp, "Transfer from " + a + ": $" + AtmService.fmt(amount));
+        return null;
+    }
+
+    /**
+     * Saves the account and appends rows the caller has already chained:
+     * the first links to prevHash, each next one to the row before it.
+     * Returns false if anything failed, or if prevHash is no longer the
+     * account's newest hash (see {@link LedgerStore#append}).
+     *
+     * This default saves and appends one by one; backends that can write it
+     * all as one transaction override it.
+     */
+    default boolean postBatch(User u, String timestamp, List<String> actions, String prevHash, List<String> hashes) {
+        String username = u.getUsername().toLowerCase(java.util.Locale.ROOT);
+        String prev = prevHash;
+        for (int i = 0; i < actions.size(); i++) {
+            if (append(username, timestamp, actions.get(i), prev, hashes.get(i)) < 0) return false;
+            prev = hashes.get(i);
+        }
+        return saveUser(u);
+    }
+
+    /**
+     * Adds delta to the account's stored balance and appends rows the caller
+     * has already chained (the first links to prevHash), as one unit. When
+     * guarded, a debit must leave the balance at 0 or more and a credit at
+     * most {@link User#MAX_BALANCE}; postings whose cash has already changed
+     * hands (the offline outbox) are not guarded. Returns the balance stored
+     * afterwards, or NaN if nothing was written; that includes prevHash no
+     * longer being the account's newest hash, which the caller tells apart
+     * by reading {@link #lastHash} again.
+     *
+     * Working on the stored balance rather than a session's copy keeps any
+     * credit that arrived meanwhile (a transfer in, end-of-day interest).
+     * This default loads, checks and posts under the store's own lock;
+     * backends that can do it in one database transaction override it.
+     */
+    default double post(String username, double delta, boolean guarded, String timestamp,
+                        List<String> actions, String prevHash, List<String> hashes) {
+        synchronized (this) {
+            User u = loadUser(username);
+            if (u == null) return Double.NaN;
+            double balance = Math.round((u.getBalance() + delta) * 100) / 100.0;
+            if (guarded && (delta < 0 ? balance < 0 : balance > User.MAX_BALANCE)) return Double.NaN;
+            User next = new User(u.getUsername(), u.getSalt(), u.getPasswordHash(), balance, u.getTier());
+            return postBatch(next, timestamp, actions, prevHash, hashes) ? balance : Double.NaN;
+        }
+    }
+
+    /**
+     * Applies bank-side balance changes, each only if the account still has
+     * the balance it was computed from, and writes their ledger rows chained
+     * to each account's newest row. Marks every adjustment applied or not
+     * and returns how many were.
+     *
+     * This default loads, checks and posts one account at a time under the
+     * store's own lock (the one {@link #post} takes), so a session's posting
+     * can't land between the check and the write; backends that can guard
+     * the update in the database override it.
+     */
+    default int adjust(String timestamp, List<Adjustment> batch) {
+        int applied = 0;
+        for (Adjustment a : batch) {
+            synchronized (this) {
+                if (adjustLocked(timestamp, a)) applied++;
+            }
+        }
+        return applied;
+    }
+
+    private boolean adjustLocked(String timestamp, Adjustment a) {
+        a.applied = false;
+        User u = loadUser(a.getUsername());
+        if (u == null || u.getBalance() != a.getExpectedBalance()) return false;
+        String prev = lastHash(a.getUsername());
+        if (prev == null) prev = LedgerChain.GENESIS;
+        List<String> hashes = new java.util.ArrayList<>(a.getActions().size());
+        String link = prev;
+        for (String action : a.getActions()) {
+            link = LedgerChain.link(link, a.getUsername(), timestamp, action);
+            hashes.add(link);
+        }
+        User next = new User(a.getUsername(), u.getSalt(), u.getPasswordHash(), a.getNewBalance(), u.getTier());
+        if (!postBatch(next, timestamp, a.getActions(), prev, hashes)) return false;
+        a.applied = true;
+        a.prevHash = prev;
+        a.hashes = hashes;
+        return true;
+    }
+
+    /** Appends a row linked to the account's newest one (see {@link LedgerChain}). */
+    default long appendChained(String username, String timestamp, String action) {
+        String prev = lastHash(username);
+        if (prev == null) prev = LedgerChain.GENESIS;
+        return append(username, timestamp, action, prev, LedgerChain.link(prev, username, timestamp, action));
+    }
+}
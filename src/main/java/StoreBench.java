@@ -0,0 +1,300 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Runs the same conformance checks and a small performance run against
+ * every storage backend, so a new {@link Store} can be checked before it
+ * is selected with -Dvaultx.store.
+ *
+ * Usage: java StoreBench [memory|file|sqlite|sharded|replicated ...] [-n rows]
+ * With no backend names all of them run; sqlite and sharded are skipped
+ * when the driver is not on the classpath. replicated is the file backend
+ * shipping to a standby file. Scratch data goes to a temp directory, never to
+ * the configured database. Exits with 1 if any check fails.
+ */
+public class StoreBench {
+
+    private int checks;
+    private final List<String> failures = new ArrayList<>();
+
+    public static void main(String[] args) throws IOException {
+        List<String> kinds = new ArrayList<>();
+        int rows = 20_000;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-n") && i + 1 < args.length) rows = Integer.parseInt(args[++i]);
+            else kinds.add(args[i]);
+        }
+        if (kinds.isEmpty()) kinds.addAll(Arrays.asList("memory", "file", "sqlite", "sharded", "replicated"));
+
+        Path dir = Files.createTempDirectory("vaultx-storebench");
+        // The standby frame key is scratch too, unless one was configured
+        if (System.getProperty("vaultx.standby.keyFile") == null) {
+            System.setProperty("vaultx.standby.keyFile", dir.resolve("standby.key").toString());
+        }
+        boolean ok = true;
+        for (String kind : kinds) {
+            if ((kind.equals("sqlite") || kind.equals("sharded")) && !sqliteDriverPresent()) {
+                System.out.println(kind + ": skipped (org.sqlite.JDBC not on the classpath)");
+                continue;
+            }
+            StoreBench bench = new StoreBench();
+            bench.conformance(kind, dir);
+            bench.performance(kind, dir, rows);
+            ok &= bench.failures.isEmpty();
+        }
+        if (!ok) System.exit(1);
+    }
+
+    /* ========= Backends ========= */
+
+    static Store create(String kind, Path dir, String tag) {
+        switch (kind) {
+            case "memory":
+                return new MemoryStore();
+            case "file":
+                return new JournalStore(dir.resolve(tag + ".log"));
+            case "sqlite":
+                return new SqliteStore("jdbc:sqlite:" + dir.resolve(tag + ".db"));
+            case "sharded":
+                return new ShardedStore(dir.resolve(tag + "-shards"), 4, 4);
+            case "replicated":
+                return new ReplicatedStore(new JournalStore(dir.resolve(tag + "-primary.log")),
+                        new LogShipper(LogShipper.targetOf("file:" + dir.resolve(tag + ".standby"))));
+            default:
+                return Stores.open(kind);
+        }
+    }
+
+    // Same backend over the same files, as after a restart (null for memory)
+    private static Store reopen(String kind, Path dir, String tag) {
+        if (kind.equals("memory")) return null;
+        Store s = create(kind, dir, tag);
+        s.init();
+        return s;
+    }
+
+    private static boolean sqliteDriverPresent() {
+        try {
+            Class.forName("org.sqlite.JDBC");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    /* ========= Conformance ========= */
+
+    private void conformance(String kind, Path dir) {
+        Store s = create(kind, dir, "conformance");
+        s.init();
+        byte[] salt = {1, 2, 3};
+        byte[] hash = {4, 5, 6};
+
+        check(s.loadUser("nobody") == null, "unknown user loads as null");
+
+        s.saveUser(new User("Alice", salt, hash, 10.5, AccountTier.PREMIUM));
+        User a = s.loadUser("alice");
+        check(a != null, "saved user loads");
+        check(a != null && a.getBalance() == 10.5, "balance round-trips");
+        check(a != null && a.getTier() == AccountTier.PREMIUM, "tier round-trips");
+        check(a != null && Arrays.equals(a.getSalt(), salt) && Arrays.equals(a.getPasswordHash(), hash),
+                "salt and hash round-trip");
+        check(s.loadUser("ALICE") != null, "usernames are case-insensitive");
+
+        a.deposit(100);
+        check(s.loadUser("alice").getBalance() == 10.5, "loaded user is a copy until saved");
+        s.saveUser(a);
+        check(s.loadUser("alice").getBalance() == 110.5, "save replaces the account");
+        s.saveUser(new User("bob", salt, hash, 0));
+        check(s.usernames().equals(Arrays.asList("alice", "bob")), "usernames lists every account once");
+
+        check(s.lastHash("alice") == null, "no rows -> no last hash");
+        long id1 = s.append("alice", "2026-01-01 10:00", "Deposited: $1.00", LedgerChain.GENESIS, "h1");
+        long idB = s.append("bob", "2026-01-01 10:30", "Deposited: $5.00", LedgerChain.GENESIS, "hb");
+        long id2 = s.append("Alice", "2026-01-02 09:00", "Withdrawn: $0.50", "h1", "h2");
+        check(id1 > 0 && idB > 0 && id2 > id1, "ids grow with every append");
+        check("h2".equals(s.lastHash("alice")), "last hash follows appends");
+
+        List<LedgerEntry> all = s.afterId("alice", 0);
+        check(all.size() == 2 && all.get(0).getId() == id1 && all.get(1).getId() == id2,
+                "afterId(0) returns the account's rows in order");
+        check(all.size() == 2 && all.get(1).getAction().equals("Withdrawn: $0.50"), "action round-trips");
+        check(s.afterId("alice", id1).size() == 1, "afterId skips older rows");
+        check(s.afterId("bob", 0).size() == 1, "accounts don't see each other's rows");
+        check(s.since("alice", "2026-01-02 00:00").size() == 1, "since filters by timestamp");
+        check(s.since("alice", "2025-12-31 00:00").size() == 2, "since includes older bound");
+        s.checkpoint("alice");
+        transfers(s);
+        postings(s);
+        s.close();
+
+        Store r = reopen(kind, dir, "conformance");
+        if (r != null) {
+            check(r.loadUser("alice") != null && r.loadUser("alice").getBalance() == 110.5, "accounts survive reopen");
+            check(r.afterId("alice", 0).size() == 2, "rows survive reopen");
+            check("h2".equals(r.lastHash("alice")), "last hash survives reopen");
+            long id3 = r.append("alice", "2026-01-03 09:00", "Deposited: $2.00", "h2", "h3");
+            check(id3 > id2, "ids keep growing after reopen");
+            r.close();
+        }
+
+        System.out.println(kind + ": " + (checks - failures.size()) + "/" + checks + " checks passed"
+                + (failures.isEmpty() ? "" : ", FAILED: " + failures));
+    }
+
+    private void transfers(Store s) {
+        byte[] b = {7};
+        s.saveUser(new User("tom", b, b, 100));
+        s.saveUser(new User("tina", b, b, 0));
+        String ts = "2026-02-01 12:00";
+
+        check(s.transfer("tom", "tina", 30, ts) == null, "transfer succeeds");
+        check(s.loadUser("tom").getBalance() == 70 && s.loadUser("tina").getBalance() == 30, "transfer moves the balance");
+        List<LedgerEntry> tom = s.afterId("tom", 0);
+        List<LedgerEntry> tina = s.afterId("tina", 0);
+        check(tom.size() == 1 && tom.get(0).getType() == LedgerEntry.Type.TRANSFER_OUT
+                && tom.get(0).signedAmount() == -30, "sender gets a transfer-out row");
+        check(tina.size() == 1 && tina.get(0).getType() == LedgerEntry.Type.TRANSFER_IN
+                && tina.get(0).signedAmount() == 30, "recipient gets a transfer-in row");
+        check(s.lastHash("tina") != null, "transfer rows are chained");
+
+        check(s.transfer("tom", "tina", 1000, ts) != null, "transfer over the balance is refused");
+        check(s.transfer("tom", "nobody", 10, ts) != null, "transfer to an unknown account is refused");
+        check(s.loadUser("tom").getBalance() == 70 && s.loadUser("tina").getBalance() == 30,
+                "refused transfers change nothing");
+
+        if (s instanceof ShardedStore) {
+            ShardedStore sh = (ShardedStore) s;
+            String other = null;
+            for (int i = 0; other == null; i++) {
+                if (sh.shardOf("x" + i) != sh.shardOf("tom")) other = "x" + i;
+            }
+            s.saveUser(new User(other, b, b, User.MAX_BALANCE - 5));
+            check(s.transfer("tom", other, 5, ts) == null, "cross-shard transfer succeeds");
+            check(s.transfer("tom", other, 5, ts) != null, "cross-shard transfer over the recipient's max is refused");
+            check(s.loadUser("tom").getBalance() == 65 && s.loadUser(other).getBalance() == User.MAX_BALANCE,
+                    "cross-shard refusal is refunded");
+            check(sh.recoverTransfers() == 0, "no transfers left pending");
+        }
+    }
+
+    private void postings(Store s) {
+        byte[] b = {8};
+        s.saveUser(new User("pat", b, b, 100));
+        s.saveUser(new User("max", b, b, User.MAX_BALANCE - 10));
+        String ts = "2026-03-01 09:00";
+
+        // post: guarded limits, NaN on refusal, the stored balance back
+        String h1 = LedgerChain.link(LedgerChain.GENESIS, "pat", ts, "Withdrawn: $40.00");
+        check(s.post("pat", -40, true, ts, List.of("Withdrawn: $40.00"), LedgerChain.GENESIS, List.of(h1)) == 60,
+                "post returns the new balance");
+        check(s.loadUser("pat").getBalance() == 60 && h1.equals(s.lastHash("pat")), "post saves the balance and the row");
+        String no = LedgerChain.link(h1, "pat", ts, "Withdrawn: $100.00");
+        check(Double.isNaN(s.post("pat", -100, true, ts, List.of("Withdrawn: $100.00"), h1, List.of(no))),
+                "guarded post below zero is refused");
+        no = LedgerChain.link(LedgerChain.GENESIS, "max", ts, "Deposited: $20.00");
+        check(Double.isNaN(s.post("max", 20, true, ts, List.of("Deposited: $20.00"), LedgerChain.GENESIS, List.of(no))),
+                "guarded post over the max balance is refused");
+        check(Double.isNaN(s.post("nobody", 5, true, ts, List.of("Deposited: $5.00"), LedgerChain.GENESIS, List.of(no))),
+                "post to an unknown account is refused");
+        no = LedgerChain.link(LedgerChain.GENESIS, "pat", ts, "Deposited: $5.00");
+        check(Double.isNaN(s.post("pat", 5, true, ts, List.of("Deposited: $5.00"), LedgerChain.GENESIS, List.of(no))),
+                "post chained to a stale tail is refused");
+        check(s.loadUser("pat").getBalance() == 60 && s.loadUser("max").getBalance() == User.MAX_BALANCE - 10
+                && h1.equals(s.lastHash("pat")) && s.lastHash("max") == null, "refused posts change nothing");
+
+        s.saveUser(new User("pat", b, b, 200));   // a credit the session hasn't seen
+        String h2 = LedgerChain.link(h1, "pat", ts, "Deposited: $5.00");
+        check(s.post("pat", 5, true, ts, List.of("Deposited: $5.00"), h1, List.of(h2)) == 205,
+                "post works on the stored balance");
+        String h3 = LedgerChain.link(h2, "pat", ts, "Withdrawn: $300.00");
+        check(s.post("pat", -300, false, ts, List.of("Withdrawn: $300.00"), h2, List.of(h3)) == -95,
+                "unguarded post skips the limits");
+        String h4 = LedgerChain.link(h3, "pat", ts, "Deposited: $95.00");
+        check(s.post("pat", 95, true, ts, List.of("Deposited: $95.00"), h3, List.of(h4)) == 0, "post back to zero");
+
+        // adjust: only while the balance is the expected one, chained to the newest row
+        Adjustment hit = new Adjustment("pat", 0, 10, List.of("Deposited: $10.00"));
+        Adjustment miss = new Adjustment("max", 1, 2, List.of("Deposited: $1.00"));
+        check(s.adjust(ts, List.of(hit, miss)) == 1, "adjust counts what it applied");
+        check(hit.isApplied() && !miss.isApplied(), "adjust marks each adjustment");
+        check(s.loadUser("pat").getBalance() == 10 && s.loadUser("max").getBalance() == User.MAX_BALANCE - 10,
+                "adjust sets only the matching balance");
+        check(h4.equals(hit.prevHash) && hit.hashes != null && hit.hashes.size() == 1
+                && hit.hashes.get(0).equals(s.lastHash("pat")) && s.lastHash("max") == null,
+                "adjust chains its rows to the newest one");
+
+        // postBatch: the account and its rows together, refused on a stale tail
+        String tail = s.lastHash("pat");
+        String b1 = LedgerChain.link(tail, "pat", ts, "Deposited: $1.00");
+        String b2 = LedgerChain.link(b1, "pat", ts, "Deposited: $2.00");
+        int rows = s.afterId("pat", 0).size();
+        check(s.postBatch(new User("pat", b, b, 13), ts, List.of("Deposited: $1.00", "Deposited: $2.00"), tail, List.of(b1, b2)),
+                "postBatch succeeds");
+        check(s.loadUser("pat").getBalance() == 13 && b2.equals(s.lastHash("pat")) && s.afterId("pat", 0).size() == rows + 2,
+                "postBatch saves the account and every row");
+        no = LedgerChain.link(tail, "pat", ts, "Deposited: $7.00");
+        check(!s.postBatch(new User("pat", b, b, 20), ts, List.of("Deposited: $7.00"), tail, List.of(no)),
+                "postBatch chained to a stale tail is refused");
+        check(s.loadUser("pat").getBalance() == 13 && b2.equals(s.lastHash("pat")) && s.afterId("pat", 0).size() == rows + 2,
+                "refused postBatch changes nothing");
+    }
+
+    private void check(boolean ok, String what) {
+        checks++;
+        if (!ok) failures.add(what);
+    }
+
+    /* ========= Performance ========= */
+
+    private void performance(String kind, Path dir, int rows) {
+        Store s = create(kind, dir, "perf");
+        s.init();
+        int accounts = 100;
+        byte[] b = new byte[16];
+
+        long t0 = System.nanoTime();
+        for (int i = 0; i < accounts; i++) s.saveUser(new User("user" + i, b, b, i));
+        long t1 = System.nanoTime();
+        String[] tails = new String[accounts];
+        Arrays.fill(tails, LedgerChain.GENESIS);
+        for (int i = 0; i < rows; i++) {
+            int a = i % accounts;
+            String ts = String.format(Locale.US, "2026-01-%02d %02d:%02d", 1 + (i / 1440) % 28, (i / 60) % 24, i % 60);
+            String action = "Deposited: $" + (i % 500) + ".00";
+            String h = LedgerChain.link(tails[a], "user" + a, ts, action);
+            s.append("user" + a, ts, action, tails[a], h);
+            tails[a] = h;
+        }
+        long t2 = System.nanoTime();
+        long read = 0;
+        for (int i = 0; i < accounts; i++) read += s.afterId("user" + i, 0).size();
+        long t3 = System.nanoTime();
+        for (int i = 0; i < accounts; i++) s.loadUser("user" + i);
+        long t4 = System.nanoTime();
+        s.close();
+
+        long t5 = System.nanoTime();
+        Store r = reopen(kind, dir, "perf");
+        long t6 = System.nanoTime();
+        if (r != null) r.close();
+
+        System.out.println(String.format(Locale.US,
+                "%s: saveUser %.0f/s, append %.0f/s, afterId %.0f rows/s (%d), loadUser %.0f/s%s",
+                kind,
+                perSecond(accounts, t1 - t0),
+                perSecond(rows, t2 - t1),
+                perSecond(read, t3 - t2), read,
+                perSecond(accounts, t4 - t3),
+                r == null ? "" : String.format(Locale.US, ", reopen %.1f ms", (t6 - t5) / 1e6)));
+    }
+
+    private static double perSecond(long n, long nanos) {
+        return n * 1e9 / Math.max(1, nanos);
+    }
+}
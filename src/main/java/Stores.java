@@ -0,0 +1,51 @@
+import java.nio.file.Paths;
+import java.util.Locale;
+
+/**
+ * Picks the storage backend.
+ *
+ * -Dvaultx.store=sqlite (default) | memory | file | sharded
+ * <ul>
+ *   <li>sqlite: {@link SqliteStore} on -Dvaultx.db.url (see {@link DBHelper})</li>
+ *   <li>sharded: {@link ShardedStore} over -Dvaultx.shards files (default 4) in
+ *       -Dvaultx.shard.dir (default ~/.vaultx_shards), -Dvaultx.shard.pool
+ *       connections per shard (default 4)</li>
+ *   <li>any of them with -Dvaultx.standby=file:path or tcp:host:port: changes
+ *       are also shipped to a standby (see {@link ReplicatedStore})</li>
+ *   <li>memory: {@link MemoryStore}, gone when the JVM exits (tests, benchmarks)</li>
+ *   <li>file: {@link JournalStore} on -Dvaultx.journal, default ~/.vaultx_journal.log</li>
+ * </ul>
+ */
+public class Stores {
+
+    private Stores() {
+    }
+
+    /** The configured store, wrapped in a ReplicatedStore when -Dvaultx.standby is set. */
+    public static Store fromConfig() {
+        Store store = open(System.getProperty("vaultx.store", "sqlite"));
+        String standby = System.getProperty("vaultx.standby");
+        if (standby == null || standby.isEmpty()) return store;
+        return new ReplicatedStore(store, new LogShipper(LogShipper.targetOf(standby)));
+    }
+
+    public static Store open(String kind) {
+        switch (kind.toLowerCase(Locale.ROOT)) {
+            case "sqlite":
+                return new SqliteStore(DBHelper.url());
+            case "sharded":
+                return new ShardedStore(Paths.get(System.getProperty("vaultx.shard.dir",
+                        Paths.get(System.getProperty("user.home"), ".vaultx_shards").toString())),
+                        Integer.getInteger("vaultx.shards", 4),
+                        Integer.getInteger("vaultx.shard.pool", 4));
+            case "memory":
+                return new MemoryStore();
+            case "file":
+            case "journal":
+                return new JournalStore(Paths.get(System.getProperty("vaultx.journal",
+                        Paths.get(System.getProperty("user.home"), ".vaultx_journal.log").toString())));
+            default:
+                throw new IllegalArgumentException("Unknown store '" + kind + "' (sqlite, memory, file, sharded)");
+        }
+    }
+}
@@ -0,0 +1,158 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Text-only VAULT-X client for terminals and scripted tests. It uses the
+ * same {@link AtmService} and {@link ChatbotEngine} as the JavaFX window but
+ * never loads JavaFX, so it starts in a fraction of the time.
+ *
+ * Usage: java TerminalClient [--quiet] [--timing]
+ * <pre>
+ *   login &lt;user&gt; &lt;password&gt;
+ *   signup &lt;user&gt; &lt;password&gt;
+ *   stats                 withdrawal limit check counters
+ *   quit | exit
+ *   anything else goes to the chatbot ("deposit 200", "balance", "help", ...)
+ * </pre>
+ * The prompt is only printed on an interactive console (and not with
+ * --quiet), so piped input produces just the answers. --timing prints the
+ * time from JVM start until the client is ready to stderr. An idle session
+ * is logged out after -Dvaultx.session.idle seconds (see {@link SessionManager}).
+ */
+public class TerminalClient implements ChatbotEngine.Session {
+
+    private final AtmService service = new AtmService();
+    private final ChatbotEngine chatbot = new ChatbotEngine(service);
+    private final SessionManager sessions = new SessionManager(SessionManager.configuredIdleMillis(), service::logout);
+    // Only the input thread touches these; the reaper just leaves expiredToken for it
+    private User currentUser;
+    private String sessionToken;
+    private volatile String expiredToken;
+
+    public static void main(String[] args) throws IOException {
+        boolean quiet = false;
+        boolean timing = false;
+        for (String a : args) {
+            if (a.equals("--quiet")) quiet = true;
+            else if (a.equals("--timing")) timing = true;
+        }
+
+        StartupTimer timer = new StartupTimer();
+        TerminalClient client = new TerminalClient();
+        client.service.init();
+        client.sessions.start();
+        long readyMs = timer.mark("ready");
+        if (timing) System.err.println("Ready in " + readyMs + "ms");
+
+        boolean prompt = !quiet && System.console() != null;
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        if (prompt) System.out.println("VAULT-X terminal. Type 'login <user> <password>' or 'help'.");
+        while (true) {
+            client.checkExpired();
+            if (prompt) System.out.print(client.currentUser == null ? "> " : client.currentUser.getUsername() + "> ");
+            String line = in.readLine();
+            if (line == null) break;
+            line = line.trim();
+            if (line.isEmpty()) continue;
+            if (line.equalsIgnoreCase("quit") || line.equalsIgnoreCase("exit")) break;
+            client.handle(line);
+        }
+        client.logout();
+        client.sessions.stop();
+        client.service.close();
+    }
+
+    private void handle(String line) {
+        // A session that ran out while the line was being typed ends before it runs
+        if (sessionToken != null && !sessions.touch(sessionToken)) expiredToken = sessionToken;
+        checkExpired();
+        String[] parts = line.split("\\s+");
+        String cmd = parts[0].toLowerCase();
+
+        if (cmd.equals("login")) {
+            if (parts.length != 3) {
+                System.out.println("Usage: login <user> <password>");
+                return;
+            }
+            logout();
+            AtmService.Result r = service.login(parts[1], parts[2]);
+            if (r.isOk()) {
+                currentUser = r.getUser();
+                sessionToken = sessions.open(currentUser, this::expired).getToken();
+            }
+            System.out.println(r.getMessage());
+
+        } else if (cmd.equals("signup")) {
+            if (parts.length != 3) {
+                System.out.println("Usage: signup <user> <password>");
+                return;
+            }
+            System.out.println(service.signup(parts[1], parts[2], parts[2]).getMessage());
+
+        } else if (cmd.equals("stats")) {
+            System.out.println(service.limiterStats());
+
+        } else {
+            String reply = chatbot.reply(line, this);
+            if (reply != null) System.out.println(reply);
+        }
+    }
+
+    /* ========= ChatbotEngine.Session ========= */
+
+    @Override
+    public User currentUser() {
+        return currentUser;
+    }
+
+    @Override
+    public boolean requireLogin() {
+        if (currentUser != null) return true;
+        System.out.println("Please log in first: login <user> <password>");
+        return false;
+    }
+
+    @Override
+    public String showHistory() {
+        List<String> txs = service.history(currentUser);
+        if (txs.isEmpty()) return "No transactions yet.";
+        return String.join("\n", txs);
+    }
+
+    @Override
+    public void clearChat() {
+        // Nothing to clear on a terminal
+    }
+
+    @Override
+    public void logout() {
+        if (currentUser == null) return;
+        sessions.close(sessionToken);   // saves the account through service.logout
+        sessionToken = null;
+        currentUser = null;
+    }
+
+    // Called on the session reaper thread; the account has already been saved
+    private void expired(SessionManager.Session s) {
+        expiredToken = s.getToken();
+    }
+
+    // Input thread: drops the session the reaper ended, if it is still the current one
+    private void checkExpired() {
+        String token = expiredToken;
+        if (token == null) return;
+        expiredToken = null;
+        if (!token.equals(sessionToken)) return;
+        sessionToken = null;
+        currentUser = null;
+        System.out.println("Logged out after " + SessionManager.configuredIdleMillis() / 1000 + "s of inactivity.");
+    }
+
+    @Override
+    public void changed() {
+        // No views to refresh
+    }
+}
@@ -0,0 +1,131 @@
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel: {@value #LEVELS} wheels of {@value #SLOTS}
+ * slots, each level a factor {@value #SLOTS} coarser than the one below
+ * (with 1 s ticks: 64 s, ~68 min, ~3 days, ~194 days).
+ *
+ * Timers are intrusive: anything that extends {@link Node} can be
+ * scheduled, and the node itself is the list link, so there is no
+ * per-timer allocation. Scheduling and cancelling are O(1); advancing by
+ * one tick fires one slot and, every {@value #SLOTS} ticks, spreads the
+ * next slot of a coarser wheel over the finer ones. Deadlines further out
+ * than about 62 * 64^3 ticks fire early at that limit; callers that care
+ * check the time and schedule again.
+ *
+ * Not thread-safe; callers lock around it.
+ */
+public class TimerWheel {
+
+    static final int LEVELS = 4;
+    static final int SLOTS = 64;
+    private static final int BITS = 6;
+    private static final long MASK = SLOTS - 1;
+    // Furthest a node can be placed; keeps the top wheel from wrapping onto its current slot
+    private static final long MAX_DELTA = 62L << (BITS * (LEVELS - 1));
+
+    /** Something that can be scheduled; it can sit in at most one slot at a time. */
+    public static class Node {
+        Node prev;
+        Node next;
+        long deadline;   // tick
+
+        public boolean isScheduled() {
+            return prev != null;
+        }
+    }
+
+    private final long tickMillis;
+    private final Node[][] wheels = new Node[LEVELS][SLOTS];   // sentinels of circular lists
+    private long currentTick;
+    private int size;
+
+    public TimerWheel(long tickMillis, long nowMillis) {
+        this.tickMillis = tickMillis;
+        this.currentTick = nowMillis / tickMillis;
+        for (int l = 0; l < LEVELS; l++) {
+            for (int s = 0; s < SLOTS; s++) {
+                Node head = new Node();
+                head.prev = head;
+                head.next = head;
+                wheels[l][s] = head;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Schedules (or moves) the node to fire at the first tick at or after atMillis. */
+    public void schedule(Node n, long atMillis) {
+        if (n.isScheduled()) unlink(n);
+        long tick = (atMillis + tickMillis - 1) / tickMillis;
+        n.deadline = Math.max(tick, currentTick + 1);
+        place(n);
+        size++;
+    }
+
+    public void cancel(Node n) {
+        if (!n.isScheduled()) return;
+        unlink(n);
+        size--;
+    }
+
+    /** Moves time forward to nowMillis and hands every due node to fire (already unscheduled). */
+    public void advance(long nowMillis, Consumer<Node> fire) {
+        long target = nowMillis / tickMillis;
+        while (currentTick < target) {
+            currentTick++;
+            // Coarser wheels first, so their nodes can fall all the way down
+            for (int l = LEVELS - 1; l >= 1; l--) {
+                if ((currentTick & ((1L << (BITS * l)) - 1)) == 0) {
+                    cascade(l, (int) ((currentTick >>> (BITS * l)) & MASK));
+                }
+            }
+            Node head = wheels[0][(int) (currentTick & MASK)];
+            while (head.next != head) {
+                Node n = head.next;
+                unlink(n);
+                size--;
+                fire.accept(n);
+            }
+        }
+    }
+
+    /* ========= Internals ========= */
+
+    // The level is the finest one whose whole turn still contains the deadline,
+    // so the slot is always ahead of the wheel's current position
+    private void place(Node n) {
+        long at = Math.min(n.deadline, currentTick + MAX_DELTA);
+        int level = 0;
+        while (level < LEVELS - 1
+                && (at >>> (BITS * (level + 1))) != (currentTick >>> (BITS * (level + 1)))) level++;
+        int slot = (int) ((at >>> (BITS * level)) & MASK);
+        Node head = wheels[level][slot];
+        n.next = head.next;
+        n.prev = head;
+        head.next.prev = n;
+        head.next = n;
+    }
+
+    private void cascade(int level, int slot) {
+        Node head = wheels[level][slot];
+        Node n = head.next;
+        head.next = head;
+        head.prev = head;
+        while (n != head) {
+            Node next = n.next;
+            place(n);
+            n = next;
+        }
+    }
+
+    private static void unlink(Node n) {
+        n.prev.next = n.next;
+        n.next.prev = n.prev;
+        n.prev = null;
+        n.next = null;
+    }
+}
@@ -0,0 +1,216 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+/**
+ * In-process search index over each account's ledger.
+ *
+ * Rows are kept column-wise in primitive arrays (ordered by id, so also by
+ * time) with an inverted index from action words to row numbers. A search
+ * narrows the row range with a binary search on the timestamp, walks the
+ * shortest posting list (or the range) newest-first and checks the other
+ * filters on the arrays. Only the rows of the requested page are turned
+ * back into {@link LedgerEntry} objects.
+ *
+ * An account is loaded on its first search and then caught up incrementally
+ * (rows with id greater than the last one seen) on every later search.
+ */
+public class TransactionIndex {
+
+    /** One page of results, newest first. */
+    public static class Page {
+        private final List<LedgerEntry> items;
+        private final int total;
+        private final long micros;
+
+        Page(List<LedgerEntry> items, int total, long micros) {
+            this.items = items;
+            this.total = total;
+            this.micros = micros;
+        }
+
+        public List<LedgerEntry> getItems() {
+            return items;
+        }
+
+        /** Number of matches over all pages. */
+        public int getTotal() {
+            return total;
+        }
+
+        public long getMicros() {
+            return micros;
+        }
+    }
+
+    private final BiFunction<String, Long, List<LedgerEntry>> rowsAfterId;
+    private final ConcurrentHashMap<String, AccountIndex> accounts = new ConcurrentHashMap<>();
+
+    /**
+     * @param rowsAfterId loads (username, lastSeenId) -> ledger rows with a larger id, ordered by id
+     */
+    public TransactionIndex(BiFunction<String, Long, List<LedgerEntry>> rowsAfterId) {
+        this.rowsAfterId = rowsAfterId;
+    }
+
+    public Page search(String username, TransactionQuery q, int offset, int limit) {
+        long start = System.nanoTime();
+        String key = username.toLowerCase(Locale.ROOT);
+        AccountIndex idx = accounts.computeIfAbsent(key, k -> new AccountIndex());
+        synchronized (idx) {
+            List<LedgerEntry> fresh = rowsAfterId.apply(key, idx.lastId);
+            if (fresh != null) for (LedgerEntry e : fresh) idx.add(e);
+
+            List<LedgerEntry> page = new ArrayList<>();
+            int total = idx.search(key, q, offset, limit, page);
+            return new Page(page, total, (System.nanoTime() - start) / 1000);
+        }
+    }
+
+    /** Drops an account so its next search reloads it from scratch (e.g. after archival). */
+    public void invalidate(String username) {
+        accounts.remove(username.toLowerCase(Locale.ROOT));
+    }
+
+    /** Lower-case words of an action, plus "chatbot" / "atm" for the channel. */
+    static List<String> tokenize(String action) {
+        List<String> out = new ArrayList<>();
+        if (action == null) return out;
+        for (String w : action.toLowerCase(Locale.ROOT).split("[^a-z]+")) {
+            if (!w.isEmpty()) out.add(w);
+        }
+        if (!out.contains("chatbot")) out.add("atm");
+        return out;
+    }
+
+    /* ========= Per-account columns ========= */
+
+    private static final class AccountIndex {
+        int size;
+        long lastId;
+        boolean timeSorted = true;
+        long[] ids = new long[64];
+        String[] stamps = new String[64];
+        String[] actions = new String[64];
+        long[] cents = new long[64];
+        byte[] types = new byte[64];
+        final Map<String, IntList> postings = new HashMap<>();
+
+        void add(LedgerEntry e) {
+            if (size == ids.length) grow();
+            int row = size++;
+            ids[row] = e.getId();
+            stamps[row] = e.getTimestamp();
+            actions[row] = e.getAction();
+            cents[row] = Math.round(e.getAmount() * 100);
+            types[row] = (byte) e.getType().ordinal();
+            if (row > 0 && stamps[row].compareTo(stamps[row - 1]) < 0) timeSorted = false;
+            lastId = Math.max(lastId, e.getId());
+            for (String w : tokenize(e.getAction())) {
+                IntList l = postings.computeIfAbsent(w, k -> new IntList());
+                if (l.size == 0 || l.get(l.size - 1) != row) l.add(row);
+            }
+        }
+
+        int search(String username, TransactionQuery q, int offset, int limit, List<LedgerEntry> page) {
+            int lo = 0, hi = size;
+            if (timeSorted) {
+                if (q.getFrom() != null) lo = lowerBound(q.getFrom());
+                if (q.getTo() != null) hi = lowerBound(q.getTo());
+            }
+
+            // Shortest posting list drives the walk; the rest are probed
+            IntList driver = null;
+            List<IntList> others = new ArrayList<>();
+            for (String t : q.getTerms()) {
+                IntList l = postings.get(t);
+                if (l == null) return 0;
+                if (driver == null || l.size < driver.size) {
+                    if (driver != null) others.add(driver);
+                    driver = l;
+                } else {
+                    others.add(l);
+                }
+            }
+
+            int type = q.getType() == null ? -1 : q.getType().ordinal();
+            // Amounts are whole cents, so an excluded bound is the next cent in
+            long min = q.getMinAmount() == null ? Long.MIN_VALUE
+                    : Math.round(q.getMinAmount() * 100) + (q.isMinExclusive() ? 1 : 0);
+            long max = q.getMaxAmount() == null ? Long.MAX_VALUE
+                    : Math.round(q.getMaxAmount() * 100) - (q.isMaxExclusive() ? 1 : 0);
+
+            int total = 0;
+            int n = driver == null ? hi - lo : driver.size;
+            for (int k = n - 1; k >= 0; k--) {
+                int row = driver == null ? lo + k : driver.get(k);
+                if (row < lo || row >= hi) continue;
+                if (type >= 0 && types[row] != type) continue;
+                if (cents[row] < min || cents[row] > max) continue;
+                if (!timeSorted && !inRange(stamps[row], q)) continue;
+                boolean all = true;
+                for (IntList o : others) {
+                    if (!o.contains(row)) {
+                        all = false;
+                        break;
+                    }
+                }
+                if (!all) continue;
+
+                if (total >= offset && page.size() < limit) {
+                    page.add(new LedgerEntry(ids[row], username, stamps[row], actions[row]));
+                }
+                total++;
+            }
+            return total;
+        }
+
+        private int lowerBound(String stamp) {
+            int lo = 0, hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (stamps[mid].compareTo(stamp) < 0) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+
+        private static boolean inRange(String stamp, TransactionQuery q) {
+            return (q.getFrom() == null || stamp.compareTo(q.getFrom()) >= 0)
+                    && (q.getTo() == null || stamp.compareTo(q.getTo()) < 0);
+        }
+
+        private void grow() {
+            int cap = ids.length * 2;
+            ids = Arrays.copyOf(ids, cap);
+            stamps = Arrays.copyOf(stamps, cap);
+            actions = Arrays.copyOf(actions, cap);
+            cents = Arrays.copyOf(cents, cap);
+            types = Arrays.copyOf(types, cap);
+        }
+    }
+
+    /** Growable sorted int array (row numbers are appended in increasing order). */
+    private static final class IntList {
+        int[] data = new int[8];
+        int size;
+
+        void add(int v) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = v;
+        }
+
+        int get(int i) {
+            return data[i];
+        }
+
+        boolean contains(int v) {
+            return Arrays.binarySearch(data, 0, size, v) >= 0;
+        }
+    }
+}
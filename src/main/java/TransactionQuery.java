@@ -0,0 +1,231 @@
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A parsed history search, e.g. "chatbot withdrawals over 1000 last month".
+ *
+ * Understood:
+ * <ul>
+ *   <li>type words: deposit(s), withdraw(al)(s), balance / type:deposit</li>
+ *   <li>amounts, bound excluded: over 1000, under 500, &gt;1000, &lt;500</li>
+ *   <li>amounts, bound included: at least 1000, at most 500, &gt;=1000, &lt;=500,
+ *       min:1000, max:500</li>
+ *   <li>dates: today, yesterday, this month, last month, from:2026-09-01,
+ *       to:2026-09-30, month:2026-09, or a bare 2026-09 / 2026-09-14</li>
+ *   <li>anything else is matched as a word of the action text (e.g. chatbot)</li>
+ * </ul>
+ */
+public class TransactionQuery {
+
+    private LedgerEntry.Type type;
+    private Double minAmount;
+    private Double maxAmount;
+    private boolean minExclusive;
+    private boolean maxExclusive;
+    private String from;   // inclusive, "yyyy-MM-dd HH:mm"
+    private String to;     // exclusive
+    private final List<String> terms = new ArrayList<>();
+
+    public LedgerEntry.Type getType() {
+        return type;
+    }
+
+    public Double getMinAmount() {
+        return minAmount;
+    }
+
+    public Double getMaxAmount() {
+        return maxAmount;
+    }
+
+    /** True for "over" / "&gt;": an amount equal to the minimum doesn't match. */
+    public boolean isMinExclusive() {
+        return minExclusive;
+    }
+
+    /** True for "under" / "&lt;": an amount equal to the maximum doesn't match. */
+    public boolean isMaxExclusive() {
+        return maxExclusive;
+    }
+
+    public String getFrom() {
+        return from;
+    }
+
+    public String getTo() {
+        return to;
+    }
+
+    public List<String> getTerms() {
+        return terms;
+    }
+
+    public TransactionQuery type(LedgerEntry.Type t) {
+        this.type = t;
+        return this;
+    }
+
+    /** Amount range, both bounds inclusive. Either may be null. */
+    public TransactionQuery amountBetween(Double min, Double max) {
+        this.minAmount = min;
+        this.maxAmount = max;
+        this.minExclusive = false;
+        this.maxExclusive = false;
+        return this;
+    }
+
+    /** Date range, start inclusive and end exclusive. Either may be null. */
+    public TransactionQuery dateRange(LocalDate fromDay, LocalDate toDayExclusive) {
+        this.from = fromDay == null ? null : fromDay + " 00:00";
+        this.to = toDayExclusive == null ? null : toDayExclusive + " 00:00";
+        return this;
+    }
+
+    public TransactionQuery term(String word) {
+        terms.add(word.toLowerCase(Locale.ROOT));
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return type == null && minAmount == null && maxAmount == null
+                && from == null && to == null && terms.isEmpty();
+    }
+
+    /** Whether a single entry passes every filter (used for non-indexed sources). */
+    public boolean matches(LedgerEntry e) {
+        if (type != null && e.getType() != type) return false;
+        if (minAmount != null && (minExclusive ? e.getAmount() <= minAmount : e.getAmount() < minAmount)) return false;
+        if (maxAmount != null && (maxExclusive ? e.getAmount() >= maxAmount : e.getAmount() > maxAmount)) return false;
+        if (from != null && e.getTimestamp().compareTo(from) < 0) return false;
+        if (to != null && e.getTimestamp().compareTo(to) >= 0) return false;
+        if (!terms.isEmpty()) {
+            List<String> words = TransactionIndex.tokenize(e.getAction());
+            for (String t : terms) if (!words.contains(t)) return false;
+        }
+        return true;
+    }
+
+    public static TransactionQuery parse(String text) {
+        return parse(text, LocalDate.now());
+    }
+
+    public static TransactionQuery parse(String text, LocalDate today) {
+        TransactionQuery q = new TransactionQuery();
+        if (text == null) return q;
+
+        String[] words = text.toLowerCase(Locale.ROOT).replace(",", "").trim().split("\\s+");
+        for (int i = 0; i < words.length; i++) {
+            String w = words[i];
+            String next = i + 1 < words.length ? words[i + 1] : null;
+            if (w.isEmpty()) continue;
+
+            if (w.startsWith("type:")) {
+                q.type = typeOf(w.substring(5));
+            } else if (typeOf(w) != null) {
+                q.type = typeOf(w);
+            } else if (w.startsWith("min:") || w.startsWith(">=")) {
+                q.min(number(w.substring(w.startsWith(">=") ? 2 : 4)), false);
+            } else if (w.startsWith("max:") || w.startsWith("<=")) {
+                q.max(number(w.substring(w.startsWith("<=") ? 2 : 4)), false);
+            } else if (w.startsWith(">")) {
+                q.min(number(w.substring(1)), true);
+            } else if (w.startsWith("<")) {
+                q.max(number(w.substring(1)), true);
+            } else if ((w.equals("over") || w.equals("above")) && number(next) != null) {
+                q.min(number(words[++i]), true);
+            } else if ((w.equals("under") || w.equals("below")) && number(next) != null) {
+                q.max(number(words[++i]), true);
+            } else if (w.equals("at") && ("least".equals(next) || "most".equals(next))
+                    && i + 2 < words.length && number(words[i + 2]) != null) {
+                if (next.equals("least")) q.min(number(words[i + 2]), false);
+                else q.max(number(words[i + 2]), false);
+                i += 2;
+            } else if (w.startsWith("from:")) {
+                LocalDate d = day(w.substring(5));
+                if (d != null) q.from = d + " 00:00";
+            } else if (w.startsWith("to:")) {
+                LocalDate d = day(w.substring(3));
+                if (d != null) q.to = d.plusDays(1) + " 00:00";
+            } else if (w.startsWith("month:") || month(w) != null) {
+                YearMonth m = month(w.startsWith("month:") ? w.substring(6) : w);
+                if (m != null) q.dateRange(m.atDay(1), m.plusMonths(1).atDay(1));
+            } else if (day(w) != null) {
+                q.dateRange(day(w), day(w).plusDays(1));
+            } else if (w.equals("today")) {
+                q.dateRange(today, today.plusDays(1));
+            } else if (w.equals("yesterday")) {
+                q.dateRange(today.minusDays(1), today);
+            } else if ((w.equals("last") || w.equals("this")) && "month".equals(next)) {
+                YearMonth m = YearMonth.from(today).minusMonths(w.equals("last") ? 1 : 0);
+                q.dateRange(m.atDay(1), m.plusMonths(1).atDay(1));
+                i++;
+            } else if ((w.equals("last") || w.equals("this")) && "week".equals(next)) {
+                LocalDate start = w.equals("last") ? today.minusDays(7) : today.minusDays(today.getDayOfWeek().getValue() - 1);
+                q.dateRange(start, today.plusDays(1));
+                i++;
+            } else if (!isFiller(w)) {
+                q.terms.add(w);
+            }
+        }
+        return q;
+    }
+
+    private void min(Double amount, boolean exclusive) {
+        minAmount = amount;
+        minExclusive = exclusive;
+    }
+
+    private void max(Double amount, boolean exclusive) {
+        maxAmount = amount;
+        maxExclusive = exclusive;
+    }
+
+    private static LedgerEntry.Type typeOf(String w) {
+        if (w.startsWith("deposit")) return LedgerEntry.Type.DEPOSIT;
+        if (w.startsWith("withdr")) return LedgerEntry.Type.WITHDRAW;
+        if (w.equals("balance") || w.equals("checks")) return LedgerEntry.Type.BALANCE;
+        if (w.equals("interest")) return LedgerEntry.Type.INTEREST;
+        if (w.equals("fee") || w.equals("fees")) return LedgerEntry.Type.FEE;
+        return null;
+    }
+
+    private static boolean isFiller(String w) {
+        switch (w) {
+            case "all": case "my": case "the": case "of": case "in": case "and": case "show": case "find":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static Double number(String s) {
+        if (s == null) return null;
+        s = s.replace("$", "");
+        try {
+            if (s.endsWith("k")) return Double.parseDouble(s.substring(0, s.length() - 1)) * 1000.0;
+            return Double.parseDouble(s);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static LocalDate day(String s) {
+        try {
+            return LocalDate.parse(s);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static YearMonth month(String s) {
+        try {
+            return YearMonth.parse(s);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * An account as held in memory while someone is logged in. Each posting
+ * changes the stored balance (see {@link Store#post}) and the session's
+ * copy takes over the result.
+ */
+public class User {
+
+    public static final double MAX_BALANCE = 500_000.00;
+    public static final double MAX_WITHDRAW = 500_000.00;
+
+    private final String username;
+    private final byte[] salt;
+    private final byte[] passwordHash;
+    private double balance;
+    private AccountTier tier = AccountTier.STANDARD;
+
+    User(String username, byte[] salt, byte[] passwordHash, double balance) {
+        this.username = username;
+        this.salt = salt;
+        this.passwordHash = passwordHash;
+        this.balance = balance;
+    }
+
+    User(String username, byte[] salt, byte[] passwordHash, double balance, AccountTier tier) {
+        this(username, salt, passwordHash, balance);
+        this.tier = tier;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public double getBalance() {
+        return balance;
+    }
+
+    public boolean deposit(double amount) {
+        if (amount <= 0) {
+            return false; // reject invalid
+        }
+        if (this.balance + amount > MAX_BALANCE) {
+            return false; // reject if it exceeds max allowed balance
+        }
+        this.balance += amount;
+        return true; // success
+    }
+
+
+    public boolean withdraw(double amount) {
+        if (amount <= 0) return false;                 // invalid
+        if (amount > MAX_WITHDRAW) return false;       // over per-transaction cap
+        if (amount > balance) return false;            // insufficient funds
+        balance -= amount;
+        return true;
+    }
+
+    // For postings already checked step by step (AtmService.postBatch) and for
+    // taking over the balance the store ended up with
+    void setBalance(double balance) {
+        this.balance = balance;
+    }
+
+    public byte[] getSalt() {
+
+        return salt;
+    }
+
+    public byte[] getPasswordHash() {
+        return passwordHash;
+    }
+
+    public AccountTier getTier() {
+        return tier;
+    }
+}
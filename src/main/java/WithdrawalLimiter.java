@@ -0,0 +1,256 @@
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+/**
+ * Daily and rolling-24h withdrawal limits per account.
+ *
+ * Each account keeps a ring of 15 minute buckets (96 of them = 24h) plus a
+ * counter for the current calendar day, so a check is a couple of array
+ * reads and never a SUM over the transactions table. Because the rolling
+ * window is bucketed, it can cover up to 24h15m of history, which errs on
+ * the side of rejecting.
+ *
+ * A payout goes through {@link #reserve}, which checks and counts the
+ * amount under the account's lock, so two terminals can't both pass the
+ * check on the same headroom; {@link #release} takes it back if the payout
+ * then fails.
+ *
+ * Counters live in memory only. The first time an account is checked after a
+ * restart, its window is rebuilt from the ledger rows of the last 24 hours.
+ */
+public class WithdrawalLimiter {
+
+    private static final long BUCKET_MILLIS = 15 * 60 * 1000L;
+    private static final int BUCKETS = 96;
+
+    private final BiFunction<String, String, List<LedgerEntry>> ledgerSince;
+    private final ZoneId zone;
+    private final ConcurrentHashMap<String, Window> windows = new ConcurrentHashMap<>();
+
+    // Enforcement overhead, per operation
+    private final LongAdder checks = new LongAdder();
+    private final LongAdder checkNanos = new LongAdder();
+    private final LongAdder rebuilds = new LongAdder();
+    private final LongAdder rebuildNanos = new LongAdder();
+
+    /**
+     * @param ledgerSince loads (username, "yyyy-MM-dd HH:mm") -> ledger rows at or after that time
+     */
+    public WithdrawalLimiter(BiFunction<String, String, List<LedgerEntry>> ledgerSince) {
+        this(ledgerSince, ZoneId.systemDefault());
+    }
+
+    public WithdrawalLimiter(BiFunction<String, String, List<LedgerEntry>> ledgerSince, ZoneId zone) {
+        this.ledgerSince = ledgerSince;
+        this.zone = zone;
+    }
+
+    /**
+     * Returns a user-facing rejection message if withdrawing {@code amount} now
+     * would break the daily or rolling limit of the tier, otherwise null.
+     */
+    public String check(String username, AccountTier tier, double amount, long nowMillis) {
+        long start = System.nanoTime();
+        try {
+            Window w = window(username, nowMillis);
+            long cents = toCents(amount);
+            synchronized (w) {
+                w.advance(bucketOf(nowMillis), dayOf(nowMillis));
+                return refusal(w, tier, cents);
+            }
+        } finally {
+            checks.increment();
+            checkNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Like {@link #check}, but when the withdrawal fits it is counted at
+     * once, under the same lock. Call {@link #release} with the same
+     * nowMillis if it is not paid out after all.
+     */
+    public String reserve(String username, AccountTier tier, double amount, long nowMillis) {
+        long start = System.nanoTime();
+        try {
+            Window w = window(username, nowMillis);
+            long cents = toCents(amount);
+            synchronized (w) {
+                w.advance(bucketOf(nowMillis), dayOf(nowMillis));
+                String msg = refusal(w, tier, cents);
+                if (msg == null) w.add(bucketOf(nowMillis), dayOf(nowMillis), cents);
+                return msg;
+            }
+        } finally {
+            checks.increment();
+            checkNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /** Takes back a {@link #reserve}d amount whose withdrawal failed. */
+    public void release(String username, double amount, long nowMillis) {
+        record(username, -amount, nowMillis);
+    }
+
+    /**
+     * Counts a completed withdrawal. Accounts that were never checked are left
+     * alone; they are rebuilt from the ledger (which already has the row) on first check.
+     */
+    public void record(String username, double amount, long nowMillis) {
+        Window w = windows.get(key(username));
+        if (w == null) return;
+        synchronized (w) {
+            w.add(bucketOf(nowMillis), dayOf(nowMillis), toCents(amount));
+        }
+    }
+
+    /** Amount still available today, taking both limits into account. */
+    public double remaining(String username, AccountTier tier, long nowMillis) {
+        Window w = window(username, nowMillis);
+        synchronized (w) {
+            w.advance(bucketOf(nowMillis), dayOf(nowMillis));
+            return Math.min(remaining(w.dayCents, tier.getDailyLimit()),
+                    remaining(w.rollingCents, tier.getRollingLimit()));
+        }
+    }
+
+    /** Drops the in-memory counters of one account; the next check rebuilds them. */
+    public void forget(String username) {
+        windows.remove(key(username));
+    }
+
+    public long getChecks() {
+        return checks.sum();
+    }
+
+    public double averageCheckNanos() {
+        long n = checks.sum();
+        return n == 0 ? 0 : (double) checkNanos.sum() / n;
+    }
+
+    public long getRebuilds() {
+        return rebuilds.sum();
+    }
+
+    public double averageRebuildMillis() {
+        long n = rebuilds.sum();
+        return n == 0 ? 0 : rebuildNanos.sum() / 1_000_000.0 / n;
+    }
+
+    public String stats() {
+        return String.format(Locale.US, "limit checks=%d avg=%.0fns, rebuilds=%d avg=%.2fms",
+                getChecks(), averageCheckNanos(), getRebuilds(), averageRebuildMillis());
+    }
+
+    /* ========= Internals ========= */
+
+    // Caller holds w's lock and has advanced it
+    private static String refusal(Window w, AccountTier tier, long cents) {
+        if (w.dayCents + cents > toCents(tier.getDailyLimit())) {
+            return "Daily withdrawal limit reached. You can withdraw $"
+                    + fmt(remaining(w.dayCents, tier.getDailyLimit())) + " more today.";
+        }
+        if (w.rollingCents + cents > toCents(tier.getRollingLimit())) {
+            return "24-hour withdrawal limit reached. You can withdraw $"
+                    + fmt(remaining(w.rollingCents, tier.getRollingLimit())) + " more right now.";
+        }
+        return null;
+    }
+
+    private Window window(String username, long nowMillis) {
+        return windows.computeIfAbsent(key(username), k -> rebuild(k, nowMillis));
+    }
+
+    // Replays the last 24h of withdrawals (and the whole current day) from the ledger
+    private Window rebuild(String username, long nowMillis) {
+        long start = System.nanoTime();
+        Window w = new Window();
+        w.advance(bucketOf(nowMillis), dayOf(nowMillis));
+
+        long windowStart = Math.min(nowMillis - BUCKETS * BUCKET_MILLIS,
+                LocalDate.ofEpochDay(dayOf(nowMillis)).atStartOfDay(zone).toInstant().toEpochMilli());
+        String since = LedgerEntry.TIMESTAMP_FORMAT.format(
+                LocalDateTime.ofInstant(Instant.ofEpochMilli(windowStart), zone));
+
+        List<LedgerEntry> rows = ledgerSince.apply(username, since);
+        if (rows != null) {
+            for (LedgerEntry e : rows) {
+                if (e.getType() != LedgerEntry.Type.WITHDRAW) continue;
+                LocalDateTime t = e.getTime();
+                if (t == null) continue;
+                long millis = t.atZone(zone).toInstant().toEpochMilli();
+                w.add(bucketOf(millis), dayOf(millis), toCents(e.getAmount()));
+            }
+        }
+        rebuilds.increment();
+        rebuildNanos.add(System.nanoTime() - start);
+        return w;
+    }
+
+    private long bucketOf(long millis) {
+        return Math.floorDiv(millis, BUCKET_MILLIS);
+    }
+
+    private long dayOf(long millis) {
+        return Instant.ofEpochMilli(millis).atZone(zone).toLocalDate().toEpochDay();
+    }
+
+    private static String key(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+
+    private static long toCents(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    private static double remaining(long usedCents, double limit) {
+        return Math.max(0, toCents(limit) - usedCents) / 100.0;
+    }
+
+    private static String fmt(double v) {
+        return String.format(Locale.US, "%.2f", v);
+    }
+
+    /** Per-account counters. Guarded by its own monitor. */
+    private static final class Window {
+        final long[] cents = new long[BUCKETS];
+        long head = Long.MIN_VALUE;   // newest bucket number seen
+        long rollingCents;
+        long day = Long.MIN_VALUE;
+        long dayCents;
+
+        // Moves the ring forward to 'bucket', expiring the buckets that fall out of the 24h window
+        void advance(long bucket, long today) {
+            if (head == Long.MIN_VALUE || bucket - head >= BUCKETS) {
+                java.util.Arrays.fill(cents, 0);
+                rollingCents = 0;
+            } else {
+                for (long b = head + 1; b <= bucket; b++) {
+                    int slot = (int) Math.floorMod(b, (long) BUCKETS);
+                    rollingCents -= cents[slot];
+                    cents[slot] = 0;
+                }
+            }
+            if (bucket > head) head = bucket;
+            if (today > day) {
+                day = today;
+                dayCents = 0;
+            }
+        }
+
+        void add(long bucket, long dayNumber, long amountCents) {
+            advance(bucket, dayNumber);
+            if (bucket > head - BUCKETS) {
+                cents[(int) Math.floorMod(bucket, (long) BUCKETS)] += amountCents;
+                rollingCents += amountCents;
+            }
+            if (dayNumber == day) dayCents += amountCents;
+        }
+    }
+}